@@ -0,0 +1,150 @@
+package benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.ArraysUtils;
+import utils.EncryptUtils;
+import utils.FileUtils;
+import utils.OriginalCodec;
+
+/**
+ * 暗号化・復号の前後で行う変換とファイルの読み書きの性能を計測します
+ * 独自改竄形式、拡張子の保存・取得、配列の反転、ファイルの読み書きを平文のbyte数ごとに計測します
+ * 実行方法：java -jar target/benchmarks.jar CodecBenchmark -prof gc
+ * @author blank-nano
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CodecBenchmark {
+
+	/** 付与する拡張子 */
+	private static final String EXTENSION = ".txt";
+
+	/** 平文のbyte数 */
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	/** 平文 */
+	private byte[] plain;
+	/** 初期化ベクトルキー */
+	private byte[] ivKey;
+	/** 独自改竄形式 */
+	private byte[] original;
+	/** 拡張子を保存した暗号文 */
+	private byte[] saved;
+	/** 読み書きするファイル */
+	private File tempFile;
+
+	/**
+	 * 計測に使用するデータとファイルを作成します
+	 * @throws Exception - 作成に失敗した場合に発生
+	 */
+	@Setup
+	public void setup() throws Exception {
+		Random random = new Random(0);
+		this.plain = new byte[this.size];
+		random.nextBytes(this.plain);
+		this.ivKey = new byte[16];
+		random.nextBytes(this.ivKey);
+		this.original = OriginalCodec.encode(this.ivKey, this.plain, null);
+		this.saved = EncryptUtils.saveExtension(this.plain, EXTENSION);
+		this.tempFile = File.createTempFile("benchmark", ".log");
+		FileUtils.writeNormalFile(this.tempFile.getPath(), this.plain, false);
+	}
+
+	/**
+	 * 計測に使用したファイルを削除します
+	 * @throws Exception - 削除に失敗した場合に発生
+	 */
+	@TearDown
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(this.tempFile.toPath());
+	}
+
+	/**
+	 * 独自改竄形式に変換します
+	 * @return - 独自改竄形式
+	 */
+	@Benchmark
+	public byte[] doOriginal() {
+		return OriginalCodec.encode(this.ivKey, this.plain, null);
+	}
+
+	/**
+	 * 独自改竄形式を元に戻します
+	 * @return - 暗号文
+	 * @throws Exception - 形式が不正な場合に発生
+	 */
+	@Benchmark
+	public byte[] undoOriginal() throws Exception {
+		return OriginalCodec.decode(this.original, true, false).getEncrypt();
+	}
+
+	/**
+	 * 拡張子を保存します
+	 * @return - 拡張子を保存した暗号文
+	 */
+	@Benchmark
+	public byte[] saveExtension() {
+		return EncryptUtils.saveExtension(this.plain, EXTENSION);
+	}
+
+	/**
+	 * 保存した拡張子を取得します
+	 * @return - 拡張子
+	 */
+	@Benchmark
+	public String loadExtension() {
+		return EncryptUtils.loadExtension(this.saved);
+	}
+
+	/**
+	 * 配列を反転します
+	 * @return - 反転した配列
+	 */
+	@Benchmark
+	public byte[] reverse() {
+		return ArraysUtils.reverse(this.plain);
+	}
+
+	/**
+	 * ファイルに書き込みます
+	 * @throws Exception - 書き込みに失敗した場合に発生
+	 */
+	@Benchmark
+	public void writeNormalFile() throws Exception {
+		FileUtils.writeNormalFile(this.tempFile.getPath(), this.plain, false);
+	}
+
+	/**
+	 * ファイルを読み込みます
+	 * @return - ファイルの内容
+	 * @throws Exception - 読み込みに失敗した場合に発生
+	 */
+	@Benchmark
+	public byte[] readNormalFileToByte() throws Exception {
+		return FileUtils.readNormalFileToByte(this.tempFile.getPath());
+	}
+
+}
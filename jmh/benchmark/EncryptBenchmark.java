@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.EncryptUtils;
+
+/**
+ * byte配列の暗号化・復号の性能を計測します
+ * 暗号化キーの指定方法（キーなし、第一パスワード、第二パスワード）と平文のbyte数ごとに計測します
+ * 実行方法：java -jar target/benchmarks.jar EncryptBenchmark -prof gc
+ * @author blank-nano
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EncryptBenchmark {
+
+	/** 第一パスワード */
+	private static final String PASSWORD1 = "benchmark-password1";
+	/** 第二パスワード */
+	private static final String PASSWORD2 = "benchmark-password2";
+
+	/** 平文のbyte数 */
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+	/** 暗号化キーの指定方法 */
+	@Param({ "NONE", "PASSWORD1", "PASSWORD2" })
+	public String key;
+
+	/** 平文 */
+	private byte[] plain;
+	/** 暗号文 */
+	private byte[] encrypted;
+
+	/**
+	 * 平文と、復号の計測に使用する暗号文を作成します
+	 * @throws Exception - 暗号化に失敗した場合に発生
+	 */
+	@Setup
+	public void setup() throws Exception {
+		this.plain = new byte[this.size];
+		new Random(0).nextBytes(this.plain);
+		this.encrypted = encrypt();
+	}
+
+	/**
+	 * 暗号化します
+	 * @return - 暗号文
+	 * @throws Exception - 暗号化に失敗した場合に発生
+	 */
+	@Benchmark
+	public byte[] encrypt() throws Exception {
+		switch (this.key) {
+		case "PASSWORD1":
+			return EncryptUtils.doEncryptToBytes(this.plain, PASSWORD1);
+		case "PASSWORD2":
+			return EncryptUtils.doEncryptToBytes(this.plain, PASSWORD1, PASSWORD2);
+		default:
+			return EncryptUtils.doEncryptToBytes(this.plain);
+		}
+	}
+
+	/**
+	 * 復号します
+	 * @return - 平文
+	 * @throws Exception - 復号に失敗した場合に発生
+	 */
+	@Benchmark
+	public byte[] decrypt() throws Exception {
+		switch (this.key) {
+		case "PASSWORD1":
+			return EncryptUtils.doDecryptToBytes(this.encrypted, PASSWORD1);
+		case "PASSWORD2":
+			return EncryptUtils.doDecryptToBytes(this.encrypted, PASSWORD1, PASSWORD2);
+		default:
+			return EncryptUtils.doDecryptToBytes(this.encrypted);
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utils.EncryptUtils.EncryptAlgorithm;
+import utils.SegmentCipher;
+
+/**
+ * 大きいファイルの暗号化・復号で使用するセグメント分割の暗号化・復号の性能を計測します
+ * 鍵の導出と複数セグメントの並列処理を含めて、暗号アルゴリズムごとに計測します
+ * 実行方法：java -jar target/benchmarks.jar SegmentCipherBenchmark -prof gc
+ * @author blank-nano
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SegmentCipherBenchmark {
+
+	/** 暗号アルゴリズム */
+	@Param({ "AES_GCM_SEGMENT", "CHACHA20_POLY1305" })
+	public EncryptAlgorithm algorithm;
+	/** 平文のbyte数 */
+	@Param({ "16777216" })
+	public int size;
+
+	/** 平文 */
+	private byte[] plain;
+	/** 暗号文 */
+	private byte[] encrypted;
+	/** 暗号化キー */
+	private final byte[] encKey = new byte[32];
+	/** 初期化ベクトルキー */
+	private final byte[] ivKey = new byte[32];
+
+	/**
+	 * 平文と、復号の計測に使用する暗号文を作成します
+	 * @throws Exception - 暗号化に失敗した場合に発生
+	 */
+	@Setup
+	public void setup() throws Exception {
+		Random random = new Random(0);
+		this.plain = new byte[this.size];
+		random.nextBytes(this.plain);
+		random.nextBytes(this.encKey);
+		random.nextBytes(this.ivKey);
+		ByteArrayOutputStream output = new ByteArrayOutputStream((int) SegmentCipher.getOutputSize(this.size));
+		SegmentCipher.encrypt(this.algorithm, new ByteArrayInputStream(this.plain), output, this.encKey, this.ivKey);
+		this.encrypted = output.toByteArray();
+	}
+
+	/**
+	 * 暗号化します
+	 * @return - 書き込んだbyte数
+	 * @throws Exception - 暗号化に失敗した場合に発生
+	 */
+	@Benchmark
+	public long encrypt() throws Exception {
+		return SegmentCipher.encrypt(this.algorithm, new ByteArrayInputStream(this.plain), OutputStream.nullOutputStream(), this.encKey, this.ivKey);
+	}
+
+	/**
+	 * 復号します
+	 * @return - 書き込んだbyte数
+	 * @throws Exception - 復号や認証に失敗した場合に発生
+	 */
+	@Benchmark
+	public long decrypt() throws Exception {
+		return SegmentCipher.decrypt(this.algorithm, new ByteArrayInputStream(this.encrypted), OutputStream.nullOutputStream(), this.encKey, this.ivKey);
+	}
+
+}
@@ -0,0 +1,5 @@
+/**
+ * @author blank-nano
+ *
+ */
+package benchmark;
\ No newline at end of file
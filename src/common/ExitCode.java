@@ -27,6 +27,28 @@ public enum ExitCode {
 		this.exitCode = exitCode;
 	}
 
+	/**
+	 * 終了コードの値から終了コードを取得します
+	 * @param exitCode - 終了コードの値
+	 * @return - 終了コード（該当なしの場合はnull）
+	 */
+	public static ExitCode valueOfExitCode(int exitCode) {
+		for (ExitCode value : values()) {
+			if (value.exitCode == exitCode) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 終了コードの値を取得します
+	 * @return - 終了コードの値
+	 */
+	public int getExitCode() {
+		return this.exitCode;
+	}
+
 	/**
 	 * 終了コードをセットして、システムを終了する
 	 */
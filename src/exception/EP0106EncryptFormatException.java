@@ -0,0 +1,32 @@
+package exception;
+
+/**
+ * 暗号文形式不正例外を定義します
+ * @author blank-nano
+ *
+ */
+public class EP0106EncryptFormatException extends ExceptionBase {
+
+	private static final long serialVersionUID = 1L;
+	private static final String MESSAGE = "暗号文形式不正";
+
+	/**
+	 * デフォルトコンストラクタ
+	 * @param exitFlg - プログラム終了フラグ
+	 */
+	public EP0106EncryptFormatException(boolean exitFlg) {
+		super(MESSAGE);
+		this.exitFlg = exitFlg;
+	}
+
+	/**
+	 * デフォルトコンストラクタ
+	 * @param message - ログメッセージ
+	 * @param exitFlg - プログラム終了フラグ
+	 */
+	public EP0106EncryptFormatException(String message, boolean exitFlg) {
+		super(join(MESSAGE, PIPE, message));
+		this.exitFlg = exitFlg;
+	}
+
+}
@@ -0,0 +1,311 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import common.ExitCode;
+import exception.ExceptionBase;
+import utils.EncryptUtils;
+import utils.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * 常駐プロセスとして暗号化・復号の依頼を受け付けます
+ * 呼び出しのたびにJVMの起動、クラスの読み込み、JITのやり直しが発生しないよう、起動済みのプロセスでUnixドメインソケットから依頼を受け付けます
+ * 依頼は接続ごとに並列に処理し、コマンドラインと同じ出力と終了コードを依頼元へ返却します
+ * 依頼の構成は 作業フォルダ + 引数の数(4) + 引数... 、返却の構成は 出力(種別(1) + 長さ(4) + 内容)... + 終了コード(種別(1) + 値(4)) です
+ * 文字列はDataOutputStream.writeUTFで書き込みます
+ * @author blank-nano
+ *
+ */
+public class EncryptDaemon {
+
+	/** 返却の種別：出力 */
+	private static final byte RESPONSE_OUTPUT = 1;
+	/** 返却の種別：終了コード */
+	private static final byte RESPONSE_EXIT = 2;
+	/** 1回の依頼の最大引数数 */
+	private static final int MAX_ARGS = 4096;
+	/** 起動時に暗号化・復号を試行する回数（JITで最適化されるまで繰り返す） */
+	private static final int WARMUP_ITERATIONS = 200;
+	/** 起動時に暗号化・復号を試行するbyte数 */
+	private static final int WARMUP_SIZE = 64 * 1024;
+
+	/**
+	 * 常駐プロセスとして起動する指定か判定します
+	 * @param args - コマンドライン引数
+	 * @return - 常駐プロセスとして起動する場合はtrue
+	 */
+	public static boolean isDaemon(String[] args) {
+		return indexOfOption(args, "-dm", "--daemon") >= 0;
+	}
+
+	/**
+	 * 常駐プロセスへ転送する指定か判定します
+	 * @param args - コマンドライン引数
+	 * @return - 常駐プロセスへ転送する場合はtrue
+	 */
+	public static boolean isClient(String[] args) {
+		return indexOfOption(args, "-cl", "--client") >= 0;
+	}
+
+	/**
+	 * 常駐プロセスとして起動し、依頼を受け付け続けます
+	 * @param args - コマンドライン引数
+	 * @return - 終了コード（起動に失敗した場合のみ返却）
+	 */
+	public static ExitCode serve(String[] args) {
+		String socket = getOptionValue(args, "-dm", "--daemon");
+		if (socket == null) {
+			System.out.println("オプションの形式が異なります　※ソケットのファイルパス指定なし");
+			return ExitCode.ARG_ATTRIBUTE;
+		}
+		Path socketPath = Paths.get(socket).toAbsolutePath();
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			prepareSocket(socketPath);
+			server.bind(UnixDomainSocketAddress.of(socketPath));
+			// パスワードを受け付けるため、起動ユーザー以外は接続できないようにする
+			try {
+				Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+			} catch (@SuppressWarnings("unused") UnsupportedOperationException e) {
+				// POSIX以外のファイルシステムはそのまま
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					Files.deleteIfExists(socketPath);
+				} catch (@SuppressWarnings("unused") IOException e) {
+					// 終了時のため無視
+				}
+			}));
+			warmUp();
+			System.out.println("常駐プロセスを起動しました\t" + socketPath);
+			while (true) {
+				SocketChannel channel = server.accept();
+				executor.execute(() -> handle(channel));
+			}
+		} catch (IOException e) {
+			System.out.println("常駐プロセスの起動に失敗しました　※" + e.getMessage());
+			return ExitCode.GENERAL_ERR4;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 常駐プロセスへ依頼を転送し、出力と終了コードを受け取ります
+	 * 常駐・転送の指定以外の引数と、カレントフォルダをそのまま転送します
+	 * @param args - コマンドライン引数
+	 * @return - 常駐プロセスで処理した終了コード
+	 */
+	public static ExitCode forward(String[] args) {
+		String socket = getOptionValue(args, "-cl", "--client");
+		if (socket == null) {
+			System.out.println("オプションの形式が異なります　※ソケットのファイルパス指定なし");
+			return ExitCode.ARG_ATTRIBUTE;
+		}
+		int index = indexOfOption(args, "-cl", "--client");
+		List<String> forwardArgs = new ArrayList<>(args.length);
+		for (int i = 0; i < args.length; i++) {
+			if (i != index && i != index + 1) {
+				forwardArgs.add(args[i]);
+			}
+		}
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			output.writeUTF(new File("").getAbsolutePath());
+			output.writeInt(forwardArgs.size());
+			for (String arg : forwardArgs) {
+				output.writeUTF(arg);
+			}
+			output.flush();
+			DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			while (true) {
+				byte type = input.readByte();
+				if (type == RESPONSE_EXIT) {
+					System.out.flush();
+					ExitCode exitCode = ExitCode.valueOfExitCode(input.readInt());
+					return exitCode == null ? ExitCode.GENERAL_ERR3 : exitCode;
+				}
+				if (type != RESPONSE_OUTPUT) {
+					throw new IOException("返却種別不正\t" + type);
+				}
+				byte[] data = new byte[input.readInt()];
+				input.readFully(data);
+				System.out.write(data);
+			}
+		} catch (IOException e) {
+			System.out.flush();
+			System.out.println("常駐プロセスでの処理に失敗しました　※" + e.getMessage());
+			return ExitCode.GENERAL_ERR3;
+		}
+	}
+
+	/**
+	 * 1件の依頼を処理し、出力と終了コードを返却します
+	 * @param channel - 依頼元との接続
+	 */
+	private static void handle(SocketChannel channel) {
+		try (SocketChannel target = channel) {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(target)));
+			File workDirectory = new File(input.readUTF());
+			int count = input.readInt();
+			if (count < 0 || count > MAX_ARGS) {
+				throw new IOException("引数の数不正\t" + count);
+			}
+			String[] args = new String[count];
+			for (int i = 0; i < count; i++) {
+				args[i] = input.readUTF();
+			}
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(target)));
+			PrintStream out = new PrintStream(new ResponseOutputStream(output), true);
+			ExitCode exitCode;
+			try {
+				exitCode = MainEncryptCommandLine.encryptManage(args, workDirectory, out);
+			} catch (RuntimeException e) {
+				// 他の依頼を処理し続けるため、想定外の例外も依頼元へ返却する
+				out.println("処理に失敗しました　※" + e);
+				exitCode = ExitCode.GENERAL_ERR4;
+			}
+			out.flush();
+			synchronized (output) {
+				output.writeByte(RESPONSE_EXIT);
+				output.writeInt(exitCode.getExitCode());
+				output.flush();
+			}
+		} catch (@SuppressWarnings("unused") EOFException e) {
+			// 依頼の途中で切断された場合は何もしない
+		} catch (IOException e) {
+			System.out.println("依頼の処理に失敗しました　※" + e.getMessage());
+		}
+	}
+
+	/**
+	 * 前回異常終了したときのソケットのファイルを削除します
+	 * @param socketPath - ソケットのファイルパス
+	 * @throws IOException - 別の常駐プロセスが起動中の場合や、削除できない場合に発生
+	 */
+	private static void prepareSocket(Path socketPath) throws IOException {
+		if (!Files.exists(socketPath)) {
+			return;
+		}
+		boolean running;
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+			running = channel.isConnected();
+		} catch (@SuppressWarnings("unused") IOException e) {
+			// 接続できない場合は前回のファイルが残っているだけ
+			running = false;
+		}
+		if (running) {
+			throw new IOException("常駐プロセス起動済み\t" + socketPath);
+		}
+		Files.delete(socketPath);
+	}
+
+	/**
+	 * 暗号化・復号とオプションの解析を試行し、最初の依頼からJITで最適化された状態で処理できるようにします
+	 */
+	private static void warmUp() {
+		byte[] data = new byte[WARMUP_SIZE];
+		try {
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				for (EncryptAlgorithm algorithm : new EncryptAlgorithm[] { EncryptAlgorithm.AES, EncryptAlgorithm.AES_GCM_SEGMENT }) {
+					EncryptUtils.doDecryptToBytes(EncryptUtils.doEncryptToContainer(algorithm, data, "", (byte[]) null, null));
+				}
+			}
+		} catch (@SuppressWarnings("unused") ExceptionBase e) {
+			// 試行のみのため、失敗しても依頼の処理時にあらためて検出する
+		}
+		MainEncryptCommandLine.encryptManage(new String[] { "-e" }, null, new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	/**
+	 * オプションの位置を取得します
+	 * @param args - コマンドライン引数
+	 * @param shortOpt - オプション
+	 * @param longOpt - オプション(詳細)
+	 * @return - オプションの位置（指定なしの場合は-1）
+	 */
+	private static int indexOfOption(String[] args, String shortOpt, String longOpt) {
+		if (args == null) {
+			return -1;
+		}
+		for (int i = 0; i < args.length; i++) {
+			if (shortOpt.equals(args[i]) || longOpt.equals(args[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * オプションの引数を取得します
+	 * @param args - コマンドライン引数
+	 * @param shortOpt - オプション
+	 * @param longOpt - オプション(詳細)
+	 * @return - オプションの引数（指定なしの場合はnull）
+	 */
+	private static String getOptionValue(String[] args, String shortOpt, String longOpt) {
+		int index = indexOfOption(args, shortOpt, longOpt);
+		if (index < 0 || index + 1 >= args.length || args[index + 1].startsWith("-")) {
+			return null;
+		}
+		return args[index + 1];
+	}
+
+	/**
+	 * 書き込んだ内容を出力として依頼元へ返却するストリーム
+	 * 依頼の処理中は複数のスレッドから書き込むため、返却ごとに排他します
+	 */
+	private static class ResponseOutputStream extends OutputStream {
+		private final DataOutputStream output;
+		ResponseOutputStream(DataOutputStream output) {
+			this.output = output;
+		}
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			synchronized (this.output) {
+				this.output.writeByte(RESPONSE_OUTPUT);
+				this.output.writeInt(len);
+				this.output.write(b, off, len);
+			}
+		}
+		@Override
+		public void flush() throws IOException {
+			synchronized (this.output) {
+				this.output.flush();
+			}
+		}
+	}
+
+}
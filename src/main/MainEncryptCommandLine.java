@@ -1,10 +1,33 @@
 package main;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -14,8 +37,32 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import common.ExitCode;
+import exception.EP0102EncryptKeyNoneException;
+import exception.EP0106EncryptFormatException;
+import exception.ExceptionBase;
+import utils.AlgorithmCalibration;
+import utils.CompressUtils;
+import utils.DirectoryWalker;
+import utils.EncryptArchive;
+import utils.EncryptArchive.Entry;
+import utils.EncryptArchive.EntryOutput;
+import utils.EncryptEvents;
+import utils.EncryptEvents.CommitEvent;
+import utils.EncryptEvents.FileOperationEvent;
+import utils.EncryptHeader;
+import utils.EncryptInfo;
 import utils.EncryptUtils;
+import utils.EncryptUtils.EncryptAlgorithm;
 import utils.FileUtils;
+import utils.FileUtils.Durability;
+import utils.IncrementalState;
+import utils.KeyEnvelope;
+import utils.PhaseStats;
+import utils.Progress;
+import utils.PhaseStats.Phase;
+import utils.StagedFile;
+import utils.ThreadUtils;
+import utils.ThreadUtils.TaskProducer;
 
 /**
  * @author blank-nano
@@ -23,19 +70,45 @@ import utils.FileUtils;
  */
 public class MainEncryptCommandLine {
 
+	/** 旧形式（Base64テキスト） */
+	private static final String FORMAT_V1 = "v1";
+	/** バイナリ形式 */
+	private static final String FORMAT_V2 = "v2";
+	/** 進捗を出力する間隔の既定値（秒） */
+	private static final String DEFAULT_PROGRESS_INTERVAL = "5";
+	/** 標準入力・標準出力を表すファイルパス */
+	private static final String STANDARD_STREAM = "-";
+	/** 暗号アルゴリズム：実行環境で最も速いものを自動選択 */
+	private static final String AUTO_ALGORITHM = "auto";
+
 	/**
 	 * メインメソッドです
 	 * @param args - コマンドライン引数
 	 */
 	public static void main(String[] args) {
-		encryptManage(args);
+		// 常駐プロセスへの転送（オプションの解析や暗号処理のクラスは読み込まない）
+		if (EncryptDaemon.isClient(args)) {
+			EncryptDaemon.forward(args).exit();
+			return;
+		}
+		// 常駐プロセスとして起動
+		if (EncryptDaemon.isDaemon(args)) {
+			EncryptDaemon.serve(args).exit();
+			return;
+		}
+		// 標準出力へ書き込む場合は、メッセージを標準エラー出力へ出力する
+		encryptManage(args, null, isStandardOutput(args) ? System.err : System.out).exit();
 	}
 
 	/**
 	 * 暗号化を管理します
+	 * 常駐プロセスからも依頼ごとに呼び出すため、終了はせずに終了コードを返却します
 	 * @param args - コマンドライン引数
+	 * @param workDirectory - 相対パスの基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param out - メッセージの出力先
+	 * @return - 終了コード
 	 */
-	private static void encryptManage(String[] args) {
+	static ExitCode encryptManage(String[] args, File workDirectory, PrintStream out) {
 		// ********************************************************************************
 		// オプション定義
 		// ********************************************************************************
@@ -55,6 +128,11 @@ public class MainEncryptCommandLine {
 				.longOpt("decrypt")
 				.desc("復号モードで起動します")
 				.build());
+		options.addOption(
+				Option.builder("i")
+				.longOpt("inspect")
+				.desc("暗号文の本体を読み込まずに、形式・元の拡張子・キーの保存有無等を出力します")
+				.build());
 		options.addOption(
 				Option.builder("del")
 				.longOpt("delete")
@@ -81,10 +159,154 @@ public class MainEncryptCommandLine {
 				.hasArg()
 				.argName("第二パスワード")
 				.build());
+		options.addOption(
+				Option.builder("pub")
+				.longOpt("public-key")
+				.desc("暗号化時にRSAの公開鍵（PEM形式）を指定します※ランダムなデータキーで暗号化し、公開鍵で包んだデータキーを保存します（パスワードと同時に指定不可）")
+				.hasArg()
+				.argName("PEMファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("prv")
+				.longOpt("private-key")
+				.desc("復号時にRSAの秘密鍵（PEM形式）を指定します※公開鍵を指定して暗号化したファイルの復号に使用します（パスワードと同時に指定不可）")
+				.hasArg()
+				.argName("PEMファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("fmt")
+				.longOpt("format")
+				.desc("暗号化後のファイル形式を指定します※省略した場合はv2になります（v1は旧形式）")
+				.hasArg()
+				.argName("v1|v2")
+				.build());
+		options.addOption(
+				Option.builder("a")
+				.longOpt("algo")
+				.desc("暗号アルゴリズムを指定します※省略した場合はAESになります（AES_GCM_SEGMENT・CHACHA20_POLY1305は1MBごとに分割して並列に暗号化し、改ざんを検出します。AES_GCM_SEGMENT・AES_CTRはCPUのAES命令で高速に処理し、CHACHA20_POLY1305はAES命令のないCPUで高速です。autoは初回に計測して速い方を選択します）")
+				.hasArg()
+				.argName("AES|AES_GCM_SEGMENT|AES_CTR|CHACHA20_POLY1305|auto")
+				.build());
+		options.addOption(
+				Option.builder("cmp")
+				.longOpt("compress")
+				.desc("暗号化前に圧縮します※圧縮レベルを省略した場合は6になります（先頭を試しに圧縮して効果がない場合は圧縮しません）")
+				.hasArg()
+				.optionalArg(true)
+				.argName("圧縮レベル(1-9)")
+				.build());
+		options.addOption(
+				Option.builder("rg")
+				.longOpt("range")
+				.desc("復号時に平文の指定範囲だけを復号します（AES_GCM_SEGMENT・CHACHA20_POLY1305で暗号化したファイルのみ）※-oで出力先のファイルパスまたは-（標準出力）の指定が必要です")
+				.hasArg()
+				.argName("開始位置:長さ")
+				.build());
+		options.addOption(
+				Option.builder("dur")
+				.longOpt("durability")
+				.desc("ディスクへの同期方法を指定します※省略した場合はbatchになります（sync:ファイルごとに同期、batch:全件の書き込み後にまとめて同期、none:同期しない）")
+				.hasArg()
+				.argName("sync|batch|none")
+				.build());
+		options.addOption(
+				Option.builder("t")
+				.longOpt("threads")
+				.desc("同時に処理するファイル数を指定します※省略した場合はCPUのコア数になります")
+				.hasArg()
+				.argName("スレッド数")
+				.build());
+		options.addOption(
+				Option.builder("vt")
+				.longOpt("virtual-threads")
+				.desc("仮想スレッドで処理します（ネットワークドライブ等の入出力待ちが多い場合向け、Java21以降）")
+				.build());
+		options.addOption(
+				Option.builder("r")
+				.longOpt("recursive")
+				.desc("フォルダを指定した場合、配下のファイルをすべて処理します")
+				.build());
+		options.addOption(
+				Option.builder("inc")
+				.longOpt("include")
+				.desc("フォルダ配下の対象とするファイルをglobで指定します※省略した場合は、暗号化時はすべて、復号時は暗号化後の拡張子のファイルになります")
+				.hasArgs()
+				.argName("パターン")
+				.build());
+		options.addOption(
+				Option.builder("exc")
+				.longOpt("exclude")
+				.desc("フォルダ配下の除外するファイル・フォルダをglobで指定します")
+				.hasArgs()
+				.argName("パターン")
+				.build());
+		options.addOption(
+				Option.builder("arc")
+				.longOpt("archive")
+				.desc("暗号化時に指定したファイルをすべて1つのアーカイブに暗号化します（目次付きのため、復号時は1ファイルだけを取り出すことも可能）※暗号アルゴリズムはAES_GCM_SEGMENT・CHACHA20_POLY1305のみ指定可能です")
+				.hasArg()
+				.argName("アーカイブのファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("up")
+				.longOpt("update")
+				.desc("前回から追加・変更されたファイルのみ暗号化します（元ファイルのパス・サイズ・更新日時を状態ファイルに記録します）")
+				.hasArg()
+				.argName("状態ファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("chk")
+				.longOpt("checksum")
+				.desc("差分暗号化時に内容のハッシュ値でも変更を判定します（更新日時が変わらない変更も検出しますが、全ファイルを読み込みます）")
+				.build());
+		options.addOption(
+				Option.builder("ent")
+				.longOpt("entry")
+				.desc("アーカイブの復号時に取り出すファイルをアーカイブ内の名前で指定します※省略した場合はすべて取り出します")
+				.hasArgs()
+				.argName("名前")
+				.build());
+		options.addOption(
+				Option.builder("dm")
+				.longOpt("daemon")
+				.desc("常駐プロセスとして起動し、指定したUnixドメインソケットで暗号化・復号の依頼を受け付けます")
+				.hasArg()
+				.argName("ソケットのファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("cl")
+				.longOpt("client")
+				.desc("指定したUnixドメインソケットの常駐プロセスで暗号化・復号します（起動済みのプロセスで処理するため、暗号処理の準備を省略できます）")
+				.hasArg()
+				.argName("ソケットのファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("pg")
+				.longOpt("progress")
+				.desc("処理済みのbyte数、処理速度、完了したファイル数、残り時間を一定間隔で標準エラー出力へ出力します※省略した場合の間隔は5秒になります")
+				.hasArg()
+				.optionalArg(true)
+				.argName("間隔(秒)")
+				.build());
+		options.addOption(
+				Option.builder("st")
+				.longOpt("stats")
+				.desc("読み込み・暗号処理・独自改竄・Base64・書き込み・同期の工程ごとの時間と処理速度、ファイルごとの処理時間を出力します※ファイルパスを指定した場合はJSONで書き込みます")
+				.hasArg()
+				.optionalArg(true)
+				.argName("JSONファイルパス")
+				.build());
+		options.addOption(
+				Option.builder("o")
+				.longOpt("output")
+				.desc("出力先のファイルパスを指定します（-を指定した場合は標準出力へ書き込みます）※ファイルを1つだけ指定した場合のみ指定可能、標準入力を指定して省略した場合は標準出力になります")
+				.hasArg()
+				.argName("出力先ファイルパス")
+				.build());
 		options.addOption(
 				Option.builder("f")
 				.longOpt("file")
-				.desc("暗号化する対象のファイルパスを入力します")
+				.desc("暗号化する対象のファイルパスを入力します（-を指定した場合は標準入力から読み込みます）")
 				.hasArgs()
 				.argName("暗号化ファイルパス")
 				.build());
@@ -93,11 +315,10 @@ public class MainEncryptCommandLine {
 		// 引数チェック
 		// ********************************************************************************
 		if (args == null || args.length == 0) {
-			System.out.println("引数がありません");
-			System.out.println("");
-			new HelpFormatter().printHelp("オプションは以下の通りです", options);
-			ExitCode.ARG_NONE.exit();
-			return;
+			out.println("引数がありません");
+			out.println("");
+			printHelp(out, options);
+			return ExitCode.ARG_NONE;
 		}
 
 		// ********************************************************************************
@@ -105,18 +326,25 @@ public class MainEncryptCommandLine {
 		// ********************************************************************************
 		List<String> argsList = Arrays.asList(args);
 		if (argsList.contains("-?") || argsList.contains("-h") || argsList.contains("--help")) {
-			System.out.println("使用方法：\tNanoEncrypt [options] -e -f <filePath...>");
-			System.out.println("\t\t\t（暗号化する場合）");
-			System.out.println("\tまたは\tNanoEncrypt [options] -e -p <password1> (-pp <password2>) -f <filePath...>");
-			System.out.println("\t\t\t（パスワード1つ、または2つで暗号化する場合）");
-			System.out.println("\tまたは\tNanoEncrypt [options] -d -f <filePath...>");
-			System.out.println("\t\t\t（復号する場合）");
-			System.out.println("\tまたは\tNanoEncrypt [options] -d -p <password1> (-pp <password2>) -f <filePath...>");
-			System.out.println("\t\t\t（パスワード1つ、または2つで復号する場合）");
-			System.out.println("");
-			new HelpFormatter().printHelp("オプションは以下の通りです", options);
-			ExitCode.Success.exit();
-			return;
+			out.println("使用方法：\tNanoEncrypt [options] -e -f <filePath...>");
+			out.println("\t\t\t（暗号化する場合）");
+			out.println("\tまたは\tNanoEncrypt [options] -e -p <password1> (-pp <password2>) -f <filePath...>");
+			out.println("\t\t\t（パスワード1つ、または2つで暗号化する場合）");
+			out.println("\tまたは\tNanoEncrypt [options] -d -f <filePath...>");
+			out.println("\t\t\t（復号する場合）");
+			out.println("\tまたは\tNanoEncrypt [options] -d -p <password1> (-pp <password2>) -f <filePath...>");
+			out.println("\t\t\t（パスワード1つ、または2つで復号する場合）");
+			out.println("\tまたは\tNanoEncrypt [options] -i -f <filePath...>");
+			out.println("\t\t\t（暗号文の形式・元の拡張子・キーの保存有無を表示する場合）");
+			out.println("\tまたは\tNanoEncrypt -dm <socketPath>");
+			out.println("\t\t\t（常駐プロセスとして起動する場合）");
+			out.println("\tまたは\tNanoEncrypt -cl <socketPath> [options] -e -f <filePath...>");
+			out.println("\t\t\t（常駐プロセスで暗号化・復号する場合）");
+			out.println("\tまたは\t<command> | NanoEncrypt [options] -e -p <password1> -f - > <filePath>");
+			out.println("\t\t\t（標準入力から標準出力へ暗号化する場合）");
+			out.println("");
+			printHelp(out, options);
+			return ExitCode.Success;
 		}
 
 		// ********************************************************************************
@@ -126,13 +354,21 @@ public class MainEncryptCommandLine {
 		try {
 			// 変換
 			commandLine = new DefaultParser().parse(options, args);
+			// 常駐プロセス
+			if (commandLine.hasOption("dm") || commandLine.hasOption("cl")) {
+				throw new ParseException("常駐プロセスへの依頼では常駐・転送の指定不可");
+			}
 			// モード
 			if (commandLine.hasOption("e")) {
-				if (commandLine.hasOption("d")) {
+				if (commandLine.hasOption("d") || commandLine.hasOption("i")) {
+					throw new ParseException("重複モード指定");
+				}
+			} else if (commandLine.hasOption("d")) {
+				if (commandLine.hasOption("i")) {
 					throw new ParseException("重複モード指定");
 				}
 			} else {
-				if (!commandLine.hasOption("d")) {
+				if (!commandLine.hasOption("i")) {
 					throw new ParseException("モード指定なし");
 				}
 			}
@@ -140,19 +376,193 @@ public class MainEncryptCommandLine {
 			if (!commandLine.hasOption("p") && commandLine.hasOption("pp")) {
 				throw new ParseException("パスワード組み合わせ不正");
 			}
+			// 公開鍵・秘密鍵
+			if (commandLine.hasOption("pub") || commandLine.hasOption("prv")) {
+				if (commandLine.hasOption("p")) {
+					throw new ParseException("公開鍵・秘密鍵とパスワードは同時に指定不可");
+				}
+				if (commandLine.hasOption("pub") && !commandLine.hasOption("e")) {
+					throw new ParseException("公開鍵指定は暗号化時のみ指定可能");
+				}
+				if (commandLine.hasOption("prv") && !commandLine.hasOption("d")) {
+					throw new ParseException("秘密鍵指定は復号時のみ指定可能");
+				}
+				if (FORMAT_V1.equals(commandLine.getOptionValue("fmt"))) {
+					throw new ParseException("v1形式は公開鍵・秘密鍵未対応");
+				}
+				String keyPath = commandLine.hasOption("pub") ? commandLine.getOptionValue("pub") : commandLine.getOptionValue("prv");
+				if (!resolve(workDirectory, keyPath).isFile()) {
+					throw new ParseException("鍵ファイル未存在\t" + keyPath);
+				}
+			}
+			// 形式
+			if (commandLine.hasOption("fmt")) {
+				String format = commandLine.getOptionValue("fmt");
+				if (!FORMAT_V1.equals(format) && !FORMAT_V2.equals(format)) {
+					throw new ParseException("形式指定不正\t" + format);
+				}
+			}
+			// 暗号アルゴリズム
+			if (commandLine.hasOption("a")) {
+				String algorithm = commandLine.getOptionValue("a");
+				// 自動選択の計測は暗号化時まで行わない
+				boolean auto = AUTO_ALGORITHM.equalsIgnoreCase(algorithm);
+				if (!auto && getAlgorithm(commandLine) == null) {
+					throw new ParseException("暗号アルゴリズム指定不正\t" + algorithm);
+				}
+				if ((auto || getAlgorithm(commandLine) != EncryptAlgorithm.AES) && FORMAT_V1.equals(commandLine.getOptionValue("fmt"))) {
+					throw new ParseException("v1形式はAESのみ対応\t" + algorithm);
+				}
+			}
+			// 圧縮
+			if (commandLine.hasOption("cmp")) {
+				String level = commandLine.getOptionValue("cmp");
+				if (level != null && !level.matches("[1-9]")) {
+					throw new ParseException("圧縮レベル指定不正\t" + level);
+				}
+				if (!commandLine.hasOption("e")) {
+					throw new ParseException("圧縮指定は暗号化時のみ指定可能");
+				}
+				if (FORMAT_V1.equals(commandLine.getOptionValue("fmt"))) {
+					throw new ParseException("v1形式は圧縮未対応");
+				}
+				if (commandLine.hasOption("arc")) {
+					throw new ParseException("アーカイブは圧縮未対応");
+				}
+			}
+			// 範囲
+			if (commandLine.hasOption("rg")) {
+				String range = commandLine.getOptionValue("rg");
+				if (!range.matches("[0-9]{1,18}:[0-9]{1,18}")) {
+					throw new ParseException("範囲指定不正\t" + range);
+				}
+				if (!commandLine.hasOption("d")) {
+					throw new ParseException("範囲指定は復号時のみ指定可能");
+				}
+				if (commandLine.hasOption("del")) {
+					throw new ParseException("範囲指定時は元のファイルを削除不可");
+				}
+				// 一部だけの平文で元のファイル名の平文を上書きしないよう、出力先の指定を必須にする
+				if (!commandLine.hasOption("o")) {
+					throw new ParseException("範囲指定時は出力先の指定が必要");
+				}
+				// 範囲を含むセグメントまで読み飛ばすため、標準入力は指定不可
+				if (commandLine.hasOption("f") && Arrays.asList(commandLine.getOptionValues("f")).contains(STANDARD_STREAM)) {
+					throw new ParseException("範囲指定時は標準入力指定不可");
+				}
+			}
+			// アーカイブ
+			if (commandLine.hasOption("arc")) {
+				if (!commandLine.hasOption("e")) {
+					throw new ParseException("アーカイブ指定は暗号化時のみ指定可能");
+				}
+				if (FORMAT_V1.equals(commandLine.getOptionValue("fmt"))) {
+					throw new ParseException("v1形式はアーカイブ未対応");
+				}
+				// 1ファイルだけを取り出せるよう、アーカイブはセグメント分割する暗号アルゴリズムのみ（autoは常に該当）
+				if (commandLine.hasOption("a") && !AUTO_ALGORITHM.equalsIgnoreCase(commandLine.getOptionValue("a")) && getAlgorithm(commandLine) != null && !getAlgorithm(commandLine).isSegmented()) {
+					throw new ParseException("アーカイブは分割形式の暗号アルゴリズムのみ対応\t" + commandLine.getOptionValue("a"));
+				}
+			}
+			// 差分暗号化
+			if (commandLine.hasOption("up")) {
+				if (!commandLine.hasOption("e")) {
+					throw new ParseException("差分暗号化は暗号化時のみ指定可能");
+				}
+				if (commandLine.hasOption("arc") || isStream(commandLine)) {
+					throw new ParseException("差分暗号化時はアーカイブ・標準入力・出力先指定不可");
+				}
+				if (commandLine.hasOption("del")) {
+					throw new ParseException("差分暗号化時は元のファイルを削除不可");
+				}
+			}
+			if (commandLine.hasOption("chk") && !commandLine.hasOption("up")) {
+				throw new ParseException("ハッシュ値での判定は差分暗号化時のみ指定可能");
+			}
+			if (commandLine.hasOption("ent")) {
+				if (!commandLine.hasOption("d")) {
+					throw new ParseException("アーカイブ内の名前指定は復号時のみ指定可能");
+				}
+				if (commandLine.hasOption("rg")) {
+					throw new ParseException("アーカイブ内の名前指定と範囲指定は同時に指定不可");
+				}
+			}
+			// 同期方法
+			if (commandLine.hasOption("dur")) {
+				String durability = commandLine.getOptionValue("dur");
+				if (Durability.valueOfValue(durability) == null) {
+					throw new ParseException("同期方法指定不正\t" + durability);
+				}
+			}
+			// スレッド数
+			if (commandLine.hasOption("t")) {
+				String threads = commandLine.getOptionValue("t");
+				if (!threads.matches("[1-9][0-9]{0,3}")) {
+					throw new ParseException("スレッド数不正\t" + threads);
+				}
+			}
 			// ファイル
+			if (!commandLine.hasOption("f")) {
+				throw new ParseException("ファイル指定なし");
+			}
 			if (commandLine.hasOption("f")) {
 				for (String file : commandLine.getOptionValues("f")) {
-					if (!new File(file).exists()) {
+					if (STANDARD_STREAM.equals(file)) {
+						continue;
+					}
+					if (!resolve(workDirectory, file).exists()) {
 						throw new ParseException("ファイル未存在\t" + file);
 					}
+					if (resolve(workDirectory, file).isDirectory() && !commandLine.hasOption("r")) {
+						throw new ParseException("フォルダ指定時は-r指定が必要\t" + file);
+					}
+				}
+			}
+			// 統計（常駐プロセスは依頼が並列に処理されるため集計を分けられない）
+			if (commandLine.hasOption("st") && workDirectory != null) {
+				throw new ParseException("常駐プロセスへの依頼では統計出力不可");
+			}
+			// 進捗（常駐プロセスは依頼が並列に処理されるため集計を分けられない）
+			if (commandLine.hasOption("pg")) {
+				String interval = commandLine.getOptionValue("pg");
+				if (interval != null && !interval.matches("[1-9][0-9]{0,4}")) {
+					throw new ParseException("進捗の間隔指定不正\t" + interval);
+				}
+				if (workDirectory != null) {
+					throw new ParseException("常駐プロセスへの依頼では進捗出力不可");
+				}
+			}
+			// ヘッダー表示
+			if (commandLine.hasOption("i")) {
+				if (commandLine.hasOption("del") || commandLine.hasOption("st") || commandLine.hasOption("pg")) {
+					throw new ParseException("ヘッダー表示時は元のファイルの削除・統計・進捗指定不可");
+				}
+				if (isStream(commandLine)) {
+					throw new ParseException("ヘッダー表示時は標準入力・出力先指定不可");
+				}
+			}
+			// 標準入出力・出力先
+			if (isStream(commandLine)) {
+				if (commandLine.getOptionValues("f").length != 1) {
+					throw new ParseException("標準入力・出力先指定時はファイルを1つのみ指定可能");
+				}
+				if (workDirectory != null && (STANDARD_STREAM.equals(commandLine.getOptionValue("f")) || !commandLine.hasOption("o") || STANDARD_STREAM.equals(commandLine.getOptionValue("o")))) {
+					throw new ParseException("常駐プロセスへの依頼では標準入出力の指定不可");
+				}
+				if (FORMAT_V1.equals(commandLine.getOptionValue("fmt"))) {
+					throw new ParseException("v1形式は標準入力・出力先指定未対応");
+				}
+				if (commandLine.hasOption("r") || commandLine.hasOption("arc")) {
+					throw new ParseException("標準入力・出力先指定時はフォルダ・アーカイブ指定不可");
+				}
+				if (commandLine.hasOption("del")) {
+					throw new ParseException("標準入力・出力先指定時は元のファイルを削除不可");
 				}
 			}
 		} catch (ParseException e) {
-			System.out.println("オプションの形式が異なります　※" + e.getMessage());
-			new HelpFormatter().printHelp("オプションは以下の通りです", options);
-			ExitCode.ARG_ATTRIBUTE.exit();
-			return;
+			out.println("オプションの形式が異なります　※" + e.getMessage());
+			printHelp(out, options);
+			return ExitCode.ARG_ATTRIBUTE;
 		}
 
 		// ********************************************************************************
@@ -167,84 +577,800 @@ public class MainEncryptCommandLine {
 		} else if (commandLine.hasOption("p")) {
 			key1 = commandLine.getOptionValue("p");
 		}
-		if (commandLine.hasOption("e")) {
+		// 大きいファイルから処理して、終盤にコアが空かないようにする
+		List<String> files = new ArrayList<>();
+		for (String file : commandLine.getOptionValues("f")) {
+			files.add(resolve(workDirectory, file).getPath());
+		}
+		files.sort(Comparator.comparingLong((String file) -> new File(file).length()).reversed());
+		int threads = commandLine.hasOption("t") ? Integer.parseInt(commandLine.getOptionValue("t")) : ThreadUtils.getDefaultThreads();
+		if (commandLine.hasOption("vt") && !ThreadUtils.isVirtualThreadSupported()) {
+			out.println("仮想スレッドに未対応のため、通常のスレッドで実行します");
+		}
+		ExecutorService executor = ThreadUtils.createExecutor(threads, commandLine.hasOption("vt"));
+		final CommandLine cmd = commandLine;
+		final String encryptKey = key1;
+		final String ivKey = key2;
+		// 処理中の一時ファイル（失敗時にすべて破棄する）
+		final Queue<StagedFile> stagedFiles = new ConcurrentLinkedQueue<>();
+		if (commandLine.hasOption("st")) {
+			PhaseStats.enable();
+		}
+		if (commandLine.hasOption("pg")) {
+			Progress.start(TimeUnit.SECONDS.toMillis(Long.parseLong(commandLine.getOptionValue("pg", DEFAULT_PROGRESS_INTERVAL))), Progress.printer(System.err));
+		}
+		if (commandLine.hasOption("i")) {
+			// ヘッダー表示（本体は読み込まないため、一時ファイルも作成しない）
+			try {
+				List<String> lines = ThreadUtils.invokeAll(executor, createInspectTasks(cmd, files, threads));
+				out.println("ファイルパス\t" + EncryptInfo.toHeaderLine());
+				lines.forEach(out::println);
+			} catch (@SuppressWarnings("unused") Exception e) {
+				out.println("ヘッダーの読み込みに失敗しました");
+				return ExitCode.GENERAL_ERR5;
+			} finally {
+				executor.shutdownNow();
+			}
+		} else if (commandLine.hasOption("e")) {
 			// 暗号化
+			IncrementalState state = null;
 			try {
-				HashMap<String, byte[]> encryptMap = new HashMap<>();
-				HashMap<String, String> changeMap = new HashMap<>();
-				// 暗号化キーを指定して暗号化
-				for (String file : commandLine.getOptionValues("f")) {
-					byte[] data = FileUtils.readNormalFileToByte(file);
-					// 暗号化
-					if (commandLine.hasOption("pp")) {
-						data = EncryptUtils.doEncryptToBytes(data, key1, key2);
-					} else if (commandLine.hasOption("p")) {
-						data = EncryptUtils.doEncryptToBytes(data, key1);
-					} else {
-						data = EncryptUtils.doEncryptToBytes(data);
-					}
-					// 元の拡張子保存
-					data = EncryptUtils.saveExtension(data, FileUtils.getExtension(file));
-					// 拡張子変更
-					String ext = null;
-					if (commandLine.hasOption("ext")) {
-						ext = commandLine.getOptionValue("ext");
-					} else {
-						ext = ".log";
-					}
-					String filePath = FileUtils.changeExtension(file, ext);
-					encryptMap.put(filePath, data);
-					changeMap.put(filePath, file);
-				}
-				// すべての暗号化に成功した場合、暗号文をファイルに出力
-				for (Entry<String, byte[]> entry : encryptMap.entrySet()) {
-					FileUtils.writeNormalFile(entry.getKey(), entry.getValue(), false);
-					new File(entry.getKey()).setLastModified(new File(changeMap.get(entry.getKey())).lastModified());
-					if (commandLine.hasOption("del")) {
-						FileUtils.deleteFile(changeMap.get(entry.getKey()));
+				// 公開鍵を指定した場合は、データキーの作成と公開鍵での暗号化を全ファイルで1回だけ行う
+				final KeyEnvelope envelope = cmd.hasOption("pub") ? KeyEnvelope.forEncrypt(resolve(workDirectory, cmd.getOptionValue("pub")).getPath()) : null;
+				List<FileResult> results;
+				if (isStream(commandLine)) {
+					// 標準入力・出力先を指定した場合は1件だけ順次暗号化
+					results = Collections.singletonList(measure(cmd, files.get(0), new File(files.get(0)).length(), () -> encryptStream(cmd, files.get(0), workDirectory, encryptKey, ivKey, envelope, stagedFiles)).call());
+				} else if (commandLine.hasOption("arc")) {
+					// 暗号化キーを指定して1つのアーカイブに暗号化
+					String archivePath = resolve(workDirectory, commandLine.getOptionValue("arc")).getAbsolutePath();
+					results = Collections.singletonList(measure(cmd, archivePath, 0, () -> encryptArchive(cmd, files, archivePath, threads, encryptKey, ivKey, envelope, stagedFiles)).call());
+				} else {
+					// 差分暗号化の場合は前回の状態を開く
+					if (commandLine.hasOption("up")) {
+						state = IncrementalState.open(resolve(workDirectory, commandLine.getOptionValue("up")).getPath(), commandLine.hasOption("chk"));
 					}
+					// 暗号化キーを指定して暗号化（フォルダは列挙しながら順次暗号化）
+					final IncrementalState incremental = state;
+					TaskProducer<FileResult> tasks = createTasks(cmd, files, threads, file -> () -> encryptFile(cmd, file, encryptKey, ivKey, envelope, incremental, stagedFiles));
+					results = ThreadUtils.invokeAll(executor, tasks);
 				}
+				// すべての暗号化に成功した場合、一時ファイルを暗号文のファイルに置き換え
+				commit(cmd, results, executor);
+				// 置き換えに成功した場合のみ、今回の状態を保存
+				if (state != null) {
+					state.save(getDurability(cmd));
+					long skipped = results.stream().filter(result -> result.getSourcePaths().isEmpty()).count();
+					out.println("差分暗号化\t暗号化 " + (results.size() - skipped) + "件\t変更なし " + skipped + "件");
+				}
+				printStats(cmd, workDirectory, out);
 			} catch (@SuppressWarnings("unused") Exception e) {
-				System.out.println("暗号化に失敗しました");
-				ExitCode.GENERAL_ERR1.exit();
+				rollback(executor, stagedFiles);
+				out.println("暗号化に失敗しました");
+				return ExitCode.GENERAL_ERR1;
+			} finally {
+				Progress.stop();
+				PhaseStats.disable();
+				executor.shutdownNow();
+				closeQuietly(state);
 			}
 		} else {
 			// 復号
 			try {
-				HashMap<String, byte[]> decryptMap = new HashMap<>();
-				HashMap<String, String> changeMap = new HashMap<>();
-				// 暗号化キーを指定して復号
-				for (String file : commandLine.getOptionValues("f")) {
-					byte[] data = FileUtils.readNormalFileToByte(file);
-					// 元の拡張子取得
-					String ext = EncryptUtils.loadExtension(data);
-					data = EncryptUtils.deleteExtension(data);
-					// 復号
-					if (commandLine.hasOption("pp")) {
-						data = EncryptUtils.doDecryptToBytes(data, key1, key2);
-					} else if (commandLine.hasOption("p")) {
-						data = EncryptUtils.doDecryptToBytes(data, key1);
-					} else {
-						data = EncryptUtils.doDecryptToBytes(data);
+				// 秘密鍵を指定した場合は、データキーの復号を同じデータキーごとに1回だけ行う
+				final KeyEnvelope envelope = cmd.hasOption("prv") ? KeyEnvelope.forDecrypt(resolve(workDirectory, cmd.getOptionValue("prv")).getPath()) : null;
+				List<FileResult> results;
+				if (isStream(commandLine)) {
+					// 標準入力・出力先を指定した場合は1件だけ順次復号
+					results = Collections.singletonList(measure(cmd, files.get(0), new File(files.get(0)).length(), () -> decryptStream(cmd, files.get(0), workDirectory, encryptKey, ivKey, envelope, stagedFiles)).call());
+				} else {
+					// 暗号化キーを指定して復号（フォルダは列挙しながら順次復号）
+					TaskProducer<FileResult> tasks = createTasks(cmd, files, threads, file -> () -> decryptFile(cmd, file, encryptKey, ivKey, envelope, stagedFiles));
+					results = ThreadUtils.invokeAll(executor, tasks);
+				}
+				// すべての復号に成功した場合、一時ファイルを平文のファイルに置き換え
+				commit(cmd, results, executor);
+				printStats(cmd, workDirectory, out);
+			} catch (@SuppressWarnings("unused") Exception e) {
+				rollback(executor, stagedFiles);
+				out.println("復号に失敗しました");
+				return ExitCode.GENERAL_ERR2;
+			} finally {
+				Progress.stop();
+				PhaseStats.disable();
+				executor.shutdownNow();
+			}
+		}
+		return ExitCode.Success;
+	}
+
+	/**
+	 * 標準出力へ書き込む指定か判定します
+	 * オプションの解析前に、メッセージの出力先を決めるために使用します
+	 * @param args - コマンドライン引数
+	 * @return - 標準出力へ書き込む場合はtrue
+	 */
+	private static boolean isStandardOutput(String[] args) {
+		if (args == null) {
+			return false;
+		}
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (("-o".equals(args[i]) || "--output".equals(args[i])) && STANDARD_STREAM.equals(args[i + 1])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 標準入力または出力先を指定したか判定します
+	 * @param commandLine - コマンドライン
+	 * @return - 標準入力または出力先を指定した場合はtrue
+	 */
+	private static boolean isStream(CommandLine commandLine) {
+		return commandLine.hasOption("o") || Arrays.asList(commandLine.getOptionValues("f")).contains(STANDARD_STREAM);
+	}
+
+	/**
+	 * オプションの一覧を出力します
+	 * @param out - 出力先
+	 * @param options - オプション定義
+	 */
+	private static void printHelp(PrintStream out, Options options) {
+		HelpFormatter formatter = new HelpFormatter();
+		PrintWriter writer = new PrintWriter(out);
+		formatter.printHelp(writer, formatter.getWidth(), "オプションは以下の通りです", null, options, formatter.getLeftPadding(), formatter.getDescPadding(), null);
+		writer.flush();
+	}
+
+	/**
+	 * 基準フォルダからの相対パスを解決します
+	 * @param workDirectory - 基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param path - ファイル・フォルダパス
+	 * @return - 解決したファイル（絶対パスの場合や基準フォルダがない場合はそのまま）
+	 */
+	private static File resolve(File workDirectory, String path) {
+		File file = new File(path);
+		if (workDirectory == null || file.isAbsolute()) {
+			return file;
+		}
+		return new File(workDirectory, path);
+	}
+
+	/**
+	 * 指定されたファイルとフォルダ配下のファイルから処理を生成します
+	 * フォルダは一覧を作らずに並列に列挙し、見つかったファイルから順次処理を登録します
+	 * @param commandLine - コマンドライン
+	 * @param files - 指定されたファイル・フォルダパス
+	 * @param threads - 列挙に使用するスレッド数
+	 * @param taskFactory - ファイルパスから処理を作成する関数
+	 * @return - 処理の生成元
+	 */
+	private static TaskProducer<FileResult> createTasks(CommandLine commandLine, List<String> files, int threads, Function<String, Callable<FileResult>> taskFactory) {
+		DirectoryWalker walker = createWalker(commandLine);
+		return submitter -> {
+			for (String file : files) {
+				if (new File(file).isDirectory()) {
+					walker.walk(file, threads, path -> submitter.accept(measure(commandLine, path, new File(path).length(), taskFactory.apply(path))));
+				} else {
+					submitter.accept(measure(commandLine, file, new File(file).length(), taskFactory.apply(file)));
+				}
+			}
+		};
+	}
+
+	/**
+	 * 指定されたファイルとフォルダ配下のファイルから、ヘッダーを読み込んで1行にする処理を生成します
+	 * 暗号文の形式が不正なファイルは、中断せずに理由を出力します
+	 * @param commandLine - コマンドライン
+	 * @param files - 指定されたファイル・フォルダパス
+	 * @param threads - 列挙に使用するスレッド数
+	 * @return - 処理の生成元
+	 */
+	private static TaskProducer<String> createInspectTasks(CommandLine commandLine, List<String> files, int threads) {
+		DirectoryWalker walker = createWalker(commandLine);
+		Function<String, Callable<String>> taskFactory = file -> () -> {
+			try {
+				return file + "\t" + EncryptInfo.read(file).toLine();
+			} catch (EP0106EncryptFormatException e) {
+				return file + "\t" + e.getMessage();
+			}
+		};
+		return submitter -> {
+			for (String file : files) {
+				if (new File(file).isDirectory()) {
+					walker.walk(file, threads, path -> submitter.accept(taskFactory.apply(path)));
+				} else {
+					submitter.accept(taskFactory.apply(file));
+				}
+			}
+		};
+	}
+
+	/**
+	 * 処理対象として進捗に追加し、処理時間をファイルごとの処理時間として集計してFlight Recorderへ記録する処理を作成します
+	 * @param commandLine - コマンドライン
+	 * @param file - 処理するファイルパス
+	 * @param length - 処理するbyte数（不明な場合は0）
+	 * @param task - 1ファイルの処理
+	 * @return - 処理時間を集計・記録する処理
+	 */
+	private static Callable<FileResult> measure(CommandLine commandLine, String file, long length, Callable<FileResult> task) {
+		Progress.addTotal(length);
+		return () -> {
+			boolean encrypt = commandLine.hasOption("e");
+			FileOperationEvent event = new FileOperationEvent(file, encrypt ? EncryptEvents.ENCRYPT : EncryptEvents.DECRYPT, encrypt ? getAlgorithm(commandLine) : null, length);
+			event.begin();
+			long start = PhaseStats.start();
+			try {
+				FileResult result = task.call();
+				PhaseStats.recordFile(start);
+				Progress.addFile();
+				event.success();
+				return result;
+			} finally {
+				event.finish();
+			}
+		};
+	}
+
+	/**
+	 * 統計を指定した場合は、工程ごとの集計結果を出力します
+	 * @param commandLine - コマンドライン
+	 * @param workDirectory - 相対パスの基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param out - 出力先
+	 * @throws IOException - JSONを書き込みできない場合に発生
+	 */
+	private static void printStats(CommandLine commandLine, File workDirectory, PrintStream out) throws IOException {
+		if (!commandLine.hasOption("st")) {
+			return;
+		}
+		String jsonPath = commandLine.getOptionValue("st");
+		if (jsonPath == null) {
+			out.println(PhaseStats.toText());
+		} else {
+			FileUtils.writeNormalFile(resolve(workDirectory, jsonPath).getPath(), PhaseStats.toJson(), false);
+		}
+	}
+
+	/**
+	 * 指定された対象・除外のパターンでフォルダを列挙する準備をします
+	 * @param commandLine - コマンドライン
+	 * @return - フォルダの列挙
+	 */
+	private static DirectoryWalker createWalker(CommandLine commandLine) {
+		List<String> includes = new ArrayList<>();
+		if (commandLine.hasOption("inc")) {
+			includes.addAll(Arrays.asList(commandLine.getOptionValues("inc")));
+		} else if (commandLine.hasOption("d") || commandLine.hasOption("i")) {
+			// 復号・ヘッダー表示時は暗号化後の拡張子のファイルのみ
+			String ext = commandLine.hasOption("ext") ? commandLine.getOptionValue("ext") : ".log";
+			includes.add("*" + (ext.startsWith(".") ? ext : "." + ext));
+		}
+		List<String> excludes = commandLine.hasOption("exc") ? Arrays.asList(commandLine.getOptionValues("exc")) : new ArrayList<>();
+		return new DirectoryWalker(includes, excludes);
+	}
+
+	/**
+	 * 1ファイルを暗号化します
+	 * 暗号文は出力先と同じフォルダの一時ファイルに書き込み、この時点では出力先に反映しません
+	 * @param commandLine - コマンドライン
+	 * @param file - 暗号化するファイルパス
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param state - 差分暗号化の前回の状態（差分暗号化しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 暗号化結果（前回から変更がない場合は元ファイル・出力ファイルなし）
+	 * @throws IOException - ファイルを読み書きできない場合に発生
+	 * @throws ExceptionBase - 暗号化に失敗した場合に発生
+	 */
+	private static FileResult encryptFile(CommandLine commandLine, String file, String key1, String key2, KeyEnvelope envelope, IncrementalState state, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		// 拡張子変更
+		String ext = null;
+		if (commandLine.hasOption("ext")) {
+			ext = commandLine.getOptionValue("ext");
+		} else {
+			ext = ".log";
+		}
+		String outputPath = FileUtils.changeExtension(file, ext);
+		// 差分暗号化で前回から変更がない場合は何もしない
+		if (state != null && state.isUnchanged(file, outputPath)) {
+			return new FileResult(Collections.emptyList(), Collections.emptyList());
+		}
+		StagedFile stagedFile = StagedFile.create(outputPath, getDurability(commandLine));
+		stagedFiles.add(stagedFile);
+		if (FORMAT_V1.equals(commandLine.getOptionValue("fmt"))) {
+			byte[] data = FileUtils.readNormalFileToByte(file);
+			// 暗号化
+			if (commandLine.hasOption("pp")) {
+				data = EncryptUtils.doEncryptToBytes(data, key1, key2);
+			} else if (commandLine.hasOption("p")) {
+				data = EncryptUtils.doEncryptToBytes(data, key1);
+			} else {
+				data = EncryptUtils.doEncryptToBytes(data);
+			}
+			// 元の拡張子保存
+			data = EncryptUtils.saveExtension(data, FileUtils.getExtension(file));
+			long start = PhaseStats.start();
+			stagedFile.getOutputStream().write(data);
+			PhaseStats.record(Phase.WRITE, start, data.length);
+		} else {
+			// 暗号化（元の拡張子はヘッダーに保存）
+			try (FileChannel input = FileUtils.openNormalFileToChannel(file)) {
+				if (envelope != null) {
+					EncryptUtils.doEncryptToContainer(getAlgorithm(commandLine), getCompressLevel(commandLine), input, stagedFile.getChannel(), FileUtils.getExtension(file), envelope);
+				} else {
+					EncryptUtils.doEncryptToContainer(getAlgorithm(commandLine), getCompressLevel(commandLine), input, stagedFile.getChannel(), FileUtils.getExtension(file), key1, key2);
+				}
+			}
+		}
+		stagedFile.setLastModified(new File(file).lastModified());
+		stagedFile.finish();
+		return new FileResult(file, stagedFile);
+	}
+
+	/**
+	 * 1ファイルを復号します
+	 * 平文は出力先と同じフォルダの一時ファイルに書き込み、この時点では出力先に反映しません
+	 * @param commandLine - コマンドライン
+	 * @param file - 復号するファイルパス
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 復号結果
+	 * @throws IOException - ファイルを読み書きできない場合に発生
+	 * @throws ExceptionBase - 復号に失敗した場合に発生
+	 */
+	private static FileResult decryptFile(CommandLine commandLine, String file, String key1, String key2, KeyEnvelope envelope, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		StagedFile stagedFile;
+		try (FileChannel input = FileUtils.openNormalFileToChannel(file)) {
+			if (EncryptHeader.isContainer(input)) {
+				// 元の拡張子取得（ヘッダーの直後までだけ読み込む）
+				EncryptHeader header = EncryptHeader.read(Channels.newInputStream(input));
+				if (header.isArchive()) {
+					return decryptArchive(commandLine, file, header, input, getEncryptKey(header, key1, envelope), key2, envelope, stagedFiles);
+				}
+				stagedFile = StagedFile.create(FileUtils.changeExtension(file, header.getExtension()), getDurability(commandLine));
+				stagedFiles.add(stagedFile);
+				// 復号
+				EncryptUtils.doDecryptFromContainer(header, input, stagedFile.getChannel(), getEncryptKey(header, key1, envelope), key2);
+			} else {
+				byte[] data = FileUtils.readNormalFileToByte(file);
+				// 元の拡張子取得
+				String ext = EncryptUtils.loadExtension(data);
+				data = EncryptUtils.deleteExtension(data);
+				stagedFile = StagedFile.create(FileUtils.changeExtension(file, ext), getDurability(commandLine));
+				stagedFiles.add(stagedFile);
+				// 復号
+				if (commandLine.hasOption("pp")) {
+					data = EncryptUtils.doDecryptToBytes(data, key1, key2);
+				} else if (commandLine.hasOption("p")) {
+					data = EncryptUtils.doDecryptToBytes(data, key1);
+				} else {
+					data = EncryptUtils.doDecryptToBytes(data);
+				}
+				long start = PhaseStats.start();
+				stagedFile.getOutputStream().write(data);
+				PhaseStats.record(Phase.WRITE, start, data.length);
+			}
+		}
+		stagedFile.setLastModified(new File(file).lastModified());
+		stagedFile.finish();
+		return new FileResult(file, stagedFile);
+	}
+
+	/**
+	 * 標準入力またはファイルを暗号化し、標準出力または出力先へ書き込みます
+	 * 固定長ずつ読み込んで暗号化するため、標準入力の内容をディスクに書き出さずに一定のメモリで処理します
+	 * 標準入力の場合は元の拡張子がないため、標準入力から暗号化したことをヘッダーに保存します
+	 * @param commandLine - コマンドライン
+	 * @param file - 暗号化するファイルパス（-の場合は標準入力）
+	 * @param workDirectory - 相対パスの基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 暗号化結果
+	 * @throws IOException - 読み書きできない場合に発生
+	 * @throws ExceptionBase - 暗号化に失敗した場合に発生
+	 */
+	private static FileResult encryptStream(CommandLine commandLine, String file, File workDirectory, String key1, String key2, KeyEnvelope envelope, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		boolean standardInput = STANDARD_STREAM.equals(file);
+		StagedFile stagedFile = createStreamOutput(commandLine, workDirectory, stagedFiles);
+		OutputStream output = stagedFile == null ? FileUtils.openStandardOutput() : stagedFile.getOutputStream();
+		InputStream input = standardInput ? FileUtils.openStandardInput() : FileUtils.openNormalFileToStream(file);
+		try {
+			long length = standardInput ? EncryptHeader.UNKNOWN_LENGTH : new File(file).length();
+			if (envelope != null) {
+				EncryptUtils.doEncryptToContainer(getAlgorithm(commandLine), getCompressLevel(commandLine), input, output, standardInput ? null : FileUtils.getExtension(file), length, envelope);
+			} else {
+				EncryptUtils.doEncryptToContainer(getAlgorithm(commandLine), getCompressLevel(commandLine), input, output, standardInput ? null : FileUtils.getExtension(file), length, key1, key2);
+			}
+		} finally {
+			// 標準入力は閉じない
+			if (!standardInput) {
+				input.close();
+			}
+		}
+		output.flush();
+		return finishStream(file, stagedFile);
+	}
+
+	/**
+	 * 標準入力またはファイルを復号し、標準出力または出力先へ書き込みます
+	 * ヘッダーから形式を判定するため、v2形式のみ対応します（アーカイブは除く）
+	 * @param commandLine - コマンドライン
+	 * @param file - 復号するファイルパス（-の場合は標準入力）
+	 * @param workDirectory - 相対パスの基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 復号結果
+	 * @throws IOException - 読み書きできない場合に発生
+	 * @throws ExceptionBase - 復号に失敗した場合や、v2形式以外の場合に発生
+	 */
+	private static FileResult decryptStream(CommandLine commandLine, String file, File workDirectory, String key1, String key2, KeyEnvelope envelope, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		if (commandLine.hasOption("rg")) {
+			return decryptFileRange(commandLine, file, workDirectory, key1, key2, envelope, stagedFiles);
+		}
+		boolean standardInput = STANDARD_STREAM.equals(file);
+		InputStream input = standardInput ? FileUtils.openStandardInput() : FileUtils.openNormalFileToStream(file);
+		StagedFile stagedFile;
+		try {
+			// ヘッダーの直後までだけ読み込む
+			if (!EncryptHeader.isContainer(input)) {
+				throw new EP0106EncryptFormatException("v1形式は標準入力・出力先指定未対応", true);
+			}
+			EncryptHeader header = EncryptHeader.read(input);
+			if (header.isArchive()) {
+				throw new EP0106EncryptFormatException("アーカイブは標準入力・出力先指定未対応", true);
+			}
+			stagedFile = createStreamOutput(commandLine, workDirectory, stagedFiles);
+			OutputStream output = stagedFile == null ? FileUtils.openStandardOutput() : stagedFile.getOutputStream();
+			EncryptUtils.doDecryptFromContainer(header, input, output, getEncryptKey(header, key1, envelope), key2);
+			output.flush();
+		} finally {
+			// 標準入力は閉じない
+			if (!standardInput) {
+				input.close();
+			}
+		}
+		return finishStream(file, stagedFile);
+	}
+
+	/**
+	 * 出力先を指定した場合は、出力先の一時ファイルを作成します
+	 * @param commandLine - コマンドライン
+	 * @param workDirectory - 相対パスの基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 一時ファイル（標準出力へ書き込む場合はnull）
+	 * @throws IOException - 一時ファイルを作成できない場合に発生
+	 */
+	private static StagedFile createStreamOutput(CommandLine commandLine, File workDirectory, Queue<StagedFile> stagedFiles) throws IOException {
+		String outputPath = commandLine.getOptionValue("o", STANDARD_STREAM);
+		if (STANDARD_STREAM.equals(outputPath)) {
+			return null;
+		}
+		StagedFile stagedFile = StagedFile.create(resolve(workDirectory, outputPath).getPath(), getDurability(commandLine));
+		stagedFiles.add(stagedFile);
+		return stagedFile;
+	}
+
+	/**
+	 * 標準入力・出力先を指定した処理の書き込みを完了します
+	 * @param file - 処理したファイルパス（-の場合は標準入力）
+	 * @param stagedFile - 出力先の一時ファイル（標準出力へ書き込んだ場合はnull）
+	 * @return - 処理結果
+	 * @throws IOException - 書き込みを完了できない場合に発生
+	 */
+	private static FileResult finishStream(String file, StagedFile stagedFile) throws IOException {
+		if (stagedFile == null) {
+			return new FileResult(Collections.singletonList(file), Collections.emptyList());
+		}
+		if (!STANDARD_STREAM.equals(file)) {
+			stagedFile.setLastModified(new File(file).lastModified());
+		}
+		stagedFile.finish();
+		return new FileResult(file, stagedFile);
+	}
+
+	/**
+	 * 複数のファイルを1つのアーカイブに暗号化します
+	 * ファイルはアーカイブ内の名前順に1つずつ読み込み、鍵の導出とディスクへの同期はアーカイブ全体で1回だけ行います
+	 * アーカイブ内の名前は、ファイルを指定した場合はファイル名、フォルダを指定した場合はフォルダ名からの相対パスです
+	 * @param commandLine - コマンドライン
+	 * @param files - 指定されたファイル・フォルダパス
+	 * @param archivePath - アーカイブの絶対パス
+	 * @param threads - 列挙に使用するスレッド数
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 暗号化結果
+	 * @throws IOException - ファイルを読み書きできない場合や、アーカイブ内の名前が重複する場合に発生
+	 * @throws ExceptionBase - 暗号化に失敗した場合に発生
+	 */
+	private static FileResult encryptArchive(CommandLine commandLine, List<String> files, String archivePath, int threads, String key1, String key2, KeyEnvelope envelope, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		// アーカイブ内の名前とファイルパス
+		Map<String, String> entries = new ConcurrentHashMap<>();
+		DirectoryWalker walker = createWalker(commandLine);
+		for (String file : files) {
+			File source = new File(file).getAbsoluteFile();
+			if (source.isDirectory()) {
+				Path root = source.toPath();
+				walker.walk(file, threads, path -> {
+					File entry = new File(path).getAbsoluteFile();
+					// 再実行時に前回のアーカイブ自体を含めない
+					if (archivePath.equals(entry.getPath())) {
+						return;
 					}
-					// 拡張子変更
-					String filePath = FileUtils.changeExtension(file, ext);
-					decryptMap.put(filePath, data);
-					changeMap.put(filePath, file);
-				}
-				// すべての復号に成功した場合、平文をファイルに出力
-				for (Entry<String, byte[]> entry : decryptMap.entrySet()) {
-					FileUtils.writeNormalFile(entry.getKey(), entry.getValue(), false);
-					new File(entry.getKey()).setLastModified(new File(changeMap.get(entry.getKey())).lastModified());
-					if (commandLine.hasOption("del")) {
-						FileUtils.deleteFile(changeMap.get(entry.getKey()));
+					String name = source.getName() + "/" + root.relativize(entry.toPath()).toString().replace(File.separatorChar, '/');
+					if (entries.putIfAbsent(name, entry.getPath()) != null) {
+						throw new UncheckedIOException(new IOException("アーカイブ内の名前重複\t" + name));
+					}
+				});
+			} else if (entries.putIfAbsent(source.getName(), source.getPath()) != null) {
+				throw new IOException("アーカイブ内の名前重複\t" + source.getName());
+			}
+		}
+		List<String> names = new ArrayList<>(entries.keySet());
+		Collections.sort(names);
+		List<String> filePaths = new ArrayList<>(names.size());
+		for (String name : names) {
+			filePaths.add(entries.get(name));
+		}
+		// 暗号アルゴリズムを指定しない場合は、範囲復号できるAES_GCM_SEGMENT
+		EncryptAlgorithm algorithm = commandLine.hasOption("a") ? getAlgorithm(commandLine) : EncryptAlgorithm.AES_GCM_SEGMENT;
+		StagedFile stagedFile = StagedFile.create(archivePath, getDurability(commandLine));
+		stagedFiles.add(stagedFile);
+		if (envelope != null) {
+			EncryptArchive.create(algorithm, names, filePaths, stagedFile.getOutputStream(), envelope);
+		} else {
+			EncryptArchive.create(algorithm, names, filePaths, stagedFile.getOutputStream(), key1, key2);
+		}
+		stagedFile.finish();
+		return new FileResult(filePaths, Collections.singletonList(stagedFile));
+	}
+
+	/**
+	 * アーカイブを復号し、アーカイブと同じフォルダにファイルを取り出します
+	 * 名前を指定した場合は、目次と対象のファイルを含む範囲だけを復号します
+	 * 名前を指定しない場合は、先頭から1回だけ復号してすべてのファイルを取り出します
+	 * @param commandLine - コマンドライン
+	 * @param file - アーカイブのファイルパス
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指すチャネル
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 復号結果
+	 * @throws IOException - ファイルを読み書きできない場合や、指定した名前がアーカイブにない場合に発生
+	 * @throws ExceptionBase - 復号に失敗した場合に発生
+	 */
+	private static FileResult decryptArchive(CommandLine commandLine, String file, EncryptHeader header, FileChannel input, String key1, String key2, KeyEnvelope envelope, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		File directory = new File(file).getAbsoluteFile().getParentFile();
+		List<Entry> entries = EncryptArchive.readEntries(header, input, key1, key2);
+		List<StagedFile> outputs = new ArrayList<>();
+		EntryOutput entryOutput = entry -> {
+			File target = EncryptArchive.toFile(directory, entry);
+			FileUtils.createDirectory(target.getParent());
+			StagedFile stagedFile = StagedFile.create(target.getPath(), getDurability(commandLine));
+			stagedFiles.add(stagedFile);
+			outputs.add(stagedFile);
+			stagedFile.setLastModified(entry.getLastModified());
+			// 書き込みが完了したファイルから閉じる
+			return stagedFile.getFinishingOutputStream();
+		};
+		if (commandLine.hasOption("ent")) {
+			Map<String, Entry> entryMap = new HashMap<>();
+			for (Entry entry : entries) {
+				entryMap.put(entry.getName(), entry);
+			}
+			for (String name : commandLine.getOptionValues("ent")) {
+				Entry entry = entryMap.get(name);
+				if (entry == null) {
+					throw new IOException("アーカイブ内の名前未存在\t" + name);
+				}
+				try (OutputStream output = entryOutput.open(entry)) {
+					EncryptArchive.extractEntry(header, input, entry, output, key1, key2);
+				}
+			}
+		} else {
+			EncryptArchive.extractAll(header, input, entries, entryOutput, key1, key2);
+		}
+		return new FileResult(Collections.singletonList(file), outputs);
+	}
+
+	/**
+	 * 1ファイルの指定範囲だけを復号し、出力先のファイルまたは標準出力へ書き込みます
+	 * 範囲を含むセグメントだけを読み込むため、巨大なファイルの末尾だけを取り出す場合も全体を復号しません
+	 * 一部だけの平文で元のファイル名の平文を上書きしないよう、平文のファイル名には書き込みません
+	 * @param commandLine - コマンドライン
+	 * @param file - 復号するファイルパス
+	 * @param workDirectory - 相対パスの基準フォルダ（nullの場合はカレントフォルダ）
+	 * @param key1 - 第一パスワード
+	 * @param key2 - 第二パスワード
+	 * @param envelope - 公開鍵・秘密鍵（指定しない場合はnull）
+	 * @param stagedFiles - 作成した一時ファイルの登録先
+	 * @return - 復号結果
+	 * @throws IOException - ファイルを読み書きできない場合に発生
+	 * @throws ExceptionBase - 復号に失敗した場合に発生
+	 */
+	private static FileResult decryptFileRange(CommandLine commandLine, String file, File workDirectory, String key1, String key2, KeyEnvelope envelope, Queue<StagedFile> stagedFiles) throws IOException, ExceptionBase {
+		String[] range = commandLine.getOptionValue("rg").split(":");
+		StagedFile stagedFile;
+		try (FileChannel channel = FileChannel.open(new File(file).toPath(), StandardOpenOption.READ)) {
+			// ヘッダーの直後までだけ読み込む
+			EncryptHeader header = EncryptHeader.read(Channels.newInputStream(channel));
+			stagedFile = createStreamOutput(commandLine, workDirectory, stagedFiles);
+			OutputStream output = stagedFile == null ? FileUtils.openStandardOutput() : stagedFile.getOutputStream();
+			// 復号
+			EncryptUtils.doDecryptRangeFromContainer(header, channel, output, Long.parseLong(range[0]), Long.parseLong(range[1]), getEncryptKey(header, key1, envelope), key2);
+			output.flush();
+		}
+		return finishStream(file, stagedFile);
+	}
+
+	/**
+	 * ヘッダーに公開鍵で包んだデータキーが保存されている場合は、秘密鍵で復号したデータキーを第一パスワードとして取得します
+	 * @param header - 読み込み済みのヘッダー
+	 * @param key1 - 第一パスワード
+	 * @param envelope - 秘密鍵（指定しない場合はnull）
+	 * @return - 復号に使用する第一パスワード
+	 * @throws ExceptionBase - 秘密鍵を指定していない場合や、データキーの復号に失敗した場合に発生
+	 */
+	private static String getEncryptKey(EncryptHeader header, String key1, KeyEnvelope envelope) throws ExceptionBase {
+		if (header.getWrappedKey() == null) {
+			return key1;
+		}
+		if (envelope == null) {
+			throw new EP0102EncryptKeyNoneException("秘密鍵が指定されていません", true);
+		}
+		return envelope.unwrap(header.getWrappedKey());
+	}
+
+	/**
+	 * すべての処理に成功した一時ファイルを出力先に置き換えます
+	 * 同期方法がbatchの場合は、ここで全ファイルとフォルダをまとめて同期します
+	 * 元のファイルを削除する場合も、いずれかの出力先と同じファイルは削除しません
+	 * @param commandLine - コマンドライン
+	 * @param results - 処理結果一覧
+	 * @param executor - 同期を行うスレッドプール
+	 * @throws IOException - 置き換えできない場合に発生
+	 */
+	private static void commit(CommandLine commandLine, List<FileResult> results, ExecutorService executor) throws IOException {
+		List<StagedFile> stagedFiles = new ArrayList<>(results.size());
+		for (FileResult result : results) {
+			stagedFiles.addAll(result.getStagedFiles());
+		}
+		CommitEvent event = new CommitEvent(stagedFiles.size(), getDurability(commandLine));
+		event.begin();
+		try {
+			StagedFile.commitAll(stagedFiles, executor);
+			event.success();
+		} finally {
+			event.finish();
+		}
+		if (commandLine.hasOption("del")) {
+			Set<Path> targets = new HashSet<>();
+			for (StagedFile stagedFile : stagedFiles) {
+				targets.add(Paths.get(stagedFile.getFilePath()).toAbsolutePath().normalize());
+			}
+			for (FileResult result : results) {
+				for (String sourcePath : result.getSourcePaths()) {
+					// 元のファイルを出力で置き換えた場合は削除しない
+					if (!targets.contains(Paths.get(sourcePath).toAbsolutePath().normalize())) {
+						FileUtils.deleteFile(sourcePath);
 					}
 				}
-			} catch (@SuppressWarnings("unused") Exception e) {
-				System.out.println("復号に失敗しました");
-				ExitCode.GENERAL_ERR2.exit();
 			}
 		}
 	}
 
+	/**
+	 * 指定された同期方法を取得します
+	 * @param commandLine - コマンドライン
+	 * @return - 同期方法（省略時はbatch）
+	 */
+	private static Durability getDurability(CommandLine commandLine) {
+		if (!commandLine.hasOption("dur")) {
+			return Durability.BATCH;
+		}
+		return Durability.valueOfValue(commandLine.getOptionValue("dur"));
+	}
+
+	/**
+	 * 指定された圧縮レベルを取得します
+	 * @param commandLine - コマンドライン
+	 * @return - 圧縮レベル（省略時は圧縮しない、レベルを省略した場合は既定のレベル）
+	 */
+	private static int getCompressLevel(CommandLine commandLine) {
+		if (!commandLine.hasOption("cmp")) {
+			return CompressUtils.NO_COMPRESSION;
+		}
+		String level = commandLine.getOptionValue("cmp");
+		return level == null ? CompressUtils.DEFAULT_LEVEL : Integer.parseInt(level);
+	}
+
+	/**
+	 * 指定された暗号アルゴリズムを取得します
+	 * @param commandLine - コマンドライン
+	 * 公開鍵暗号方式のRSAは指定できません
+	 * autoの場合は、初回のみ計測して実行環境で最も速いものを選択します
+	 * @return - 暗号アルゴリズム（省略時はAES、指定不正の場合はnull）
+	 */
+	private static EncryptAlgorithm getAlgorithm(CommandLine commandLine) {
+		if (!commandLine.hasOption("a")) {
+			return EncryptAlgorithm.AES;
+		}
+		String algorithm = commandLine.getOptionValue("a");
+		if (AUTO_ALGORITHM.equalsIgnoreCase(algorithm)) {
+			return AlgorithmCalibration.getFastest();
+		}
+		for (EncryptAlgorithm value : EncryptAlgorithm.values()) {
+			if (value != EncryptAlgorithm.RSA && value.name().equalsIgnoreCase(algorithm)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 処理を中断し、作成したすべての一時ファイルを破棄します
+	 * @param executor - スレッドプール
+	 * @param stagedFiles - 作成した一時ファイル
+	 */
+	private static void rollback(ExecutorService executor, Queue<StagedFile> stagedFiles) {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (@SuppressWarnings("unused") InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (StagedFile stagedFile : stagedFiles) {
+			stagedFile.discard();
+		}
+	}
+
+	/**
+	 * 差分暗号化の状態ファイルを閉じます
+	 * @param state - 差分暗号化の状態（nullの場合は何もしない）
+	 */
+	private static void closeQuietly(IncrementalState state) {
+		if (state == null) {
+			return;
+		}
+		try {
+			state.close();
+		} catch (@SuppressWarnings("unused") IOException e) {
+			// 読み込み専用のため無視
+		}
+	}
+
+	/**
+	 * 1ファイルの処理結果
+	 * アーカイブの場合は、複数の元ファイルや出力ファイルを持ちます
+	 */
+	private static class FileResult {
+		private final List<String> sourcePaths;
+		private final List<StagedFile> stagedFiles;
+		FileResult(String sourcePath, StagedFile stagedFile) {
+			this(Collections.singletonList(sourcePath), Collections.singletonList(stagedFile));
+		}
+		FileResult(List<String> sourcePaths, List<StagedFile> stagedFiles) {
+			this.sourcePaths = sourcePaths;
+			this.stagedFiles = stagedFiles;
+		}
+		public List<String> getSourcePaths() {
+			return this.sourcePaths;
+		}
+		public List<StagedFile> getStagedFiles() {
+			return this.stagedFiles;
+		}
+	}
+
 }
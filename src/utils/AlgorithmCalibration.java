@@ -0,0 +1,229 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import utils.EncryptUtils.EncryptAlgorithm;
+import utils.FileUtils.Durability;
+
+/**
+ * 実行環境で最も速い暗号アルゴリズムを計測して選択します
+ * AES命令の有無やベクトル演算の幅によって、AES-GCMとChaCha20-Poly1305のどちらが速いかが変わるため、
+ * 改ざんを検出できるアルゴリズムを短時間ずつ暗号化して比較します
+ * 選択するのは、ファイルサイズに関わらず一定のメモリで復号できるセグメント分割のアルゴリズムのみです
+ * 計測は実際の暗号化と同じSegmentCipherで行うため、鍵の導出と複数セグメントの並列処理を含みます
+ * 計測結果はCPUとJVMの組み合わせごとにファイルへ保存するため、計測は同じ環境で1回だけ行います
+ * @author blank-nano
+ *
+ */
+public class AlgorithmCalibration {
+
+	/** 計測対象の暗号アルゴリズム（復号時に全体をメモリに保持しない、セグメント分割のもののみ） */
+	private static final EncryptAlgorithm[] CANDIDATES = Stream.of(EncryptAlgorithm.values()).filter(EncryptAlgorithm::isSegmented).toArray(EncryptAlgorithm[]::new);
+	/** 計測できない場合の暗号アルゴリズム */
+	private static final EncryptAlgorithm DEFAULT_ALGORITHM = EncryptAlgorithm.AES_GCM_SEGMENT;
+	/** 1回に暗号化するbyte数（並列処理されるよう複数セグメント分） */
+	private static final int PROBE_SIZE = SegmentCipher.SEGMENT_SIZE * Math.max(2, Math.min(16, ForkJoinPool.getCommonPoolParallelism() * 2));
+	/** 計測方法の版（計測方法を変えた場合は保存済みの結果を使用しない） */
+	private static final String PROBE_VERSION = "segment";
+	/** JITの最適化を待つ時間（ミリ秒） */
+	private static final long WARMUP_MILLIS = 150;
+	/** 計測時間（ミリ秒） */
+	private static final long MEASURE_MILLIS = 150;
+	/** 計測結果の保存先 */
+	private static final String CACHE_PATH = Paths.get(System.getProperty("user.home"), ".nanoencrypt", "calibration.properties").toString();
+	/** Linuxのcpu情報のファイルパス */
+	private static final String CPU_INFO_PATH = "/proc/cpuinfo";
+
+	/** 選択済みの暗号アルゴリズム（常駐プロセスでは依頼をまたいで使い回す） */
+	private static volatile EncryptAlgorithm fastest;
+
+	/**
+	 * 実行環境で最も速い暗号アルゴリズムを取得します
+	 * 保存済みの計測結果がない場合のみ計測し、結果を保存します
+	 * @return - 暗号アルゴリズム
+	 */
+	public static EncryptAlgorithm getFastest() {
+		EncryptAlgorithm result = fastest;
+		if (result != null) {
+			return result;
+		}
+		synchronized (AlgorithmCalibration.class) {
+			if (fastest == null) {
+				fastest = load();
+			}
+			return fastest;
+		}
+	}
+
+	/**
+	 * 保存済みの計測結果を読み込み、ない場合は計測して保存します
+	 * 保存先の読み書きに失敗した場合は、計測結果をそのまま使用します
+	 * @return - 暗号アルゴリズム
+	 */
+	private static EncryptAlgorithm load() {
+		String key = getEnvironmentKey();
+		Map<String, String> cache = new HashMap<>();
+		if (new File(CACHE_PATH).isFile()) {
+			try {
+				cache.putAll(FileUtils.readPropFile(CACHE_PATH));
+			} catch (@SuppressWarnings("unused") IOException e) {
+				// 読み込めない場合は計測し直して上書きする
+			}
+		}
+		EncryptAlgorithm cached = valueOfName(cache.get(key));
+		if (cached != null) {
+			return cached;
+		}
+		EncryptAlgorithm measured = measure();
+		// 共有のホームフォルダで複数の環境の結果を保持できるよう、他の環境の結果は残す
+		cache.put(key, measured.name());
+		try {
+			save(cache);
+		} catch (@SuppressWarnings("unused") IOException e) {
+			// 保存できない場合は次回も計測する
+		}
+		return measured;
+	}
+
+	/**
+	 * 計測結果を保存します
+	 * 同時に実行した他のプロセスが書き込み途中のファイルを読み込まないよう、一時ファイルに書き込んでから置き換えます
+	 * @param cache - 環境ごとの計測結果
+	 * @throws IOException - 保存できない場合に発生
+	 */
+	private static void save(Map<String, String> cache) throws IOException {
+		Files.createDirectories(Paths.get(CACHE_PATH).getParent());
+		Properties prop = new Properties();
+		prop.putAll(cache);
+		StagedFile stagedFile = StagedFile.create(CACHE_PATH, Durability.NONE);
+		try {
+			Writer writer = new OutputStreamWriter(stagedFile.getOutputStream(), StandardCharsets.UTF_8);
+			prop.store(writer, "EncryptConsole -a auto calibration (environment=fastest algorithm)");
+			// 閉じると一時ファイルも閉じるため、書き出しのみ行う
+			writer.flush();
+			stagedFile.commit();
+		} catch (IOException | RuntimeException e) {
+			stagedFile.discard();
+			throw e;
+		}
+	}
+
+	/**
+	 * 計測対象の暗号アルゴリズムを計測し、最も速いものを取得します
+	 * @return - 暗号アルゴリズム（すべて計測できない場合はDEFAULT_ALGORITHM）
+	 */
+	public static EncryptAlgorithm measure() {
+		EncryptAlgorithm result = DEFAULT_ALGORITHM;
+		double best = 0;
+		for (EncryptAlgorithm algorithm : CANDIDATES) {
+			double bytesPerSecond;
+			try {
+				bytesPerSecond = probe(algorithm);
+			} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+				// 使用できないアルゴリズムは対象外
+				continue;
+			}
+			if (bytesPerSecond > best) {
+				best = bytesPerSecond;
+				result = algorithm;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 1つの暗号アルゴリズムで一定時間暗号化し、処理速度を計測します
+	 * 実際の暗号化と同じく、1回ごとにシードから鍵を導出し、セグメントを並列に暗号化します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @return - 処理速度（byte/秒）
+	 * @throws GeneralSecurityException - アルゴリズムを使用できない場合に発生
+	 */
+	private static double probe(EncryptAlgorithm algorithm) throws GeneralSecurityException {
+		byte[] input = new byte[PROBE_SIZE];
+		byte[] encKey = new byte[32];
+		byte[] ivKey = new byte[32];
+		CryptoCache.getSecureRandom().nextBytes(encKey);
+		CryptoCache.getSecureRandom().nextBytes(ivKey);
+		try {
+			long deadline = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+			while (System.nanoTime() < deadline) {
+				SegmentCipher.encrypt(algorithm, new ByteArrayInputStream(input), OutputStream.nullOutputStream(), encKey, ivKey);
+			}
+			long bytes = 0;
+			long start = System.nanoTime();
+			long end;
+			do {
+				SegmentCipher.encrypt(algorithm, new ByteArrayInputStream(input), OutputStream.nullOutputStream(), encKey, ivKey);
+				bytes += PROBE_SIZE;
+				end = System.nanoTime();
+			} while (end - start < MEASURE_MILLIS * 1_000_000);
+			return bytes / ((end - start) / 1e9);
+		} catch (IOException e) {
+			// メモリ上の入出力のため発生しない
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 計測結果を保存する環境のキーを取得します
+	 * 計測方法の版、CPUの種類・コア数とJVMの種類・バージョンで区別します
+	 * @return - 環境のキー
+	 */
+	static String getEnvironmentKey() {
+		return String.join("|",
+				PROBE_VERSION,
+				System.getProperty("os.arch"),
+				getCpuName(),
+				String.valueOf(Runtime.getRuntime().availableProcessors()),
+				System.getProperty("java.vm.name"),
+				System.getProperty("java.vm.version"));
+	}
+
+	/**
+	 * CPUの名称を取得します
+	 * Linuxは/proc/cpuinfo、Windowsは環境変数から取得します
+	 * @return - CPUの名称（取得できない場合は空文字）
+	 */
+	private static String getCpuName() {
+		try (Stream<String> lines = Files.lines(Paths.get(CPU_INFO_PATH), StandardCharsets.UTF_8)) {
+			Optional<String> model = lines.filter(line -> line.startsWith("model name")).findFirst();
+			if (model.isPresent()) {
+				return model.get().substring(model.get().indexOf(':') + 1).trim();
+			}
+		} catch (@SuppressWarnings("unused") IOException | RuntimeException e) {
+			// Linux以外は環境変数から取得
+		}
+		String identifier = System.getenv("PROCESSOR_IDENTIFIER");
+		return identifier == null ? "" : identifier;
+	}
+
+	/**
+	 * 名称から計測対象の暗号アルゴリズムを取得します
+	 * @param name - 名称
+	 * @return - 暗号アルゴリズム（該当なしの場合はnull）
+	 */
+	private static EncryptAlgorithm valueOfName(String name) {
+		for (EncryptAlgorithm algorithm : CANDIDATES) {
+			if (algorithm.name().equals(name)) {
+				return algorithm;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,234 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 暗号化前の圧縮に関する処理を定義しています
+ * 圧縮はDeflateで行い、先頭の一部だけを試しに圧縮して効果がない場合（圧縮済みのファイル等）は圧縮しません
+ * DeflaterとInflaterはネイティブのメモリを確保するため、スレッドごとに使い回します
+ * @author blank-nano
+ *
+ */
+public class CompressUtils {
+
+	/** 圧縮しない */
+	public static final int NO_COMPRESSION = 0;
+	/** 省略時の圧縮レベル */
+	public static final int DEFAULT_LEVEL = 6;
+	/** 圧縮するか判定するために読み込む先頭のbyte数 */
+	public static final int SAMPLE_SIZE = 64 * 1024;
+	/** 圧縮するか判定するための最小byte数（これより小さい場合は圧縮しない） */
+	private static final int MIN_SAMPLE_SIZE = 256;
+	/** 圧縮後の割合がこれ以上の場合は圧縮しない */
+	private static final double MAX_RATIO = 0.9;
+	/** 圧縮・展開時のバッファサイズ */
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+	/** スレッドごとのDeflater */
+	private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(Deflater::new);
+	/** スレッドごとのInflater */
+	private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+	/**
+	 * 平文の先頭から圧縮方式を選択します
+	 * @param level - 圧縮レベル（NO_COMPRESSIONの場合は圧縮しない）
+	 * @param sample - 平文の先頭
+	 * @param length - 先頭のbyte数
+	 * @return - 圧縮方式
+	 */
+	public static Compression select(int level, byte[] sample, int length) {
+		if (level == NO_COMPRESSION || length < MIN_SAMPLE_SIZE) {
+			return Compression.NONE;
+		}
+		Deflater deflater = getDeflater(level);
+		deflater.setInput(sample, 0, length);
+		deflater.finish();
+		byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+		long limit = (long) (length * MAX_RATIO);
+		long total = 0;
+		while (!deflater.finished()) {
+			total += deflater.deflate(buffer);
+			// 効果がないことが分かった時点で打ち切る
+			if (total >= limit) {
+				return Compression.NONE;
+			}
+		}
+		return Compression.DEFLATE;
+	}
+
+	/**
+	 * ファイルのチャネルの現在位置から圧縮方式を選択します
+	 * 先頭を位置指定で読み込むため、チャネルの現在位置は変わりません
+	 * @param level - 圧縮レベル（NO_COMPRESSIONの場合は圧縮しない）
+	 * @param channel - 平文の読み込み用チャネル
+	 * @return - 圧縮方式
+	 * @throws IOException - 読み込みに失敗した場合に発生
+	 */
+	public static Compression select(int level, FileChannel channel) throws IOException {
+		if (level == NO_COMPRESSION) {
+			return Compression.NONE;
+		}
+		long position = channel.position();
+		ByteBuffer sample = ByteBuffer.allocate((int) Math.max(0, Math.min(SAMPLE_SIZE, channel.size() - position)));
+		while (sample.hasRemaining()) {
+			if (channel.read(sample, position + sample.position()) < 0) {
+				break;
+			}
+		}
+		return select(level, sample.array(), sample.position());
+	}
+
+	/**
+	 * 入力ストリームを圧縮しながら読み込むストリームを作成します
+	 * @param input - 平文の入力ストリーム
+	 * @param level - 圧縮レベル
+	 * @return - 圧縮後の入力ストリーム
+	 */
+	public static InputStream compress(InputStream input, int level) {
+		return new DeflaterInputStream(input, getDeflater(level), STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * 書き込んだ内容を展開して出力ストリームへ書き込むストリームを作成します
+	 * 書き込み後はDecompressOutputStream.finishAllで残りを書き込んでください
+	 * @param output - 平文の出力ストリーム
+	 * @return - 圧縮データの出力ストリーム
+	 */
+	public static DecompressOutputStream decompress(OutputStream output) {
+		return new DecompressOutputStream(output, getInflater());
+	}
+
+	/**
+	 * 圧縮されたbyte配列を展開します
+	 * @param target - 圧縮データ
+	 * @param length - 展開後のbyte数（不明な場合は負の値）
+	 * @return - 展開後のbyte配列
+	 * @throws DataFormatException - 圧縮データが不正な場合に発生
+	 */
+	public static byte[] decompress(byte[] target, long length) throws DataFormatException {
+		Inflater inflater = getInflater();
+		inflater.setInput(target);
+		ByteArrayOutputStream output = new ByteArrayOutputStream(length < 0 || length > Integer.MAX_VALUE - 8 ? target.length * 2 : (int) length);
+		byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+		while (!inflater.finished()) {
+			int inflated = inflater.inflate(buffer);
+			if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+				throw new DataFormatException("圧縮データ不足");
+			}
+			output.write(buffer, 0, inflated);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * 現在のスレッドのDeflaterを初期化して取得します
+	 * @param level - 圧縮レベル
+	 * @return - Deflater
+	 */
+	private static Deflater getDeflater(int level) {
+		Deflater deflater = DEFLATERS.get();
+		deflater.reset();
+		deflater.setLevel(level);
+		return deflater;
+	}
+
+	/**
+	 * 現在のスレッドのInflaterを初期化して取得します
+	 * @return - Inflater
+	 */
+	private static Inflater getInflater() {
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		return inflater;
+	}
+
+	/**
+	 * 展開しながら書き込む出力ストリーム
+	 * 閉じずに残りを書き込めるよう、出力先のストリームは閉じません
+	 */
+	public static class DecompressOutputStream extends InflaterOutputStream {
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param output - 平文の出力ストリーム
+		 * @param inflater - 初期化済みのInflater
+		 */
+		DecompressOutputStream(OutputStream output, Inflater inflater) {
+			super(output, inflater, STREAM_BUFFER_SIZE);
+		}
+
+		/**
+		 * 残りを展開して書き込みます
+		 * @return - 展開後のbyte数
+		 * @throws ZipException - 圧縮データが途中で終わっている場合に発生
+		 * @throws IOException - 書き込みに失敗した場合に発生
+		 */
+		public long finishAll() throws IOException {
+			finish();
+			flush();
+			if (!this.inf.finished()) {
+				throw new ZipException("圧縮データ不足");
+			}
+			return this.inf.getBytesWritten();
+		}
+
+	}
+
+	/**
+	 * 圧縮方式
+	 * @author blank-nano
+	 *
+	 */
+	public enum Compression {
+		/** 圧縮なし */
+		  NONE(0)
+		/** Deflate */
+		, DEFLATE(1)
+		;
+
+		private byte code;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param code - ヘッダーに記録する識別番号
+		 */
+		private Compression(int code) {
+			this.code = (byte) code;
+		}
+
+		/**
+		 * 識別番号から圧縮方式を取得します
+		 * @param code - 識別番号
+		 * @return - 圧縮方式（該当なしの場合はnull）
+		 */
+		public static Compression valueOfCode(byte code) {
+			for (Compression value : values()) {
+				if (value.code == code) {
+					return value;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * ヘッダーに記録する識別番号を取得します
+		 * @return - 識別番号
+		 */
+		public byte getCode() {
+			return this.code;
+		}
+
+	}
+
+}
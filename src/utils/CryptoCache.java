@@ -0,0 +1,105 @@
+package utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Cipher、SecureRandom、MessageDigestをスレッドごとに使い回します
+ * getInstanceはプロバイダの検索や初期化を伴うため、小さいファイルを大量に処理する場合に負荷の大半を占めます
+ * 取得したインスタンスは同じスレッドからのみ使用し、Cipherは使用のたびにinitで再初期化してください
+ * @author blank-nano
+ *
+ */
+public class CryptoCache {
+
+	/** 乱数生成アルゴリズム */
+	private static final String SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
+
+	/** スレッドごとのCipher */
+	private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
+	/** スレッドごとのMessageDigest */
+	private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+	/** スレッドごとのSecureRandom */
+	private static final ThreadLocal<SecureRandom> SECURE_RANDOMS = new ThreadLocal<>();
+
+	/**
+	 * 現在のスレッドのCipherを取得します
+	 * 前回の使用状態は残っているため、必ずinitしてから使用してください
+	 * @param transformation - 暗号アルゴリズム
+	 * @return - Cipher
+	 * @throws NoSuchAlgorithmException - 使用不可のアルゴリズムの場合に発生
+	 * @throws NoSuchPaddingException - 使用不可のパディング方式の場合に発生
+	 */
+	public static Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Map<String, Cipher> ciphers = CIPHERS.get();
+		Cipher cipher = ciphers.get(transformation);
+		if (cipher == null) {
+			cipher = Cipher.getInstance(transformation);
+			ciphers.put(transformation, cipher);
+		}
+		return cipher;
+	}
+
+	/**
+	 * 現在のスレッドのCipherを作り直します
+	 * 前回の初期化状態によってinitできない場合に使用します
+	 * @param transformation - 暗号アルゴリズム
+	 * @return - 新しいCipher
+	 * @throws NoSuchAlgorithmException - 使用不可のアルゴリズムの場合に発生
+	 * @throws NoSuchPaddingException - 使用不可のパディング方式の場合に発生
+	 */
+	public static Cipher renewCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Cipher cipher = Cipher.getInstance(transformation);
+		CIPHERS.get().put(transformation, cipher);
+		return cipher;
+	}
+
+	/**
+	 * 現在のスレッドのMessageDigestを取得します
+	 * digestを呼ぶと状態は初期化されるため、そのまま使い回せます
+	 * @param algorithm - ハッシュアルゴリズム
+	 * @return - MessageDigest
+	 * @throws NoSuchAlgorithmException - 使用不可のアルゴリズムの場合に発生
+	 */
+	public static MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+		Map<String, MessageDigest> digests = DIGESTS.get();
+		MessageDigest digest = digests.get(algorithm);
+		if (digest == null) {
+			digest = MessageDigest.getInstance(algorithm);
+			digests.put(algorithm, digest);
+		}
+		digest.reset();
+		return digest;
+	}
+
+	/**
+	 * 現在のスレッドのSecureRandomを取得します
+	 * @return - SecureRandom
+	 * @throws NoSuchAlgorithmException - 使用不可のアルゴリズムの場合に発生
+	 */
+	public static SecureRandom getSecureRandom() throws NoSuchAlgorithmException {
+		SecureRandom secureRandom = SECURE_RANDOMS.get();
+		if (secureRandom == null) {
+			secureRandom = SecureRandom.getInstance(SECURE_RANDOM_ALGORITHM);
+			SECURE_RANDOMS.set(secureRandom);
+		}
+		return secureRandom;
+	}
+
+	/**
+	 * 現在のスレッドのインスタンスをすべて破棄します
+	 * 次回の取得時に作り直すため、プロバイダの変更後やSecureRandomを再シードしたい場合に使用します
+	 */
+	public static void reset() {
+		CIPHERS.remove();
+		DIGESTS.remove();
+		SECURE_RANDOMS.remove();
+	}
+
+}
@@ -0,0 +1,184 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * フォルダ配下のファイルを並列に列挙します
+ * フォルダごとにForkJoinPoolのタスクを分けるため、深さや大きさに偏りのあるツリーでも空いたスレッドが残りのフォルダを引き受けます
+ * 見つかったファイルは一覧を作らずにその場で通知するため、ファイル数に関わらず使用メモリは一定です
+ * 対象の絞り込みはglobで指定し、「/」を含まないパターンはファイル名、含むパターンは起点からの相対パスと比較します
+ * シンボリックリンクのフォルダは循環を避けるため辿りません
+ * @author blank-nano
+ *
+ */
+public class DirectoryWalker {
+
+	/** globの接頭辞 */
+	private static final String GLOB = "glob:";
+
+	/** 対象とするファイル名のパターン */
+	private final List<PathMatcher> includeNames = new ArrayList<>();
+	/** 対象とする相対パスのパターン */
+	private final List<PathMatcher> includePaths = new ArrayList<>();
+	/** 除外するファイル名のパターン */
+	private final List<PathMatcher> excludeNames = new ArrayList<>();
+	/** 除外する相対パスのパターン */
+	private final List<PathMatcher> excludePaths = new ArrayList<>();
+
+	/**
+	 * デフォルトコンストラクタ
+	 * @param includes - 対象とするglob（nullまたは空の場合はすべてのファイル）
+	 * @param excludes - 除外するglob（フォルダに一致した場合は配下をすべて除外）
+	 */
+	public DirectoryWalker(List<String> includes, List<String> excludes) {
+		FileSystem fileSystem = FileSystems.getDefault();
+		if (includes != null) {
+			for (String include : includes) {
+				(include.contains("/") ? this.includePaths : this.includeNames).add(fileSystem.getPathMatcher(GLOB + include));
+			}
+		}
+		if (excludes != null) {
+			for (String exclude : excludes) {
+				(exclude.contains("/") ? this.excludePaths : this.excludeNames).add(fileSystem.getPathMatcher(GLOB + exclude));
+			}
+		}
+	}
+
+	/**
+	 * フォルダ配下のファイルを並列に列挙します
+	 * 通知は複数のスレッドから同時に行われます
+	 * 通知先で例外が発生した場合は列挙を打ち切り、その例外を送出します
+	 * @param root - 起点のフォルダパス
+	 * @param parallelism - 列挙に使用するスレッド数
+	 * @param consumer - 見つかったファイルパスの通知先
+	 * @throws IOException - フォルダを読み込みできない場合に発生
+	 */
+	public void walk(String root, int parallelism, Consumer<String> consumer) throws IOException {
+		Path rootPath = new File(root).toPath();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			pool.invoke(new WalkTask(rootPath, rootPath, consumer));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * 対象のファイルか判定します
+	 * @param relative - 起点からの相対パス
+	 * @return - 対象の場合はtrue
+	 */
+	private boolean isInclude(Path relative) {
+		if (this.includeNames.isEmpty() && this.includePaths.isEmpty()) {
+			return true;
+		}
+		return matches(this.includeNames, this.includePaths, relative);
+	}
+
+	/**
+	 * 除外するファイル・フォルダか判定します
+	 * @param relative - 起点からの相対パス
+	 * @return - 除外する場合はtrue
+	 */
+	private boolean isExclude(Path relative) {
+		return matches(this.excludeNames, this.excludePaths, relative);
+	}
+
+	/**
+	 * パターンに一致するか判定します
+	 * @param names - ファイル名のパターン
+	 * @param paths - 相対パスのパターン
+	 * @param relative - 起点からの相対パス
+	 * @return - いずれかに一致する場合はtrue
+	 */
+	private static boolean matches(List<PathMatcher> names, List<PathMatcher> paths, Path relative) {
+		Path fileName = relative.getFileName();
+		for (PathMatcher matcher : names) {
+			if (fileName != null && matcher.matches(fileName)) {
+				return true;
+			}
+		}
+		for (PathMatcher matcher : paths) {
+			if (matcher.matches(relative)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 1フォルダを列挙するタスク
+	 * 配下のフォルダはサブタスクに分け、ファイルはその場で通知します
+	 */
+	private class WalkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Path root;
+		private final Path directory;
+		private final transient Consumer<String> consumer;
+
+		WalkTask(Path root, Path directory, Consumer<String> consumer) {
+			this.root = root;
+			this.directory = directory;
+			this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute() {
+			List<WalkTask> subTasks = new ArrayList<>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+				for (Path path : stream) {
+					Path relative = this.root.relativize(path);
+					if (isExclude(relative) || StagedFile.isTempFile(path.getFileName().toString())) {
+						continue;
+					}
+					BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					if (attributes.isDirectory()) {
+						WalkTask subTask = new WalkTask(this.root, path, this.consumer);
+						// 他のスレッドが引き受けられるよう、見つけた時点で登録する
+						subTask.fork();
+						subTasks.add(subTask);
+					} else if ((attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(path))) && isInclude(relative)) {
+						this.consumer.accept(path.toString());
+					}
+				}
+			} catch (IOException e) {
+				cancelAll(subTasks);
+				throw new UncheckedIOException(e);
+			} catch (RuntimeException e) {
+				cancelAll(subTasks);
+				throw e;
+			}
+			for (WalkTask subTask : subTasks) {
+				subTask.join();
+			}
+		}
+
+		/**
+		 * 登録済みのサブタスクをすべて中断します
+		 * @param subTasks - サブタスク一覧
+		 */
+		private void cancelAll(List<WalkTask> subTasks) {
+			for (WalkTask subTask : subTasks) {
+				subTask.cancel(true);
+			}
+		}
+	}
+
+}
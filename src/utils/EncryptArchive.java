@@ -0,0 +1,501 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import exception.EP0101EncryptAlgorithmException;
+import exception.EP0102EncryptKeyNoneException;
+import exception.EP0103EncryptKeyAttributeException;
+import exception.EP0104EncryptException;
+import exception.EP0105DecryptException;
+import exception.EP0106EncryptFormatException;
+import utils.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * 複数のファイルを1つの暗号文にまとめるアーカイブを扱います
+ * 鍵の生成や導出、ヘッダー、ディスクへの同期はアーカイブごとに1回だけ行うため、小さいファイルが大量にある場合に高速です
+ * 平文の構成は ファイル0 + ファイル1 + ... + 目次 + 目次長(8) で、全体をセグメント分割して暗号化します
+ * 目次は末尾にあるため、範囲復号で目次と対象ファイルを含むセグメントだけを読み込めば、1ファイルだけを取り出せます
+ * 目次の構成は 件数(4) + (名前長(2) + 名前 + 開始位置(8) + 長さ(8) + 更新日時(8)) * 件数 です
+ * @author blank-nano
+ *
+ */
+public class EncryptArchive {
+
+	/** 目次長のbyte数 */
+	private static final int TRAILER_LENGTH = 8;
+	/** 名前の区切り文字 */
+	private static final String SEPARATOR = "/";
+
+	/**
+	 * 複数のファイルを1つのアーカイブに暗号化します
+	 * ファイルは順に開いて読み込むため、ファイル数に関わらず同時に開くのは1ファイルのみです
+	 * @param algorithm - 暗号アルゴリズム（セグメント分割するもののみ）
+	 * @param names - アーカイブ内の名前一覧（区切り文字は「/」）
+	 * @param filePaths - ファイルパス一覧
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long create(EncryptAlgorithm algorithm, List<String> names, List<String> filePaths, OutputStream output, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return create(algorithm, names, filePaths, output, EncryptUtils.keyToBytes(encryptKey), EncryptUtils.keyToBytes(ivKey), null);
+	}
+
+	/**
+	 * 複数のファイルを、RSAの公開鍵で包んだデータキーで1つのアーカイブに暗号化します
+	 * 包んだデータキーと初期化ベクトルキーはヘッダーに保存するため、復号時は秘密鍵のみで復号できます
+	 * @param algorithm - 暗号アルゴリズム（セグメント分割するもののみ）
+	 * @param names - アーカイブ内の名前一覧（区切り文字は「/」）
+	 * @param filePaths - ファイルパス一覧
+	 * @param output - 暗号文の出力ストリーム
+	 * @param envelope - 暗号化用の鍵
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long create(EncryptAlgorithm algorithm, List<String> names, List<String> filePaths, OutputStream output, KeyEnvelope envelope) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return create(algorithm, names, filePaths, output, EncryptUtils.keyToBytes(envelope.getDataKey()), null, envelope.getWrappedKey());
+	}
+
+	/**
+	 * 複数のファイルを1つのアーカイブに暗号化します
+	 * @param algorithm - 暗号アルゴリズム（セグメント分割するもののみ）
+	 * @param names - アーカイブ内の名前一覧（区切り文字は「/」）
+	 * @param filePaths - ファイルパス一覧
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー（保存しない場合はnull）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long create(EncryptAlgorithm algorithm, List<String> names, List<String> filePaths, OutputStream output, byte[] encryptKey, byte[] ivKey, byte[] wrappedKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		if (names.size() != filePaths.size()) {
+			throw new IllegalArgumentException("名前とファイルパスの件数不一致");
+		}
+		for (String name : names) {
+			if (!isValidName(name)) {
+				throw new IllegalArgumentException("名前不正\t" + name);
+			}
+		}
+		try (ArchiveInputStream input = new ArchiveInputStream(names, filePaths)) {
+			return EncryptUtils.encryptToArchive(algorithm, input, output, encryptKey, ivKey, wrappedKey);
+		}
+	}
+
+	/**
+	 * アーカイブの目次を読み込みます
+	 * 目次を含む末尾のセグメントだけを復号します
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - ヘッダー直後を指すチャネル（読み込み後は元の位置に戻します）
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 目次（開始位置順）
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws EP0106EncryptFormatException - アーカイブの形式が不正な場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static List<Entry> readEntries(EncryptHeader header, FileChannel channel, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, EP0106EncryptFormatException, IOException {
+		if (!header.isArchive()) {
+			throw new EP0106EncryptFormatException("アーカイブではありません", true);
+		}
+		long base = channel.position();
+		long plainSize = SegmentCipher.getPlainSize(header.getPayloadLength() == EncryptHeader.UNKNOWN_LENGTH ? channel.size() - base : header.getPayloadLength());
+		if (plainSize < TRAILER_LENGTH) {
+			throw new EP0106EncryptFormatException("目次なし", true);
+		}
+		// 目次長
+		long tocLength = ByteBuffer.wrap(readRange(header, channel, base, plainSize - TRAILER_LENGTH, TRAILER_LENGTH, encryptKey, ivKey)).getLong();
+		long tocOffset = plainSize - TRAILER_LENGTH - tocLength;
+		if (tocLength < 4 || tocLength > Integer.MAX_VALUE || tocOffset < 0) {
+			throw new EP0106EncryptFormatException("目次長不正", true);
+		}
+		// 目次
+		byte[] toc = readRange(header, channel, base, tocOffset, tocLength, encryptKey, ivKey);
+		List<Entry> entries = new ArrayList<>();
+		try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(toc))) {
+			int count = input.readInt();
+			long end = 0;
+			for (int i = 0; i < count; i++) {
+				byte[] name = new byte[input.readUnsignedShort()];
+				input.readFully(name);
+				Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), input.readLong(), input.readLong(), input.readLong());
+				if (!isValidName(entry.getName()) || entry.getOffset() < end || entry.getLength() < 0 || entry.getOffset() + entry.getLength() > tocOffset) {
+					throw new EP0106EncryptFormatException("目次不正\t" + entry.getName(), true);
+				}
+				end = entry.getOffset() + entry.getLength();
+				entries.add(entry);
+			}
+		} catch (@SuppressWarnings("unused") IOException e) {
+			throw new EP0106EncryptFormatException("目次不足", true);
+		}
+		return entries;
+	}
+
+	/**
+	 * アーカイブから1ファイルだけを取り出します
+	 * 対象ファイルを含むセグメントだけを復号します
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - ヘッダー直後を指すチャネル（読み込み後は元の位置に戻します）
+	 * @param entry - 取り出すファイルの目次
+	 * @param output - 平文の出力ストリーム
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws EP0106EncryptFormatException - アーカイブの形式が不正な場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long extractEntry(EncryptHeader header, FileChannel channel, Entry entry, OutputStream output, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, EP0106EncryptFormatException, IOException {
+		long base = channel.position();
+		try {
+			return EncryptUtils.doDecryptRangeFromContainer(header, channel, output, entry.getOffset(), entry.getLength(), encryptKey, ivKey);
+		} finally {
+			channel.position(base);
+		}
+	}
+
+	/**
+	 * アーカイブのすべてのファイルを取り出します
+	 * 先頭から1回だけ復号し、各ファイルの範囲を出力先へ振り分けます
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - ヘッダー直後を指すチャネル
+	 * @param entries - 目次
+	 * @param outputs - ファイルごとの出力先
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long extractAll(EncryptHeader header, FileChannel channel, List<Entry> entries, EntryOutput outputs, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		SplitOutputStream output = new SplitOutputStream(entries, outputs);
+		EncryptUtils.doDecryptFromContainer(header, Channels.newInputStream(channel), output, encryptKey, ivKey);
+		output.finish();
+		return output.getTotal();
+	}
+
+	/**
+	 * アーカイブ内の名前を取り出し先のファイルに変換します
+	 * @param directory - 取り出し先のフォルダ
+	 * @param entry - 目次
+	 * @return - 取り出し先のファイル
+	 */
+	public static File toFile(File directory, Entry entry) {
+		return new File(directory, entry.getName().replace(SEPARATOR, File.separator));
+	}
+
+	/**
+	 * アーカイブ内の名前として使用できるか判定します
+	 * 取り出し先のフォルダの外に書き込まないよう、絶対パスや「..」を含む名前は使用できません
+	 * @param name - アーカイブ内の名前
+	 * @return - 使用できる場合はtrue
+	 */
+	public static boolean isValidName(String name) {
+		if (name == null || name.isEmpty() || name.contains("\\") || name.contains(":") || name.getBytes(StandardCharsets.UTF_8).length > 0xffff) {
+			return false;
+		}
+		for (String part : name.split(SEPARATOR, -1)) {
+			if (part.isEmpty() || ".".equals(part) || "..".equals(part)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 平文の指定範囲を復号してbyte配列で返却します
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - チャネル
+	 * @param base - 暗号文の開始位置
+	 * @param offset - 平文の開始位置
+	 * @param length - 平文の長さ
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 平文
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws EP0106EncryptFormatException - アーカイブの形式が不正な場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static byte[] readRange(EncryptHeader header, FileChannel channel, long base, long offset, long length, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, EP0106EncryptFormatException, IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream((int) length);
+		channel.position(base);
+		try {
+			EncryptUtils.doDecryptRangeFromContainer(header, channel, output, offset, length, encryptKey, ivKey);
+		} finally {
+			channel.position(base);
+		}
+		if (output.size() != length) {
+			throw new EP0106EncryptFormatException("範囲不足", true);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * アーカイブ内の1ファイルの目次
+	 */
+	public static class Entry {
+		private final String name;
+		private final long offset;
+		private final long length;
+		private final long lastModified;
+		Entry(String name, long offset, long length, long lastModified) {
+			this.name = name;
+			this.offset = offset;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+		public String getName() {
+			return this.name;
+		}
+		public long getOffset() {
+			return this.offset;
+		}
+		public long getLength() {
+			return this.length;
+		}
+		public long getLastModified() {
+			return this.lastModified;
+		}
+	}
+
+	/**
+	 * 取り出すファイルごとの出力先
+	 */
+	@FunctionalInterface
+	public interface EntryOutput {
+		/**
+		 * ファイルの出力先を開きます
+		 * 開いた出力先はファイルの書き込みが完了した時点で閉じます
+		 * @param entry - 目次
+		 * @return - 出力ストリーム
+		 * @throws IOException - 開けない場合に発生
+		 */
+		OutputStream open(Entry entry) throws IOException;
+	}
+
+	/**
+	 * 複数のファイルを順に連結し、末尾に目次を付けて読み込む入力ストリームです
+	 * 実際に読み込んだ長さで目次を作成するため、読み込み中にファイルサイズが変わっても目次と内容は一致します
+	 */
+	private static class ArchiveInputStream extends InputStream {
+		private final List<String> names;
+		private final List<String> filePaths;
+		private final List<Entry> entries = new ArrayList<>();
+		private int index;
+		private InputStream current;
+		private long currentOffset;
+		private long currentLastModified;
+		private long position;
+		private InputStream tail;
+
+		ArchiveInputStream(List<String> names, List<String> filePaths) {
+			this.names = names;
+			this.filePaths = filePaths;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (this.tail == null) {
+				if (this.current == null) {
+					if (this.index == this.filePaths.size()) {
+						this.tail = new ByteArrayInputStream(createTail());
+						break;
+					}
+					// 次のファイルを開く
+					File file = new File(this.filePaths.get(this.index));
+					this.currentLastModified = file.lastModified();
+					this.currentOffset = this.position;
+					this.current = FileUtils.openNormalFileToStream(file.getPath());
+				}
+				int read = this.current.read(b, off, len);
+				if (read > 0) {
+					this.position += read;
+					return read;
+				}
+				// ファイルの終端
+				this.current.close();
+				this.current = null;
+				this.entries.add(new Entry(this.names.get(this.index), this.currentOffset, this.position - this.currentOffset, this.currentLastModified));
+				this.index++;
+			}
+			return this.tail.read(b, off, len);
+		}
+
+		/**
+		 * 目次と目次長を作成します
+		 * @return - 目次と目次長
+		 * @throws IOException - 作成に失敗した場合に発生
+		 */
+		private byte[] createTail() throws IOException {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			DataOutputStream dataOutput = new DataOutputStream(output);
+			dataOutput.writeInt(this.entries.size());
+			for (Entry entry : this.entries) {
+				byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+				dataOutput.writeShort(name.length);
+				dataOutput.write(name);
+				dataOutput.writeLong(entry.getOffset());
+				dataOutput.writeLong(entry.getLength());
+				dataOutput.writeLong(entry.getLastModified());
+			}
+			dataOutput.writeLong(dataOutput.size());
+			dataOutput.flush();
+			return output.toByteArray();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.current != null) {
+				this.current.close();
+				this.current = null;
+			}
+		}
+	}
+
+	/**
+	 * 復号した平文を目次に従ってファイルごとの出力先へ振り分ける出力ストリームです
+	 * どのファイルにも属さない範囲（目次）は読み捨てます
+	 */
+	private static class SplitOutputStream extends OutputStream {
+		private final List<Entry> entries;
+		private final EntryOutput outputs;
+		private int next;
+		private Entry current;
+		private OutputStream currentOutput;
+		private long position;
+		private long total;
+
+		SplitOutputStream(List<Entry> entries, EntryOutput outputs) {
+			this.entries = new ArrayList<>(entries);
+			Collections.sort(this.entries, (a, b) -> Long.compare(a.getOffset(), b.getOffset()));
+			this.outputs = outputs;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int offset = off;
+			int length = len;
+			while (length > 0) {
+				if (this.current == null) {
+					openReached();
+				}
+				if (this.current == null) {
+					// 次のファイルの開始位置まで読み捨てる
+					long skip = this.next < this.entries.size() ? this.entries.get(this.next).getOffset() - this.position : length;
+					int n = (int) Math.min(length, skip);
+					this.position += n;
+					offset += n;
+					length -= n;
+					continue;
+				}
+				int n = (int) Math.min(length, this.current.getOffset() + this.current.getLength() - this.position);
+				this.currentOutput.write(b, offset, n);
+				this.position += n;
+				this.total += n;
+				offset += n;
+				length -= n;
+				if (this.position == this.current.getOffset() + this.current.getLength()) {
+					closeCurrent();
+				}
+			}
+		}
+
+		/**
+		 * 現在位置から始まるファイルの出力先を開きます
+		 * 空のファイルは開いた時点で完了とします
+		 * @throws IOException - 開けない場合に発生
+		 */
+		private void openReached() throws IOException {
+			while (this.next < this.entries.size() && this.entries.get(this.next).getOffset() <= this.position) {
+				this.current = this.entries.get(this.next++);
+				this.currentOutput = this.outputs.open(this.current);
+				if (this.current.getLength() > 0) {
+					return;
+				}
+				closeCurrent();
+			}
+		}
+
+		/**
+		 * 書き込みが完了したファイルの出力先を閉じます
+		 * @throws IOException - 閉じられない場合に発生
+		 */
+		private void closeCurrent() throws IOException {
+			try {
+				this.currentOutput.close();
+			} finally {
+				this.current = null;
+				this.currentOutput = null;
+			}
+		}
+
+		/**
+		 * すべてのファイルを振り分けたか確認します
+		 * @throws IOException - 平文が目次より短い場合に発生
+		 */
+		void finish() throws IOException {
+			openReached();
+			if (this.current != null || this.next < this.entries.size()) {
+				throw new IOException("アーカイブの内容不足");
+			}
+		}
+
+		long getTotal() {
+			return this.total;
+		}
+	}
+
+}
@@ -0,0 +1,276 @@
+package utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import utils.EncryptUtils.EncryptAlgorithm;
+import utils.FileUtils.Durability;
+
+/**
+ * JDK Flight Recorderに記録する暗号化・復号のイベントを定義しています
+ * 記録中のみ時間とフィールドを保存するため、記録していない場合の負荷はほとんどありません
+ * 各イベントはbeginで開始し、成功した場合はsuccessを呼び出してからfinishで記録します
+ * successを呼び出さずにfinishした場合（例外で中断した場合）は、結果をfailureとして記録します
+ * @author blank-nano
+ *
+ */
+public class EncryptEvents {
+
+	/** 結果：成功 */
+	public static final String SUCCESS = "success";
+	/** 結果：失敗 */
+	public static final String FAILURE = "failure";
+	/** 処理：暗号化 */
+	public static final String ENCRYPT = "encrypt";
+	/** 処理：復号 */
+	public static final String DECRYPT = "decrypt";
+	/** 独自改竄形式の処理：変換 */
+	public static final String ENCODE = "encode";
+	/** 独自改竄形式の処理：復元 */
+	public static final String DECODE = "decode";
+	/** 形式：v1 */
+	public static final String FORMAT_V1 = "v1";
+	/** 形式：v2 */
+	public static final String FORMAT_V2 = "v2";
+
+	/**
+	 * 結果を持つイベント
+	 */
+	@Category("NanoEncrypt")
+	@StackTrace(false)
+	public abstract static class OperationEvent extends Event {
+		@Label("結果")
+		@Description("success または failure")
+		String outcome = FAILURE;
+
+		/**
+		 * 成功したことを設定します
+		 */
+		public void success() {
+			this.outcome = SUCCESS;
+		}
+
+		/**
+		 * 終了し、記録対象の場合は記録します
+		 */
+		public void finish() {
+			end();
+			if (shouldCommit()) {
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * ファイルの読み込み
+	 */
+	@Name("nanoencrypt.FileRead")
+	@Label("ファイル読み込み")
+	public static class FileReadEvent extends OperationEvent {
+		@Label("ファイルパス")
+		String path;
+		@Label("byte数")
+		@DataAmount
+		long bytes;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param path - ファイルパス
+		 */
+		public FileReadEvent(String path) {
+			this.path = path;
+		}
+
+		/**
+		 * 成功したことを設定します
+		 * @param bytes - 読み込んだbyte数
+		 */
+		public void success(long bytes) {
+			this.bytes = bytes;
+			success();
+		}
+	}
+
+	/**
+	 * ファイルの書き込み
+	 */
+	@Name("nanoencrypt.FileWrite")
+	@Label("ファイル書き込み")
+	public static class FileWriteEvent extends OperationEvent {
+		@Label("ファイルパス")
+		String path;
+		@Label("byte数")
+		@DataAmount
+		long bytes;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param path - ファイルパス
+		 */
+		public FileWriteEvent(String path) {
+			this.path = path;
+		}
+
+		/**
+		 * 成功したことを設定します
+		 * @param bytes - 書き込んだbyte数
+		 */
+		public void success(long bytes) {
+			this.bytes = bytes;
+			success();
+		}
+	}
+
+	/**
+	 * パスワードからの鍵の導出
+	 */
+	@Name("nanoencrypt.KeyDerivation")
+	@Label("鍵導出")
+	public static class KeyDerivationEvent extends OperationEvent {
+		@Label("暗号アルゴリズム")
+		String algorithm;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param algorithm - 暗号アルゴリズム
+		 */
+		public KeyDerivationEvent(EncryptAlgorithm algorithm) {
+			this.algorithm = algorithm.name();
+		}
+	}
+
+	/**
+	 * 暗号化・復号の実行
+	 */
+	@Name("nanoencrypt.Cipher")
+	@Label("暗号処理")
+	public static class CipherEvent extends OperationEvent {
+		@Label("暗号アルゴリズム")
+		String algorithm;
+		@Label("処理")
+		@Description("encrypt または decrypt")
+		String mode;
+		@Label("byte数")
+		@Description("書き込んだbyte数")
+		@DataAmount
+		long bytes;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param algorithm - 暗号アルゴリズム
+		 * @param mode - ENCRYPT または DECRYPT
+		 */
+		public CipherEvent(EncryptAlgorithm algorithm, String mode) {
+			this.algorithm = algorithm.name();
+			this.mode = mode;
+		}
+
+		/**
+		 * 成功したことを設定します
+		 * @param bytes - 書き込んだbyte数
+		 */
+		public void success(long bytes) {
+			this.bytes = bytes;
+			success();
+		}
+	}
+
+	/**
+	 * 独自改竄形式・v2形式の変換と復元
+	 */
+	@Name("nanoencrypt.Envelope")
+	@Label("形式変換")
+	public static class EnvelopeEvent extends OperationEvent {
+		@Label("処理")
+		@Description("encode または decode")
+		String operation;
+		@Label("形式")
+		@Description("v1 または v2")
+		String format;
+		@Label("byte数")
+		@Description("変換前のbyte数")
+		@DataAmount
+		long bytes;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param operation - ENCODE または DECODE
+		 * @param bytes - 変換前のbyte数
+		 */
+		public EnvelopeEvent(String operation, long bytes) {
+			this.operation = operation;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * 成功したことを設定します
+		 * @param format - 形式
+		 */
+		public void success(String format) {
+			this.format = format;
+			success();
+		}
+	}
+
+	/**
+	 * 一時ファイルの確定
+	 */
+	@Name("nanoencrypt.Commit")
+	@Label("確定")
+	public static class CommitEvent extends OperationEvent {
+		@Label("ファイル数")
+		int files;
+		@Label("同期方法")
+		String durability;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param files - ファイル数
+		 * @param durability - 同期方法
+		 */
+		public CommitEvent(int files, Durability durability) {
+			this.files = files;
+			this.durability = durability.getValue();
+		}
+	}
+
+	/**
+	 * 1ファイルの暗号化・復号
+	 */
+	@Name("nanoencrypt.FileOperation")
+	@Label("ファイル処理")
+	public static class FileOperationEvent extends OperationEvent {
+		@Label("ファイルパス")
+		String path;
+		@Label("処理")
+		@Description("encrypt または decrypt")
+		String operation;
+		@Label("暗号アルゴリズム")
+		@Description("暗号化時に指定したアルゴリズム（復号時はヘッダーから決定するため空）")
+		String algorithm;
+		@Label("byte数")
+		@Description("処理前のファイルのbyte数")
+		@DataAmount
+		long bytes;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param path - ファイルパス
+		 * @param operation - ENCRYPT または DECRYPT
+		 * @param algorithm - 暗号アルゴリズム（復号時はnull）
+		 * @param bytes - 処理前のファイルのbyte数
+		 */
+		public FileOperationEvent(String path, String operation, EncryptAlgorithm algorithm, long bytes) {
+			this.path = path;
+			this.operation = operation;
+			this.algorithm = algorithm == null ? "" : algorithm.name();
+			this.bytes = bytes;
+		}
+	}
+
+}
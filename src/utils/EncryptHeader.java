@@ -0,0 +1,346 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import exception.EP0106EncryptFormatException;
+import utils.CompressUtils.Compression;
+import utils.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * バイナリ形式(v2)の暗号文ヘッダーを定義します
+ * v1はBase64を3重にかけたテキスト形式ですが、v2は固定ヘッダーの後に暗号文をそのまま連結します
+ * ヘッダーの構成は以下の通りです（数値はビッグエンディアン）
+ * マジックナンバー(4) + バージョン(1) + フラグ(1) + アルゴリズム(1) + 圧縮方式(1)
+ * + 拡張子長(2) + 拡張子 + 暗号化キー長(2) + 暗号化キー + 初期化ベクトルキー長(2) + 初期化ベクトルキー
+ * + 平文長(8) + 暗号文長(8)
+ * RSAの公開鍵で包んだデータキーを保存する場合は、暗号化キーの項目に保存します
+ * マジックナンバーの先頭はBase64で使用しないbyteのため、v1の暗号文と区別できます
+ * @author blank-nano
+ *
+ */
+public class EncryptHeader {
+
+	/** マジックナンバー */
+	private static final byte[] MAGIC = { (byte) 0x89, 'N', 'E', 'C' };
+	/** 現在のバージョン */
+	public static final byte VERSION = 2;
+	/** フラグ：暗号化キーを保存 */
+	private static final int FLAG_ENCRYPT_KEY = 0x01;
+	/** フラグ：初期化ベクトルキーを保存 */
+	private static final int FLAG_IV_KEY = 0x02;
+	/** フラグ：複数ファイルのアーカイブ */
+	private static final int FLAG_ARCHIVE = 0x04;
+	/** フラグ：標準入力から暗号化（元の拡張子なし） */
+	private static final int FLAG_PIPE = 0x08;
+	/** フラグ：公開鍵で包んだデータキーを保存（暗号化キーの項目を使用） */
+	private static final int FLAG_WRAPPED_KEY = 0x10;
+	/** 長さ不明 */
+	public static final long UNKNOWN_LENGTH = -1;
+
+	/** バージョン */
+	private byte version = VERSION;
+	/** 暗号アルゴリズム */
+	private EncryptAlgorithm algorithm = EncryptAlgorithm.AES;
+	/** 暗号化前の圧縮方式 */
+	private Compression compression = Compression.NONE;
+	/** 元の拡張子 */
+	private String extension = "";
+	/** 暗号化キー（保存しない場合はnull） */
+	private byte[] encryptKey;
+	/** 初期化ベクトルキー（保存しない場合はnull） */
+	private byte[] ivKey;
+	/** 公開鍵で包んだデータキー（保存しない場合はnull） */
+	private byte[] wrappedKey;
+	/** 平文長 */
+	private long originalLength = UNKNOWN_LENGTH;
+	/** 暗号文長 */
+	private long payloadLength = UNKNOWN_LENGTH;
+	/** 複数ファイルのアーカイブか */
+	private boolean archive;
+	/** 標準入力から暗号化したか */
+	private boolean pipe;
+
+	/**
+	 * v2形式の暗号文か判定します
+	 * @param target - 暗号文
+	 * @return - v2形式の場合はtrue
+	 */
+	public static boolean isContainer(byte[] target) {
+		if (target == null || target.length < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (target[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 入力ストリームがv2形式か判定します
+	 * 判定後のストリームは判定前の位置に戻します
+	 * @param input - mark/resetに対応した入力ストリーム
+	 * @return - v2形式の場合はtrue
+	 * @throws IOException - 読み込みに失敗した場合に発生
+	 */
+	public static boolean isContainer(InputStream input) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		input.mark(MAGIC.length);
+		try {
+			return input.readNBytes(magic, 0, magic.length) == magic.length && isContainer(magic);
+		} finally {
+			input.reset();
+		}
+	}
+
+	/**
+	 * ファイルのチャネルがv2形式か判定します
+	 * 先頭を位置指定で読み込むため、チャネルの現在位置は変わりません
+	 * @param channel - 読み込み用のチャネル
+	 * @return - v2形式の場合はtrue
+	 * @throws IOException - 読み込みに失敗した場合に発生
+	 */
+	public static boolean isContainer(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+		while (magic.hasRemaining()) {
+			if (channel.read(magic, magic.position()) < 0) {
+				return false;
+			}
+		}
+		return isContainer(magic.array());
+	}
+
+	/**
+	 * 暗号文の先頭からヘッダーを読み込みます
+	 * @param target - 暗号文
+	 * @return - ヘッダー
+	 * @throws EP0106EncryptFormatException - 暗号文の形式が不正な場合に発生
+	 */
+	public static EncryptHeader read(byte[] target) throws EP0106EncryptFormatException {
+		try {
+			return read(new ByteArrayInputStream(target));
+		} catch (@SuppressWarnings("unused") IOException e) {
+			throw new EP0106EncryptFormatException("ヘッダー不足", true);
+		}
+	}
+
+	/**
+	 * 入力ストリームからヘッダーを読み込みます
+	 * 読み込み後のストリームは暗号文の先頭を指します
+	 * @param input - 入力ストリーム
+	 * @return - ヘッダー
+	 * @throws EP0106EncryptFormatException - 暗号文の形式が不正な場合に発生
+	 * @throws IOException - 読み込みに失敗した場合に発生
+	 */
+	public static EncryptHeader read(InputStream input) throws EP0106EncryptFormatException, IOException {
+		DataInputStream dataInput = new DataInputStream(input);
+		byte[] magic = new byte[MAGIC.length];
+		try {
+			dataInput.readFully(magic);
+		} catch (@SuppressWarnings("unused") EOFException e) {
+			throw new EP0106EncryptFormatException("ヘッダー不足", true);
+		}
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new EP0106EncryptFormatException("マジックナンバー不正", true);
+		}
+		EncryptHeader header = new EncryptHeader();
+		header.version = dataInput.readByte();
+		if (header.version != VERSION) {
+			throw new EP0106EncryptFormatException("未対応バージョン" + header.version, true);
+		}
+		int flags = dataInput.readUnsignedByte();
+		header.algorithm = EncryptAlgorithm.valueOfCode(dataInput.readByte());
+		if (header.algorithm == null) {
+			throw new EP0106EncryptFormatException("未対応アルゴリズム", true);
+		}
+		header.compression = Compression.valueOfCode(dataInput.readByte());
+		if (header.compression == null) {
+			throw new EP0106EncryptFormatException("未対応圧縮方式", true);
+		}
+		header.extension = ConversionUtils.byteArrayToString(readSlot(dataInput));
+		byte[] encryptKey = readSlot(dataInput);
+		byte[] ivKey = readSlot(dataInput);
+		header.encryptKey = (flags & FLAG_ENCRYPT_KEY) != 0 ? encryptKey : null;
+		header.ivKey = (flags & FLAG_IV_KEY) != 0 ? ivKey : null;
+		header.wrappedKey = (flags & FLAG_WRAPPED_KEY) != 0 ? encryptKey : null;
+		header.archive = (flags & FLAG_ARCHIVE) != 0;
+		header.pipe = (flags & FLAG_PIPE) != 0;
+		header.originalLength = dataInput.readLong();
+		header.payloadLength = dataInput.readLong();
+		return header;
+	}
+
+	/**
+	 * ヘッダーを出力ストリームへ書き込みます
+	 * @param output - 出力ストリーム
+	 * @throws IOException - 書き込みに失敗した場合に発生
+	 */
+	public void write(OutputStream output) throws IOException {
+		DataOutputStream dataOutput = new DataOutputStream(output);
+		int flags = 0;
+		if (this.encryptKey != null) {
+			flags |= FLAG_ENCRYPT_KEY;
+		}
+		if (this.ivKey != null) {
+			flags |= FLAG_IV_KEY;
+		}
+		if (this.archive) {
+			flags |= FLAG_ARCHIVE;
+		}
+		if (this.pipe) {
+			flags |= FLAG_PIPE;
+		}
+		if (this.encryptKey == null && this.wrappedKey != null) {
+			flags |= FLAG_WRAPPED_KEY;
+		}
+		dataOutput.write(MAGIC);
+		dataOutput.writeByte(this.version);
+		dataOutput.writeByte(flags);
+		dataOutput.writeByte(this.algorithm.getCode());
+		dataOutput.writeByte(this.compression.getCode());
+		writeSlot(dataOutput, ConversionUtils.stringToByteArray(this.extension));
+		writeSlot(dataOutput, getKeySlot());
+		writeSlot(dataOutput, this.ivKey);
+		dataOutput.writeLong(this.originalLength);
+		dataOutput.writeLong(this.payloadLength);
+		dataOutput.flush();
+	}
+
+	/**
+	 * ヘッダーをbyte配列に変換します
+	 * @return - ヘッダーbyte配列
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(getLength());
+		try {
+			write(output);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * ヘッダーのbyte数を取得します
+	 * @return - ヘッダーのbyte数
+	 */
+	public int getLength() {
+		return MAGIC.length + 4
+				+ 2 + ConversionUtils.stringToByteArray(this.extension).length
+				+ 2 + (getKeySlot() == null ? 0 : getKeySlot().length)
+				+ 2 + (this.ivKey == null ? 0 : this.ivKey.length)
+				+ 8 + 8;
+	}
+
+	/**
+	 * 暗号化キーの項目に保存する内容を取得します
+	 * 暗号化キーを保存しない場合のみ、公開鍵で包んだデータキーを保存します
+	 * @return - 項目の内容
+	 */
+	private byte[] getKeySlot() {
+		return this.encryptKey != null ? this.encryptKey : this.wrappedKey;
+	}
+
+	/**
+	 * 長さ付きの項目を読み込みます
+	 * @param dataInput - 入力ストリーム
+	 * @return - 項目の内容
+	 * @throws IOException - 読み込みに失敗した場合に発生
+	 */
+	private static byte[] readSlot(DataInputStream dataInput) throws IOException {
+		byte[] slot = new byte[dataInput.readUnsignedShort()];
+		dataInput.readFully(slot);
+		return slot;
+	}
+
+	/**
+	 * 長さ付きの項目を書き込みます
+	 * @param dataOutput - 出力ストリーム
+	 * @param slot - 項目の内容（nullの場合は長さ0）
+	 * @throws IOException - 書き込みに失敗した場合に発生
+	 */
+	private static void writeSlot(DataOutputStream dataOutput, byte[] slot) throws IOException {
+		if (slot == null) {
+			dataOutput.writeShort(0);
+			return;
+		}
+		dataOutput.writeShort(slot.length);
+		dataOutput.write(slot);
+	}
+
+	public byte getVersion() {
+		return this.version;
+	}
+	public EncryptAlgorithm getAlgorithm() {
+		return this.algorithm;
+	}
+	public void setAlgorithm(EncryptAlgorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+	public Compression getCompression() {
+		return this.compression;
+	}
+	public void setCompression(Compression compression) {
+		this.compression = compression == null ? Compression.NONE : compression;
+	}
+	public String getExtension() {
+		return this.extension;
+	}
+	public void setExtension(String extension) {
+		this.extension = extension == null ? "" : extension;
+	}
+	public byte[] getEncryptKey() {
+		return this.encryptKey;
+	}
+	public void setEncryptKey(byte[] encryptKey) {
+		this.encryptKey = encryptKey;
+	}
+	public byte[] getIvKey() {
+		return this.ivKey;
+	}
+	public void setIvKey(byte[] ivKey) {
+		this.ivKey = ivKey;
+	}
+	public byte[] getWrappedKey() {
+		return this.wrappedKey;
+	}
+	public void setWrappedKey(byte[] wrappedKey) {
+		this.wrappedKey = wrappedKey;
+	}
+	public long getOriginalLength() {
+		return this.originalLength;
+	}
+	public void setOriginalLength(long originalLength) {
+		this.originalLength = originalLength;
+	}
+	public long getPayloadLength() {
+		return this.payloadLength;
+	}
+	public void setPayloadLength(long payloadLength) {
+		this.payloadLength = payloadLength;
+	}
+	public boolean isArchive() {
+		return this.archive;
+	}
+	public void setArchive(boolean archive) {
+		this.archive = archive;
+	}
+	public boolean isPipe() {
+		return this.pipe;
+	}
+	public void setPipe(boolean pipe) {
+		this.pipe = pipe;
+	}
+
+}
@@ -0,0 +1,299 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Base64;
+
+import exception.EP0105DecryptException;
+import exception.EP0106EncryptFormatException;
+import utils.CompressUtils.Compression;
+import utils.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * 暗号文の本体を読み込まずに、形式・元の拡張子・キーの保存有無等を取得します
+ * v2形式はヘッダーのみ、v1形式は先頭の拡張子と、キーの区切り文字を含む4文字ずつだけをデコードします
+ * v1形式の自動生成キーは長さが固定のため、区切り文字の位置は全体を展開しなくても決まります
+ * @author blank-nano
+ *
+ */
+public class EncryptInfo {
+
+	/** 形式：v1 */
+	public static final String FORMAT_V1 = "v1";
+	/** 形式：v2 */
+	public static final String FORMAT_V2 = "v2";
+	/** 拡張子の最大byte数（ファイル名の上限） */
+	private static final int MAX_EXTENSION_LENGTH = 255;
+	/** ヘッダーの読み込み単位 */
+	private static final int HEAD_BUFFER_SIZE = 1024;
+
+	/** 形式 */
+	private String format;
+	/** 暗号アルゴリズム */
+	private EncryptAlgorithm algorithm = EncryptAlgorithm.AES;
+	/** 暗号化前の圧縮方式 */
+	private Compression compression = Compression.NONE;
+	/** 元の拡張子 */
+	private String extension = "";
+	/** 暗号化キーが保存されているか */
+	private boolean saveEncryptKey;
+	/** 公開鍵で包んだデータキーが保存されているか */
+	private boolean wrappedKey;
+	/** 初期化ベクトルキーが保存されているか */
+	private boolean saveIvKey;
+	/** 複数ファイルのアーカイブか */
+	private boolean archive;
+	/** 標準入力から暗号化したか */
+	private boolean pipe;
+	/** 平文長 */
+	private long originalLength = EncryptHeader.UNKNOWN_LENGTH;
+	/** 暗号文長 */
+	private long payloadLength = EncryptHeader.UNKNOWN_LENGTH;
+
+	/**
+	 * 暗号文のファイルから情報を取得します
+	 * @param filePath - ファイルパス
+	 * @return - 暗号文の情報
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0106EncryptFormatException - 暗号文の形式が不正な場合に発生
+	 */
+	public static EncryptInfo read(String filePath) throws IOException, EP0106EncryptFormatException {
+		try (FileChannel channel = FileUtils.openNormalFileToChannel(filePath)) {
+			if (EncryptHeader.isContainer(channel)) {
+				return readContainer(channel);
+			}
+			return readOriginal(channel);
+		}
+	}
+
+	/**
+	 * v2形式のヘッダーから情報を取得します
+	 * @param channel - 暗号文の読み込み用のチャネル
+	 * @return - 暗号文の情報
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0106EncryptFormatException - ヘッダーが不正な場合に発生
+	 */
+	private static EncryptInfo readContainer(FileChannel channel) throws IOException, EP0106EncryptFormatException {
+		EncryptHeader header = EncryptHeader.read(new BufferedInputStream(Channels.newInputStream(channel), HEAD_BUFFER_SIZE));
+		EncryptInfo info = new EncryptInfo();
+		info.format = FORMAT_V2;
+		info.algorithm = header.getAlgorithm();
+		info.compression = header.getCompression();
+		info.extension = header.getExtension();
+		info.saveEncryptKey = header.getEncryptKey() != null;
+		info.wrappedKey = header.getWrappedKey() != null;
+		info.saveIvKey = header.getIvKey() != null;
+		info.archive = header.isArchive();
+		info.pipe = header.isPipe();
+		info.originalLength = header.getOriginalLength();
+		info.payloadLength = header.getPayloadLength();
+		return info;
+	}
+
+	/**
+	 * v1形式の先頭と区切り文字の位置だけをデコードして情報を取得します
+	 * 構成は Base64( 拡張子 + 区切り文字2 + 独自改竄byte配列 ) です
+	 * 独自改竄byte配列を戻すと 初期化ベクトルキー_暗号文-暗号化キー の順のため、
+	 * 先頭から自動生成キーの長さの位置に区切り文字1、末尾から自動生成キーの長さの位置に区切り文字2があるかを調べます
+	 * @param channel - 暗号文の読み込み用のチャネル
+	 * @return - 暗号文の情報
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0106EncryptFormatException - 暗号文の形式が不正な場合に発生
+	 */
+	private static EncryptInfo readOriginal(FileChannel channel) throws IOException, EP0106EncryptFormatException {
+		long size = channel.size();
+		if (size == 0 || size % 4 != 0 || size > Integer.MAX_VALUE) {
+			throw new EP0106EncryptFormatException("Base64長不正", true);
+		}
+		byte[] extension;
+		try {
+			extension = readExtension(Base64.getDecoder().wrap(new BufferedInputStream(Channels.newInputStream(channel), HEAD_BUFFER_SIZE)));
+		} catch (@SuppressWarnings("unused") IOException e) {
+			throw new EP0106EncryptFormatException("Base64文字不正", true);
+		}
+		if (extension == null) {
+			throw new EP0106EncryptFormatException("拡張子区切りなし", true);
+		}
+		// 独自改竄byte配列の位置と長さ
+		int bodyStart = extension.length + 1;
+		int decodedSize = (int) (size / 4 * 3) - padding(readRaw(channel, size - 2, 2));
+		int bodyLength = decodedSize - bodyStart;
+		if (bodyLength <= 0 || bodyLength % 4 != 0) {
+			throw new EP0106EncryptFormatException("Base64長不正", true);
+		}
+		int innerLength = bodyLength / 4 * 3 - padding(readDecoded(channel, size, decodedSize - 2, 2));
+		int keyLength = OriginalCodec.encodedLength(EncryptUtils.AUTO_KEY_LENGTH);
+		EncryptInfo info = new EncryptInfo();
+		info.format = FORMAT_V1;
+		info.extension = ConversionUtils.byteArrayToString(extension);
+		info.saveIvKey = innerLength > keyLength && decodeAt(channel, size, bodyStart, keyLength) == OriginalCodec.SPLIT1;
+		info.saveEncryptKey = innerLength > keyLength && decodeAt(channel, size, bodyStart, innerLength - keyLength - 1) == OriginalCodec.SPLIT2;
+		return info;
+	}
+
+	/**
+	 * デコード済みのストリームから、区切り文字2までを拡張子として読み込みます
+	 * 区切り文字2の直後までしか読み込まないため、暗号文の本体はデコードしません
+	 * @param decoded - v1形式をBase64デコードするストリーム
+	 * @return - 拡張子（MAX_EXTENSION_LENGTH以内に区切り文字2がない場合はnull）
+	 * @throws IOException - Base64で使用しない文字が含まれる場合や、読み込みできない場合に発生
+	 */
+	static byte[] readExtension(InputStream decoded) throws IOException {
+		byte[] extension = new byte[MAX_EXTENSION_LENGTH];
+		for (int i = 0; i <= MAX_EXTENSION_LENGTH; i++) {
+			int b = decoded.read();
+			if (b < 0) {
+				return null;
+			}
+			if (b == OriginalCodec.SPLIT2) {
+				return Arrays.copyOf(extension, i);
+			}
+			if (i < MAX_EXTENSION_LENGTH) {
+				extension[i] = (byte) b;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 独自改竄byte配列の指定した位置を戻した1byteを取得します
+	 * 位置を含む4文字だけを読み込んでデコードします
+	 * @param channel - 暗号文の読み込み用のチャネル
+	 * @param size - 暗号文のbyte数
+	 * @param bodyStart - 独自改竄byte配列のデコード後の開始位置
+	 * @param index - 戻した後の位置
+	 * @return - 戻したbyte
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0106EncryptFormatException - Base64で使用しない文字が含まれる場合に発生
+	 */
+	private static int decodeAt(FileChannel channel, long size, int bodyStart, int index) throws IOException, EP0106EncryptFormatException {
+		try {
+			return OriginalCodec.decodeAt(readDecoded(channel, size, bodyStart + index / 3 * 4, 4), index);
+		} catch (@SuppressWarnings("unused") EP0105DecryptException e) {
+			throw new EP0106EncryptFormatException("Base64文字不正", true);
+		}
+	}
+
+	/**
+	 * 外側のBase64のうち、指定した範囲を含む4文字単位だけを読み込んでデコードします
+	 * @param channel - 暗号文の読み込み用のチャネル
+	 * @param size - 暗号文のbyte数
+	 * @param offset - デコード後の開始位置
+	 * @param length - デコード後のbyte数
+	 * @return - デコードしたbyte配列
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0106EncryptFormatException - Base64で使用しない文字が含まれる場合に発生
+	 */
+	private static byte[] readDecoded(FileChannel channel, long size, int offset, int length) throws IOException, EP0106EncryptFormatException {
+		long start = offset / 3 * 4L;
+		long end = Math.min(size, (offset + length + 2L) / 3 * 4);
+		byte[] decoded;
+		try {
+			decoded = Base64.getDecoder().decode(readRaw(channel, start, (int) (end - start)));
+		} catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+			throw new EP0106EncryptFormatException("Base64文字不正", true);
+		}
+		int from = offset - offset / 3 * 3;
+		if (from + length > decoded.length) {
+			throw new EP0106EncryptFormatException("Base64長不正", true);
+		}
+		return Arrays.copyOfRange(decoded, from, from + length);
+	}
+
+	/**
+	 * ファイルの指定した範囲を読み込みます
+	 * @param channel - 読み込み用のチャネル
+	 * @param position - 開始位置
+	 * @param length - byte数
+	 * @return - 読み込んだbyte配列
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 */
+	private static byte[] readRaw(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("ファイル終端");
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Base64の末尾2文字からパディング数を取得します
+	 * @param last2 - 末尾2文字
+	 * @return - パディング数
+	 */
+	private static int padding(byte[] last2) {
+		if (last2[1] != '=') {
+			return 0;
+		}
+		return last2[0] == '=' ? 2 : 1;
+	}
+
+	/**
+	 * 1行で出力する項目名を取得します
+	 * @return - タブ区切りの項目名
+	 */
+	public static String toHeaderLine() {
+		return "形式\tアルゴリズム\t圧縮\t元の拡張子\t暗号化キー\t初期化ベクトルキー\t種別\t平文長\t暗号文長";
+	}
+
+	/**
+	 * 1行で出力する内容を取得します
+	 * v1形式や長さが不明な場合の平文長・暗号文長は-になります
+	 * 公開鍵で包んだデータキーが保存されている場合の暗号化キーはRSAになります
+	 * @return - タブ区切りの内容
+	 */
+	public String toLine() {
+		return String.join("\t",
+				this.format,
+				this.algorithm.name(),
+				this.compression.name(),
+				this.pipe ? "-" : this.extension,
+				this.saveEncryptKey ? "保存" : this.wrappedKey ? "RSA" : "なし",
+				this.saveIvKey ? "保存" : "なし",
+				this.archive ? "アーカイブ" : this.pipe ? "標準入力" : "ファイル",
+				this.originalLength == EncryptHeader.UNKNOWN_LENGTH ? "-" : String.valueOf(this.originalLength),
+				this.payloadLength == EncryptHeader.UNKNOWN_LENGTH ? "-" : String.valueOf(this.payloadLength));
+	}
+
+	public String getFormat() {
+		return this.format;
+	}
+	public EncryptAlgorithm getAlgorithm() {
+		return this.algorithm;
+	}
+	public Compression getCompression() {
+		return this.compression;
+	}
+	public String getExtension() {
+		return this.extension;
+	}
+	public boolean isSaveEncryptKey() {
+		return this.saveEncryptKey;
+	}
+	public boolean isWrappedKey() {
+		return this.wrappedKey;
+	}
+	public boolean isSaveIvKey() {
+		return this.saveIvKey;
+	}
+	public boolean isArchive() {
+		return this.archive;
+	}
+	public boolean isPipe() {
+		return this.pipe;
+	}
+	public long getOriginalLength() {
+		return this.originalLength;
+	}
+	public long getPayloadLength() {
+		return this.payloadLength;
+	}
+
+}
@@ -1,20 +1,39 @@
 package utils;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MessageDigestAlgorithms;
 import org.apache.commons.lang3.ArrayUtils;
 
 import exception.EP0101EncryptAlgorithmException;
@@ -22,12 +41,20 @@ import exception.EP0102EncryptKeyNoneException;
 import exception.EP0103EncryptKeyAttributeException;
 import exception.EP0104EncryptException;
 import exception.EP0105DecryptException;
+import exception.EP0106EncryptFormatException;
+import utils.CompressUtils.Compression;
+import utils.CompressUtils.DecompressOutputStream;
+import utils.EncryptEvents.CipherEvent;
+import utils.EncryptEvents.EnvelopeEvent;
+import utils.EncryptEvents.KeyDerivationEvent;
+import utils.PhaseStats.Phase;
 
 /**
  * 暗号に関する処理を定義しています
  * 暗号化の種類は、共通鍵暗号方式の「AES」、公開鍵暗号方式の「RSA」があります
  * AESは128・192・256bitから選択可能なブロック暗号です。データの入替や排他的論理和の計算、行列変換などの処理を組み合わせてデータを暗号化します
  * RSAは大きな素数による素因数分解が困難であることを安全性の根拠としています
+ * AESはCBCの他に、CPUの命令で並列に処理できるGCM・CTRも選択可能です。AES命令のないCPUではChaCha20-Poly1305が高速です
  * アルゴリズムのブロックは、「CBC」「ECB」があり、強度はEBC < CBCです
  * パディング方式は、数が足りない時にどう補うかを決めてます
  * @author blank-nano
@@ -36,13 +63,13 @@ import exception.EP0105DecryptException;
 public class EncryptUtils {
 
 	/** 自動補完暗号化キーの長さ */
-	private static final int AUTO_KEY_LENGTH = 128;
-	/** byteずらし */
-	private static final int SHIFT_BYTE = 73;
-	/** 区切り文字1 */
-	private static final byte SPLIT1 = ConversionUtils.stringToByteArray("_")[0];
-	/** 区切り文字2 */
-	private static final byte SPLIT2 = ConversionUtils.stringToByteArray("-")[0];
+	static final int AUTO_KEY_LENGTH = 128;
+	/** ストリーム暗号化・復号時の読み込み単位 */
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	/** 暗号文の先頭に保存するファイルごとのシード長 */
+	private static final int SEED_LENGTH = 16;
+	/** GCMの認証タグ長（bit） */
+	private static final int GCM_TAG_BITS = 128;
 
 	/**
 	 * セキュアなランダムbyte配列を作成します
@@ -55,7 +82,7 @@ public class EncryptUtils {
 			return new byte[0];
 		}
 		try {
-			SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG");
+			SecureRandom secureRandom = CryptoCache.getSecureRandom();
 			byte[] randomBytes = new byte[length];
 			secureRandom.nextBytes(randomBytes);
 			return randomBytes;
@@ -74,6 +101,19 @@ public class EncryptUtils {
 		return ConversionUtils.byteArrayToString(secureRandomBytes(length));
 	}
 
+	/**
+	 * 暗号化キーをbyte配列に変換します
+	 * 未指定の場合は自動生成の対象とするため、nullのまま返却します
+	 * @param key - 暗号化キー
+	 * @return - 暗号化キーbyte配列
+	 */
+	static byte[] keyToBytes(String key) {
+		if (key == null) {
+			return null;
+		}
+		return ConversionUtils.stringToByteArray(key);
+	}
+
 	/**
 	 * 拡張子を保存します
 	 * @param target - 暗号文
@@ -81,29 +121,59 @@ public class EncryptUtils {
 	 * @return - 拡張子を付与した暗号文
 	 */
 	public static byte[] saveExtension(byte[] target, String extension) {
-		byte[] bytes = ArrayUtils.addAll(ConversionUtils.stringToByteArray(extension), SPLIT2);
+		long start = PhaseStats.start();
+		byte[] bytes = ArrayUtils.addAll(ConversionUtils.stringToByteArray(extension), OriginalCodec.SPLIT2);
 		bytes = ArrayUtils.addAll(bytes, target);
-		return Base64.getEncoder().encode(bytes);
+		bytes = Base64.getEncoder().encode(bytes);
+		PhaseStats.record(Phase.BASE64, start, target.length);
+		return bytes;
 	}
 
 	/**
 	 * 拡張子を削除します
+	 * v2形式の場合は何もしません
 	 * @param target - 暗号文
 	 * @return - 拡張子を削除した暗号文
 	 */
 	public static byte[] deleteExtension(byte[] target) {
+		if (EncryptHeader.isContainer(target)) {
+			// v2形式は拡張子をヘッダーに持つため、そのまま返却
+			return target;
+		}
+		long start = PhaseStats.start();
 		byte[] bytes = Base64.getDecoder().decode(target);
-		return Arrays.copyOfRange(bytes, ArrayUtils.indexOf(bytes, SPLIT2) + 1, bytes.length);
+		bytes = Arrays.copyOfRange(bytes, ArrayUtils.indexOf(bytes, OriginalCodec.SPLIT2) + 1, bytes.length);
+		PhaseStats.record(Phase.BASE64, start, target.length);
+		return bytes;
 	}
 
 	/**
 	 * 拡張子を取得します
+	 * v2形式の場合はヘッダーから取得します
+	 * v1形式の場合は先頭から区切り文字までだけをデコードします
 	 * @param target - 暗号文
 	 * @return - 暗号文に付与された拡張子
 	 */
 	public static String loadExtension(byte[] target) {
-		byte[] bytes = Base64.getDecoder().decode(target);
-		bytes = Arrays.copyOfRange(bytes, 0, ArrayUtils.indexOf(bytes, SPLIT2));
+		if (EncryptHeader.isContainer(target)) {
+			try {
+				return EncryptHeader.read(target).getExtension();
+			} catch (@SuppressWarnings("unused") EP0106EncryptFormatException e) {
+				return "";
+			}
+		}
+		// 区切り文字までだけデコードする
+		long start = PhaseStats.start();
+		byte[] bytes;
+		try {
+			bytes = EncryptInfo.readExtension(Base64.getDecoder().wrap(new ByteArrayInputStream(target)));
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		if (bytes == null) {
+			throw new IllegalArgumentException("拡張子区切りなし");
+		}
+		PhaseStats.record(Phase.BASE64, start, bytes.length + 1);
 		return ConversionUtils.byteArrayToString(bytes);
 	}
 
@@ -401,284 +471,1654 @@ public class EncryptUtils {
 		return manageDecrypt(algorithm, target, ConversionUtils.stringToByteArray(encryptKey), ConversionUtils.stringToByteArray(ivKey));
 	}
 
+	/**
+	 * すべての暗号化キーを指定して、入力ストリームを指定の暗号方式で暗号化します
+	 * 暗号文のみを出力するため、暗号化キーは呼び出し側で管理してください
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の入力ストリーム
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToStream(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		EncryptUtils.EncryptBean encryptBean = new EncryptUtils().new EncryptBean();
+		encryptBean.setEncryptKey(encryptKey);
+		encryptBean.setIvKey(ivKey);
+		return doEncrypt(algorithm, input, output, encryptBean);
+	}
+
+	/**
+	 * すべての暗号化キーを指定して、入力ストリームを指定の暗号方式で暗号化します
+	 * 暗号文のみを出力するため、暗号化キーは呼び出し側で管理してください
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の入力ストリーム
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToStream(EncryptAlgorithm algorithm, InputStream input, OutputStream output, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return doEncryptToStream(algorithm, input, output, ConversionUtils.stringToByteArray(encryptKey), ConversionUtils.stringToByteArray(ivKey));
+	}
+
+	/**
+	 * すべての暗号化キーを指定して、入力ストリームを指定の暗号方式で復号します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 暗号文の入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptToStream(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		return doDecrypt(algorithm, input, output, encryptKey, ivKey);
+	}
 
+	/**
+	 * すべての暗号化キーを指定して、入力ストリームを指定の暗号方式で復号します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 暗号文の入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptToStream(EncryptAlgorithm algorithm, InputStream input, OutputStream output, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		return doDecryptToStream(algorithm, input, output, ConversionUtils.stringToByteArray(encryptKey), ConversionUtils.stringToByteArray(ivKey));
+	}
 
 	/**
-	 * 暗号化を管理します
+	 * byte配列を指定の暗号方式でv2形式に暗号化します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
 	 * @param algorithm - 暗号アルゴリズム
 	 * @param target - 平文
+	 * @param extension - 元の拡張子
 	 * @param encryptKey - 暗号化キー
 	 * @param ivKey - 初期化ベクトルキー
-	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
-	 * @return - 暗号化byte配列
+	 * @return - ヘッダー付き暗号化byte配列
 	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
 	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
 	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
 	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
 	 */
-	private static byte[] manageEncrypt(EncryptAlgorithm algorithm, byte[] target, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
-		// 準備
-		EncryptUtils.EncryptBean encryptBean = new EncryptUtils().new EncryptBean();
-		encryptBean.setSaveEncryptKey(encryptKey == null);
-		encryptBean.setSaveIvKey(ivKey == null);
-		if (encryptBean.isSaveEncryptKey()) {
-			encryptBean.setEncryptKey(secureRandomBytes(AUTO_KEY_LENGTH));
-		} else {
-			encryptBean.setEncryptKey(encryptKey);
-		}
-		if (encryptBean.isSaveIvKey()) {
-			encryptBean.setIvKey(secureRandomBytes(AUTO_KEY_LENGTH));
-		} else {
-			encryptBean.setIvKey(ivKey);
-		}
-		// 暗号化
-		byte[] encryptBytes = doEncrypt(algorithm, target, encryptBean);
-		// 独自暗号化して返却
-		return doOriginal(encryptBytes, encryptBean);
+	public static byte[] doEncryptToContainer(EncryptAlgorithm algorithm, byte[] target, String extension, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
+		return manageEncryptContainer(algorithm, target, extension, encryptKey, ivKey);
 	}
 
 	/**
-	 * 暗号化します
+	 * byte配列を指定の暗号方式でv2形式に暗号化します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
 	 * @param algorithm - 暗号アルゴリズム
 	 * @param target - 平文
-	 * @param encKey - 暗号化キー
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
 	 * @param ivKey - 初期化ベクトルキー
-	 * @return - 暗号化byte配列
+	 * @return - ヘッダー付き暗号化byte配列
 	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
 	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
 	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
 	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
 	 */
-	private static byte[] doEncrypt(EncryptAlgorithm algorithm, byte[] target, EncryptBean encryptBean) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
-		if (target == null) {
-			return new byte[0];
-		}
-		if (encryptBean.getEncryptKey() == null || encryptBean.getIvKey() == null) {
-			throw new EP0102EncryptKeyNoneException(true);
-		}
-		SecretKeySpec secretKeySpec = new SecretKeySpec(DigestUtils.sha256(encryptBean.getEncryptKey()), algorithm.getEncrypt());
-		IvParameterSpec ivParameterSpec = new IvParameterSpec(DigestUtils.md5(encryptBean.getIvKey()));
-		Cipher cipher;
-		try {
-			cipher = Cipher.getInstance(algorithm.getAlgorithm());
-		} catch (@SuppressWarnings("unused") NoSuchAlgorithmException | NoSuchPaddingException e) {
-			throw new EP0101EncryptAlgorithmException(true);
-		}
-		try {
-			cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, ivParameterSpec);
-		} catch (@SuppressWarnings("unused") InvalidKeyException | InvalidAlgorithmParameterException e) {
-			throw new EP0103EncryptKeyAttributeException(true);
-		}
-		try {
-			return cipher.doFinal(target);
-		} catch (@SuppressWarnings("unused") IllegalBlockSizeException | BadPaddingException e) {
-			throw new EP0104EncryptException(true);
-		}
+	public static byte[] doEncryptToContainer(EncryptAlgorithm algorithm, byte[] target, String extension, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
+		return manageEncryptContainer(algorithm, target, extension, keyToBytes(encryptKey), keyToBytes(ivKey));
 	}
 
 	/**
-	 * 独自にbyte配列を改ざんします
-	 * 初期化ベクトルキー、暗号文、暗号化キー、の順で連結し返却
-	 * Base64を使用し、初期化ベクトルキー、暗号文、暗号化キーはエンコードをかける（Base64は英数字と「/」「+」）
-	 * 各3つの間をBase64では使用しない「-」「_」で区切る
-	 * 最終的にすべてのキーを保存する場合は、初期化ベクトルキー_暗号文-暗号化キーとなる
-	 * byteを+3ずらす
-	 * @param encryptBytes - 暗号化
+	 * 入力ストリームを指定の暗号方式でv2形式に暗号化します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
 	 * @param encryptKey - 暗号化キー
 	 * @param ivKey - 初期化ベクトルキー
-	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
-	 * @return - 独自改竄byte配列
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
 	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
 	 */
-	private static byte[] doOriginal(byte[] encryptBytes, EncryptBean encryptBean) throws EP0102EncryptKeyNoneException {
-		if (encryptBytes == null) {
-			return new byte[0];
-		}
-		byte[] original;
-		if (encryptBean.isSaveEncryptKey()) {
-			if (encryptBean.isSaveIvKey()) {
-				// 初期化ベクトルキー + 区切り文字1
-				original = ArrayUtils.addAll(Base64.getEncoder().encode(ArraysUtils.reverse(encryptBean.getIvKey())), SPLIT1);
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文
-				original = ArrayUtils.addAll(original, Base64.getEncoder().encode(ArraysUtils.reverse(encryptBytes)));
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文 + 区切り文字2
-				original = ArrayUtils.addAll(original, SPLIT2);
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文 + 区切り文字2 + 暗号化キー
-				original = ArrayUtils.addAll(original, Base64.getEncoder().encode(ArraysUtils.reverse(encryptBean.getEncryptKey())));
-			} else {
-				throw new EP0102EncryptKeyNoneException("暗号化キーが存在しません", true);
-			}
-		} else {
-			if (encryptBean.isSaveIvKey()) {
-				// 初期化ベクトルキー + 区切り文字1
-				original = ArrayUtils.addAll(Base64.getEncoder().encode(ArraysUtils.reverse(encryptBean.getIvKey())), SPLIT1);
-				// 初期化ベクトルキー + 区切り文字1 + 暗号文
-				original = ArrayUtils.addAll(original, Base64.getEncoder().encode(ArraysUtils.reverse(encryptBytes)));
-			} else {
-				// 暗号文のみ
-				original = Base64.getEncoder().encode(ArraysUtils.reverse(encryptBytes));
-			}
-		}
-		// byteをずらす(ずらし分 + インデックス / 3)
-		for (int i = 0; i < original.length; i++) {
-			original[i] = (byte) (original[i] + SHIFT_BYTE + i / 3);
-		}
-		// Base64エンコードして返却
-		return Base64.getEncoder().encode(original);
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, InputStream input, OutputStream output, String extension, long length, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, CompressUtils.NO_COMPRESSION, input, output, extension, length, encryptKey, ivKey, null);
 	}
 
 	/**
-	 * 復号を管理します
+	 * 入力ストリームを指定の暗号方式でv2形式に暗号化します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
 	 * @param algorithm - 暗号アルゴリズム
-	 * @param encrypt - 暗号文
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
 	 * @param encryptKey - 暗号化キー
 	 * @param ivKey - 初期化ベクトルキー
-	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
-	 * @return - 平文byte配列
+	 * @return - 書き込んだbyte数
 	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
 	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
 	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
-	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
 	 */
-	private static byte[] manageDecrypt(EncryptAlgorithm algorithm, byte[] encrypt, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException {
-		// 独自復号
-		DecryptBean decryptBean = undoOriginal(encrypt, encryptKey, ivKey);
-		// 復号して返却
-		return doDecrypt(algorithm, decryptBean.getDecrypt(), decryptBean.getEncryptKey(), decryptBean.getIvKey());
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, InputStream input, OutputStream output, String extension, long length, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, CompressUtils.NO_COMPRESSION, input, output, extension, length, keyToBytes(encryptKey), keyToBytes(ivKey), null);
 	}
 
 	/**
-	 * 独自に改竄したbyte配列を戻します
-	 * 初期化ベクトルキー、暗号文字列、暗号化キー、の順で連結し返却
-	 * @param encryptBytes - 暗号化
+	 * 入力ストリームを圧縮してから指定の暗号方式でv2形式に暗号化します
+	 * 先頭を試しに圧縮して効果がない場合は圧縮せず、圧縮したかどうかはヘッダーに保存します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
 	 * @param encryptKey - 暗号化キー
 	 * @param ivKey - 初期化ベクトルキー
-	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
-	 * @return - 独自改竄byte配列
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
 	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
 	 */
-	private static DecryptBean undoOriginal(byte[] encryptBytes, byte[] encryptKey, byte[] ivKey) throws EP0102EncryptKeyNoneException {
-		EncryptUtils.DecryptBean decryptBean = new EncryptUtils().new DecryptBean();
-		// Base64デコード
-		byte[] original = Base64.getDecoder().decode(encryptBytes);
-		// byteを戻す(ずらし分 - インデックス / 3)
-		for (int i = 0; i < original.length; i++) {
-			original[i] = (byte) (original[i] - SHIFT_BYTE - i / 3);
-		}
-		if (encryptKey == null) {
-			if (ivKey == null) {
-				// 暗号化キー
-				decryptBean.setEncryptKey(ArraysUtils.reverse(Base64.getDecoder().decode(Arrays.copyOfRange(original, ArrayUtils.indexOf(original, SPLIT2) + 1, original.length))));
-				// 暗号文
-				decryptBean.setDecrypt(ArraysUtils.reverse(Base64.getDecoder().decode(Arrays.copyOfRange(original, ArrayUtils.indexOf(original, SPLIT1) + 1, ArrayUtils.indexOf(original, SPLIT2)))));
-				// IV
-				decryptBean.setIvKey(ArraysUtils.reverse(Base64.getDecoder().decode(Arrays.copyOfRange(original, 0, ArrayUtils.indexOf(original, SPLIT1)))));
-			} else {
-				throw new EP0102EncryptKeyNoneException("暗号化キーが存在しません", true);
-			}
-		} else {
-			if (ivKey == null) {
-				// 暗号化キー
-				decryptBean.setEncryptKey(encryptKey);
-				// 暗号文
-				decryptBean.setDecrypt(ArraysUtils.reverse(Base64.getDecoder().decode(Arrays.copyOfRange(original, ArrayUtils.indexOf(original, SPLIT1) + 1, original.length))));
-				// IV
-				decryptBean.setIvKey(ArraysUtils.reverse(Base64.getDecoder().decode(Arrays.copyOfRange(original, 0, ArrayUtils.indexOf(original, SPLIT1)))));
-			} else {
-				decryptBean.setDecrypt(ArraysUtils.reverse(Base64.getDecoder().decode(original)));
-				decryptBean.setEncryptKey(encryptKey);
-				decryptBean.setIvKey(ivKey);
-			}
-		}
-		return decryptBean;
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, int compressLevel, InputStream input, OutputStream output, String extension, long length, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, compressLevel, input, output, extension, length, encryptKey, ivKey, null);
 	}
 
 	/**
-	 * 復号します
+	 * 入力ストリームを圧縮してから指定の暗号方式でv2形式に暗号化します
+	 * 先頭を試しに圧縮して効果がない場合は圧縮せず、圧縮したかどうかはヘッダーに保存します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
 	 * @param algorithm - 暗号アルゴリズム
-	 * @param encrypt - 暗号文
-	 * @param encKey - 暗号化キー
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
+	 * @param encryptKey - 暗号化キー
 	 * @param ivKey - 初期化ベクトルキー
-	 * @return - 暗号化byte配列
+	 * @return - 書き込んだbyte数
 	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
 	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
 	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
-	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
 	 */
-	private static byte[] doDecrypt(EncryptAlgorithm algorithm, byte[] encrypt, byte[] encKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException {
-		if (encrypt == null) {
-			return new byte[0];
-		}
-		if (encKey == null || ivKey == null) {
-			throw new EP0102EncryptKeyNoneException(true);
-		}
-		SecretKeySpec secretKeySpec = new SecretKeySpec(DigestUtils.sha256(encKey), algorithm.getEncrypt());
-		IvParameterSpec ivParameterSpec = new IvParameterSpec(DigestUtils.md5(ivKey));
-		Cipher cipher;
-		try {
-			cipher = Cipher.getInstance(algorithm.getAlgorithm());
-		} catch (@SuppressWarnings("unused") NoSuchAlgorithmException | NoSuchPaddingException e) {
-			throw new EP0101EncryptAlgorithmException(true);
-		}
-		try {
-			cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivParameterSpec);
-		} catch (@SuppressWarnings("unused") InvalidKeyException | InvalidAlgorithmParameterException e) {
-			throw new EP0103EncryptKeyAttributeException(true);
-		}
-		try {
-			return cipher.doFinal(encrypt);
-		} catch (@SuppressWarnings("unused") IllegalBlockSizeException | BadPaddingException e) {
-			throw new EP0105DecryptException(true);
-		}
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, int compressLevel, InputStream input, OutputStream output, String extension, long length, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, compressLevel, input, output, extension, length, keyToBytes(encryptKey), keyToBytes(ivKey), null);
 	}
 
 	/**
-	 * 暗号アルゴリズム
-	 * @author blank-nano
-	 *
+	 * 入力ストリームを圧縮してから、RSAの公開鍵で包んだデータキーで指定の暗号方式でv2形式に暗号化します
+	 * データキーを第一パスワードとして暗号化し、包んだデータキーと初期化ベクトルキーをヘッダーに保存します
+	 * 初期化ベクトルキーはファイルごとに自動生成するため、同じデータキーで複数のファイルを暗号化できます
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
+	 * @param envelope - 暗号化用の鍵
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
 	 */
-	public enum EncryptAlgorithm {
-		/** AES/CBC/PKCS5Padding */
-		  AES("AES", "AES/CBC/PKCS5Padding")
-		/** RSA/ECB/PKCS1Padding */
-		, RSA("RSA", "RSA/ECB/PKCS1Padding")
-		;
-
-		private String encrypt;
-		private String algorithm;
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, int compressLevel, InputStream input, OutputStream output, String extension, long length, KeyEnvelope envelope) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, compressLevel, input, output, extension, length, keyToBytes(envelope.getDataKey()), null, envelope.getWrappedKey());
+	}
 
-		/**
-		 * デフォルトコンストラクタ
-		 * @param encrypt - 暗号の種類
-		 * @param algorithm - 暗号アルゴリズム
-		 */
-		private EncryptAlgorithm(String encrypt, String algorithm) {
-			this.encrypt = encrypt;
-			this.algorithm = algorithm;
-		}
+	/**
+	 * ファイルのチャネルを指定の暗号方式でv2形式に暗号化します
+	 * 入力はメモリマップし、ダイレクトバッファを介して出力のチャネルへ書き込むため、ヒープへのコピーを行いません
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の読み込み用チャネル（現在位置から末尾までを暗号化）
+	 * @param output - ヘッダー付き暗号文の書き込み用チャネル
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, FileChannel input, FileChannel output, String extension, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, CompressUtils.NO_COMPRESSION, input, output, extension, encryptKey, ivKey, null);
+	}
 
-		/**
-		 * 暗号の種類を取得します
-		 * @return - 暗号の種類
-		 */
-		public String getEncrypt() {
-			return this.encrypt;
-		}
+	/**
+	 * ファイルのチャネルを指定の暗号方式でv2形式に暗号化します
+	 * 入力はメモリマップし、ダイレクトバッファを介して出力のチャネルへ書き込むため、ヒープへのコピーを行いません
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の読み込み用チャネル（現在位置から末尾までを暗号化）
+	 * @param output - ヘッダー付き暗号文の書き込み用チャネル
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, FileChannel input, FileChannel output, String extension, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, CompressUtils.NO_COMPRESSION, input, output, extension, keyToBytes(encryptKey), keyToBytes(ivKey), null);
+	}
 
-		/**
-		 * 暗号アルゴリズムを取得します
-		 * @return - 暗号アルゴリズム
-		 */
-		public String getAlgorithm() {
-			return this.algorithm;
-		}
+	/**
+	 * ファイルのチャネルを圧縮してから指定の暗号方式でv2形式に暗号化します
+	 * 先頭を試しに圧縮して効果がない場合は圧縮せず、メモリマップで処理します
+	 * 圧縮したかどうかはヘッダーに保存するため、復号時は自動で展開します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の読み込み用チャネル（現在位置から末尾までを暗号化）
+	 * @param output - ヘッダー付き暗号文の書き込み用チャネル
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, int compressLevel, FileChannel input, FileChannel output, String extension, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, compressLevel, input, output, extension, encryptKey, ivKey, null);
+	}
 
+	/**
+	 * ファイルのチャネルを圧縮してから指定の暗号方式でv2形式に暗号化します
+	 * 先頭を試しに圧縮して効果がない場合は圧縮せず、メモリマップで処理します
+	 * 圧縮したかどうかはヘッダーに保存するため、復号時は自動で展開します
+	 * 暗号化キーがnullの場合は自動生成し、ヘッダーに保存します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の読み込み用チャネル（現在位置から末尾までを暗号化）
+	 * @param output - ヘッダー付き暗号文の書き込み用チャネル
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, int compressLevel, FileChannel input, FileChannel output, String extension, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, compressLevel, input, output, extension, keyToBytes(encryptKey), keyToBytes(ivKey), null);
 	}
 
-	private class EncryptBean {
-		private byte[] encryptKey;
-		private byte[] ivKey;
-		private boolean saveEncryptKey;
+	/**
+	 * ファイルのチャネルを圧縮してから、RSAの公開鍵で包んだデータキーで指定の暗号方式でv2形式に暗号化します
+	 * データキーを第一パスワードとして暗号化し、包んだデータキーと初期化ベクトルキーをヘッダーに保存します
+	 * 初期化ベクトルキーはファイルごとに自動生成するため、同じデータキーで複数のファイルを暗号化できます
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の読み込み用チャネル（現在位置から末尾までを暗号化）
+	 * @param output - ヘッダー付き暗号文の書き込み用チャネル
+	 * @param extension - 元の拡張子
+	 * @param envelope - 暗号化用の鍵
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doEncryptToContainer(EncryptAlgorithm algorithm, int compressLevel, FileChannel input, FileChannel output, String extension, KeyEnvelope envelope) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		return manageEncryptContainer(algorithm, compressLevel, input, output, extension, keyToBytes(envelope.getDataKey()), null, envelope.getWrappedKey());
+	}
+
+	/**
+	 * v2形式の入力ストリームを復号します
+	 * ヘッダーは事前にEncryptHeader.readで読み込んでください
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指す入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptFromContainer(EncryptHeader header, InputStream input, OutputStream output, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		return manageDecryptContainer(header, input, output, encryptKey, ivKey);
+	}
+
+	/**
+	 * v2形式の入力ストリームを復号します
+	 * ヘッダーは事前にEncryptHeader.readで読み込んでください
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指す入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptFromContainer(EncryptHeader header, InputStream input, OutputStream output, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		return manageDecryptContainer(header, input, output, keyToBytes(encryptKey), keyToBytes(ivKey));
+	}
+
+	/**
+	 * v2形式のファイルのチャネルを復号します
+	 * 入力はメモリマップし、ダイレクトバッファを介して出力のチャネルへ書き込むため、ヒープへのコピーを行いません
+	 * ヘッダーは事前にEncryptHeader.readで読み込んでください
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指す読み込み用チャネル
+	 * @param output - 平文の書き込み用チャネル
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptFromContainer(EncryptHeader header, FileChannel input, FileChannel output, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		return manageDecryptContainer(header, input, output, encryptKey, ivKey);
+	}
+
+	/**
+	 * v2形式のファイルのチャネルを復号します
+	 * 入力はメモリマップし、ダイレクトバッファを介して出力のチャネルへ書き込むため、ヒープへのコピーを行いません
+	 * ヘッダーは事前にEncryptHeader.readで読み込んでください
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指す読み込み用チャネル
+	 * @param output - 平文の書き込み用チャネル
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptFromContainer(EncryptHeader header, FileChannel input, FileChannel output, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		return manageDecryptContainer(header, input, output, keyToBytes(encryptKey), keyToBytes(ivKey));
+	}
+
+	/**
+	 * v2形式のチャネルから指定範囲だけを復号します
+	 * セグメント分割したアルゴリズムのみ対応し、範囲を含むセグメントだけを読み込みます
+	 * ヘッダーは事前にEncryptHeader.readで読み込んでください
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - ヘッダー直後を指すチャネル
+	 * @param output - 平文の出力ストリーム
+	 * @param offset - 平文の開始位置
+	 * @param length - 平文の長さ（末尾を超える場合は末尾まで）
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws EP0106EncryptFormatException - セグメント分割していない、または圧縮している暗号文の場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptRangeFromContainer(EncryptHeader header, SeekableByteChannel channel, OutputStream output, long offset, long length, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, EP0106EncryptFormatException, IOException {
+		return manageDecryptRange(header, channel, output, offset, length, encryptKey, ivKey);
+	}
+
+	/**
+	 * v2形式のチャネルから指定範囲だけを復号します
+	 * セグメント分割したアルゴリズムのみ対応し、範囲を含むセグメントだけを読み込みます
+	 * ヘッダーは事前にEncryptHeader.readで読み込んでください
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - ヘッダー直後を指すチャネル
+	 * @param output - 平文の出力ストリーム
+	 * @param offset - 平文の開始位置
+	 * @param length - 平文の長さ（末尾を超える場合は末尾まで）
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws EP0106EncryptFormatException - セグメント分割していない、または圧縮している暗号文の場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long doDecryptRangeFromContainer(EncryptHeader header, SeekableByteChannel channel, OutputStream output, long offset, long length, String encryptKey, String ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, EP0106EncryptFormatException, IOException {
+		return manageDecryptRange(header, channel, output, offset, length, keyToBytes(encryptKey), keyToBytes(ivKey));
+	}
+
+
+
+	/**
+	 * 暗号化を管理します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param target - 平文
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
+	 * @return - 暗号化byte配列
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 */
+	private static byte[] manageEncrypt(EncryptAlgorithm algorithm, byte[] target, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
+		// 準備
+		EncryptBean encryptBean = createEncryptBean(encryptKey, ivKey, null);
+		// 暗号化
+		byte[] encryptBytes;
+		CipherEvent cipherEvent = new CipherEvent(algorithm, EncryptEvents.ENCRYPT);
+		cipherEvent.begin();
+		try {
+			encryptBytes = doEncrypt(algorithm, target, encryptBean);
+			cipherEvent.success(encryptBytes.length);
+		} finally {
+			cipherEvent.finish();
+		}
+		// 独自暗号化して返却
+		EnvelopeEvent envelopeEvent = new EnvelopeEvent(EncryptEvents.ENCODE, encryptBytes.length);
+		envelopeEvent.begin();
+		try {
+			byte[] original = doOriginal(encryptBytes, encryptBean);
+			envelopeEvent.success(EncryptEvents.FORMAT_V1);
+			return original;
+		} finally {
+			envelopeEvent.finish();
+		}
+	}
+
+	/**
+	 * v2形式での暗号化を管理します
+	 * ヘッダーと暗号文を1つの配列に直接出力します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param target - 平文
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - ヘッダー付き暗号化byte配列
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 */
+	private static byte[] manageEncryptContainer(EncryptAlgorithm algorithm, byte[] target, String extension, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
+		byte[] plain = target == null ? new byte[0] : target;
+		if (algorithm.isSegmented()) {
+			// セグメント分割の場合はストリームで処理
+			ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, SegmentCipher.getOutputSize(plain.length) + 1024));
+			try {
+				manageEncryptContainer(algorithm, CompressUtils.NO_COMPRESSION, new ByteArrayInputStream(plain), output, extension, plain.length, encryptKey, ivKey, null);
+			} catch (@SuppressWarnings("unused") IOException e) {
+				throw new EP0104EncryptException(true);
+			}
+			return output.toByteArray();
+		}
+		// 準備
+		EncryptBean encryptBean = createEncryptBean(encryptKey, ivKey, null);
+		byte[] seed = createSeed(algorithm);
+		Cipher cipher = createCipher(algorithm, Cipher.ENCRYPT_MODE, encryptBean.getEncryptKey(), encryptBean.getIvKey(), seed);
+		EncryptHeader header = createHeader(algorithm, Compression.NONE, extension, plain.length, encryptBean, cipher);
+		// ヘッダー + シードの後ろに暗号文を直接書き込む
+		byte[] headerBytes = header.toBytes();
+		int bodyStart = headerBytes.length + seed.length;
+		byte[] container = Arrays.copyOf(headerBytes, bodyStart + cipher.getOutputSize(plain.length));
+		System.arraycopy(seed, 0, container, headerBytes.length, seed.length);
+		CipherEvent event = new CipherEvent(algorithm, EncryptEvents.ENCRYPT);
+		event.begin();
+		try {
+			int length = cipher.doFinal(plain, 0, plain.length, container, bodyStart);
+			Progress.addBytes(plain.length);
+			event.success(seed.length + length);
+			return length == container.length - bodyStart ? container : Arrays.copyOf(container, bodyStart + length);
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0104EncryptException(true);
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * v2形式でのストリーム暗号化を管理します
+	 * 圧縮する場合は、先頭を読み込んで圧縮するか判定してから暗号化します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー（保存しない場合はnull）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long manageEncryptContainer(EncryptAlgorithm algorithm, int compressLevel, InputStream input, OutputStream output, String extension, long length, byte[] encryptKey, byte[] ivKey, byte[] wrappedKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		if (compressLevel == CompressUtils.NO_COMPRESSION) {
+			return encryptContainer(algorithm, Compression.NONE, compressLevel, input, output, extension, length, encryptKey, ivKey, wrappedKey);
+		}
+		// 先頭を試しに圧縮して判定し、読み込んだ先頭は戻して暗号化する
+		byte[] sample = input.readNBytes(CompressUtils.SAMPLE_SIZE);
+		Compression compression = CompressUtils.select(compressLevel, sample, sample.length);
+		return encryptContainer(algorithm, compression, compressLevel, new SequenceInputStream(new ByteArrayInputStream(sample), input), output, extension, length, encryptKey, ivKey, wrappedKey);
+	}
+
+	/**
+	 * 圧縮方式を決定済みの入力ストリームをv2形式に暗号化します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compression - 圧縮方式
+	 * @param compressLevel - 圧縮レベル
+	 * @param input - 平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー（保存しない場合はnull）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long encryptContainer(EncryptAlgorithm algorithm, Compression compression, int compressLevel, InputStream input, OutputStream output, String extension, long length, byte[] encryptKey, byte[] ivKey, byte[] wrappedKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		// 圧縮前の平文のbyte数で進捗を数える
+		InputStream counted = Progress.count(input);
+		InputStream plain = compression == Compression.NONE ? counted : CompressUtils.compress(counted, compressLevel);
+		// 準備
+		EncryptBean encryptBean = createEncryptBean(encryptKey, ivKey, wrappedKey);
+		CipherEvent event = new CipherEvent(algorithm, EncryptEvents.ENCRYPT);
+		event.begin();
+		try {
+			if (algorithm.isSegmented()) {
+				EncryptHeader header = createHeader(algorithm, compression, extension, length, encryptBean, null);
+				// ヘッダー + セグメント分割した暗号文
+				header.write(output);
+				long total = header.getLength() + encryptSegments(algorithm, plain, output, encryptBean.getEncryptKey(), encryptBean.getIvKey());
+				event.success(total);
+				return total;
+			}
+			byte[] seed = createSeed(algorithm);
+			Cipher cipher = createCipher(algorithm, Cipher.ENCRYPT_MODE, encryptBean.getEncryptKey(), encryptBean.getIvKey(), seed);
+			EncryptHeader header = createHeader(algorithm, compression, extension, length, encryptBean, cipher);
+			// ヘッダー + シード + 暗号文
+			header.write(output);
+			output.write(seed);
+			long total = header.getLength() + seed.length + runCipher(cipher, plain, output);
+			event.success(total);
+			return total;
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0104EncryptException(true);
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * v2形式でのチャネル暗号化を管理します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compressLevel - 圧縮レベル（CompressUtils.NO_COMPRESSIONの場合は圧縮しない）
+	 * @param input - 平文の読み込み用チャネル
+	 * @param output - ヘッダー付き暗号文の書き込み用チャネル
+	 * @param extension - 元の拡張子
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー（保存しない場合はnull）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long manageEncryptContainer(EncryptAlgorithm algorithm, int compressLevel, FileChannel input, FileChannel output, String extension, byte[] encryptKey, byte[] ivKey, byte[] wrappedKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		long length = input.size() - input.position();
+		// 先頭を位置指定で試しに圧縮して判定する
+		Compression compression = CompressUtils.select(compressLevel, input);
+		if (algorithm.isSegmented() || compression != Compression.NONE) {
+			// セグメント分割の場合は1MB単位、圧縮する場合は圧縮後の長さ単位で読み書きするため、ストリームで処理
+			return encryptContainer(algorithm, compression, compressLevel, Channels.newInputStream(input), new BufferedOutputStream(Channels.newOutputStream(output)), extension, length, encryptKey, ivKey, wrappedKey);
+		}
+		// 準備
+		EncryptBean encryptBean = createEncryptBean(encryptKey, ivKey, wrappedKey);
+		byte[] seed = createSeed(algorithm);
+		Cipher cipher = createCipher(algorithm, Cipher.ENCRYPT_MODE, encryptBean.getEncryptKey(), encryptBean.getIvKey(), seed);
+		EncryptHeader header = createHeader(algorithm, Compression.NONE, extension, length, encryptBean, cipher);
+		if (header.getPayloadLength() != EncryptHeader.UNKNOWN_LENGTH) {
+			FileUtils.preallocate(output, output.position() + header.getLength() + header.getPayloadLength());
+		}
+		// ヘッダー + シード + 暗号文
+		FileUtils.writeFully(output, ByteBuffer.wrap(header.toBytes()));
+		FileUtils.writeFully(output, ByteBuffer.wrap(seed));
+		CipherEvent event = new CipherEvent(algorithm, EncryptEvents.ENCRYPT);
+		event.begin();
+		try {
+			long total = header.getLength() + seed.length + runCipher(cipher, input, output);
+			output.truncate(output.position());
+			event.success(total);
+			return total;
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0104EncryptException(true);
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * 複数ファイルをまとめた入力ストリームをアーカイブとして暗号化します
+	 * 任意の範囲を取り出せるよう、セグメント分割する暗号アルゴリズムのみ使用できます
+	 * EncryptArchiveから使用します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - アーカイブの平文の入力ストリーム
+	 * @param output - ヘッダー付き暗号文の出力ストリーム
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー（保存しない場合はnull）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズム、セグメント分割しないアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	static long encryptToArchive(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encryptKey, byte[] ivKey, byte[] wrappedKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		if (!algorithm.isSegmented()) {
+			throw new EP0101EncryptAlgorithmException("アーカイブは分割形式のみ対応", true);
+		}
+		EncryptBean encryptBean = createEncryptBean(encryptKey, ivKey, wrappedKey);
+		EncryptHeader header = createHeader(algorithm, Compression.NONE, "", EncryptHeader.UNKNOWN_LENGTH, encryptBean, null);
+		header.setArchive(true);
+		header.write(output);
+		return header.getLength() + encryptSegments(algorithm, Progress.count(input), output, encryptBean.getEncryptKey(), encryptBean.getIvKey());
+	}
+
+	/**
+	 * 暗号化キー情報を準備します
+	 * 暗号化キーが指定されていない場合は自動生成し、暗号文に保存します
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー（保存しない場合はnull）
+	 * @return - 暗号化キー情報
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 */
+	private static EncryptBean createEncryptBean(byte[] encryptKey, byte[] ivKey, byte[] wrappedKey) throws EP0101EncryptAlgorithmException {
+		EncryptUtils.EncryptBean encryptBean = new EncryptUtils().new EncryptBean();
+		encryptBean.setSaveEncryptKey(encryptKey == null);
+		encryptBean.setSaveIvKey(ivKey == null);
+		if (encryptBean.isSaveEncryptKey()) {
+			encryptBean.setEncryptKey(secureRandomBytes(AUTO_KEY_LENGTH));
+		} else {
+			encryptBean.setEncryptKey(encryptKey);
+		}
+		if (encryptBean.isSaveIvKey()) {
+			encryptBean.setIvKey(secureRandomBytes(AUTO_KEY_LENGTH));
+		} else {
+			encryptBean.setIvKey(ivKey);
+		}
+		encryptBean.setWrappedKey(wrappedKey);
+		return encryptBean;
+	}
+
+	/**
+	 * v2形式のヘッダーを作成します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param compression - 圧縮方式
+	 * @param extension - 元の拡張子（標準入力の場合はnull）
+	 * @param length - 平文のbyte数（不明な場合はEncryptHeader.UNKNOWN_LENGTH）
+	 * @param encryptBean - 暗号化キー情報
+	 * @param cipher - 初期化済みのCipher（セグメント分割の場合はnull）
+	 * @return - ヘッダー（暗号文長はシードを含む）
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 */
+	private static EncryptHeader createHeader(EncryptAlgorithm algorithm, Compression compression, String extension, long length, EncryptBean encryptBean, Cipher cipher) throws EP0102EncryptKeyNoneException {
+		if (encryptBean.isSaveEncryptKey() && !encryptBean.isSaveIvKey()) {
+			throw new EP0102EncryptKeyNoneException("暗号化キーが存在しません", true);
+		}
+		EncryptHeader header = new EncryptHeader();
+		header.setAlgorithm(algorithm);
+		header.setCompression(compression);
+		// 元の拡張子がない場合は標準入力から暗号化したことを保存
+		header.setPipe(extension == null);
+		header.setExtension(extension);
+		if (encryptBean.isSaveEncryptKey()) {
+			header.setEncryptKey(encryptBean.getEncryptKey());
+		}
+		if (encryptBean.isSaveIvKey()) {
+			header.setIvKey(encryptBean.getIvKey());
+		}
+		header.setWrappedKey(encryptBean.getWrappedKey());
+		header.setOriginalLength(length);
+		if (compression != Compression.NONE) {
+			// 圧縮後の長さは書き込むまで分からない
+			header.setPayloadLength(EncryptHeader.UNKNOWN_LENGTH);
+		} else if (algorithm.isSegmented() && length >= 0) {
+			header.setPayloadLength(SegmentCipher.getOutputSize(length));
+		} else if (length >= 0 && length <= Integer.MAX_VALUE) {
+			header.setPayloadLength(getSeedLength(algorithm) + cipher.getOutputSize((int) length));
+		}
+		return header;
+	}
+
+	/**
+	 * 暗号化します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param target - 平文
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 暗号化byte配列
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 */
+	private static byte[] doEncrypt(EncryptAlgorithm algorithm, byte[] target, EncryptBean encryptBean) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
+		if (target == null) {
+			return new byte[0];
+		}
+		if (encryptBean.getEncryptKey() == null || encryptBean.getIvKey() == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		if (algorithm.isSegmented()) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, SegmentCipher.getOutputSize(target.length)));
+			try {
+				encryptSegments(algorithm, Progress.count(new ByteArrayInputStream(target)), output, encryptBean.getEncryptKey(), encryptBean.getIvKey());
+			} catch (@SuppressWarnings("unused") IOException e) {
+				throw new EP0104EncryptException(true);
+			}
+			return output.toByteArray();
+		}
+		byte[] seed = createSeed(algorithm);
+		Cipher cipher = createCipher(algorithm, Cipher.ENCRYPT_MODE, encryptBean.getEncryptKey(), encryptBean.getIvKey(), seed);
+		try {
+			long start = PhaseStats.start();
+			// シード + 暗号文
+			byte[] encrypt = Arrays.copyOf(seed, seed.length + cipher.getOutputSize(target.length));
+			int length = seed.length + cipher.doFinal(target, 0, target.length, encrypt, seed.length);
+			PhaseStats.record(Phase.CIPHER, start, target.length);
+			Progress.addBytes(target.length);
+			return length == encrypt.length ? encrypt : Arrays.copyOf(encrypt, length);
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0104EncryptException(true);
+		}
+	}
+
+	/**
+	 * 入力ストリームを暗号化し、出力ストリームへ書き込みます
+	 * 固定長ずつ読み込んで暗号化するため、入力サイズに関わらず使用メモリは一定です
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の入力ストリーム
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encryptBean - 暗号化キー情報
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long doEncrypt(EncryptAlgorithm algorithm, InputStream input, OutputStream output, EncryptBean encryptBean) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		if (encryptBean.getEncryptKey() == null || encryptBean.getIvKey() == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		if (algorithm.isSegmented()) {
+			return encryptSegments(algorithm, input, output, encryptBean.getEncryptKey(), encryptBean.getIvKey());
+		}
+		byte[] seed = createSeed(algorithm);
+		Cipher cipher = createCipher(algorithm, Cipher.ENCRYPT_MODE, encryptBean.getEncryptKey(), encryptBean.getIvKey(), seed);
+		try {
+			output.write(seed);
+			return seed.length + runCipher(cipher, input, output);
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0104EncryptException(true);
+		}
+	}
+
+	/**
+	 * 独自にbyte配列を改ざんします
+	 * 初期化ベクトルキー、暗号文、暗号化キー、の順で連結し返却
+	 * Base64を使用し、初期化ベクトルキー、暗号文、暗号化キーはエンコードをかける（Base64は英数字と「/」「+」）
+	 * 各3つの間をBase64では使用しない「-」「_」で区切る
+	 * 最終的にすべてのキーを保存する場合は、初期化ベクトルキー_暗号文-暗号化キーとなる
+	 * byteを+3ずらす
+	 * @param encryptBytes - 暗号化
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
+	 * @return - 独自改竄byte配列
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 */
+	private static byte[] doOriginal(byte[] encryptBytes, EncryptBean encryptBean) throws EP0102EncryptKeyNoneException {
+		if (encryptBytes == null) {
+			return new byte[0];
+		}
+		if (encryptBean.isSaveEncryptKey() && !encryptBean.isSaveIvKey()) {
+			throw new EP0102EncryptKeyNoneException("暗号化キーが存在しません", true);
+		}
+		// 反転、Base64エンコード、byteずらし、Base64エンコードを1回の走査で行う
+		long start = PhaseStats.start();
+		byte[] original = OriginalCodec.encode(
+				encryptBean.isSaveIvKey() ? encryptBean.getIvKey() : null,
+				encryptBytes,
+				encryptBean.isSaveEncryptKey() ? encryptBean.getEncryptKey() : null);
+		PhaseStats.record(Phase.ORIGINAL, start, encryptBytes.length);
+		return original;
+	}
+
+	/**
+	 * 復号を管理します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param encrypt - 暗号文
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
+	 * @return - 平文byte配列
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 */
+	private static byte[] manageDecrypt(EncryptAlgorithm algorithm, byte[] encrypt, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException {
+		// 独自復号
+		DecryptBean decryptBean;
+		EnvelopeEvent envelopeEvent = new EnvelopeEvent(EncryptEvents.DECODE, encrypt == null ? 0 : encrypt.length);
+		envelopeEvent.begin();
+		try {
+			decryptBean = undoOriginal(encrypt, encryptKey, ivKey);
+			envelopeEvent.success(decryptBean.getAlgorithm() == null ? EncryptEvents.FORMAT_V1 : EncryptEvents.FORMAT_V2);
+		} finally {
+			envelopeEvent.finish();
+		}
+		// 復号して返却（v2形式はヘッダーのアルゴリズムを使用）
+		EncryptAlgorithm useAlgorithm = decryptBean.getAlgorithm() == null ? algorithm : decryptBean.getAlgorithm();
+		byte[] plain;
+		CipherEvent cipherEvent = new CipherEvent(useAlgorithm, EncryptEvents.DECRYPT);
+		cipherEvent.begin();
+		try {
+			if (decryptBean.getOriginal() == null) {
+				plain = doDecrypt(useAlgorithm, decryptBean.getDecrypt(), decryptBean.getEncryptKey(), decryptBean.getIvKey());
+			} else if (useAlgorithm.isSegmented()) {
+				// セグメント分割はストリームで復号するため、暗号文を展開してから渡す
+				plain = doDecrypt(useAlgorithm, ByteBuffer.wrap(decryptBean.getOriginal().getEncrypt()), decryptBean.getEncryptKey(), decryptBean.getIvKey());
+			} else {
+				plain = doDecrypt(useAlgorithm, decryptBean.getOriginal(), decryptBean.getEncryptKey(), decryptBean.getIvKey());
+			}
+			cipherEvent.success(plain.length);
+		} finally {
+			cipherEvent.finish();
+		}
+		if (decryptBean.getCompression() == Compression.NONE) {
+			return plain;
+		}
+		// v2形式で圧縮している場合は展開
+		try {
+			return CompressUtils.decompress(plain, decryptBean.getOriginalLength());
+		} catch (@SuppressWarnings("unused") DataFormatException e) {
+			throw new EP0105DecryptException("圧縮データ不正", true);
+		}
+	}
+
+	/**
+	 * v2形式でのストリーム復号を管理します
+	 * 圧縮している場合は、復号した内容を展開しながら書き込みます
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指す入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long manageDecryptContainer(EncryptHeader header, InputStream input, OutputStream output, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		byte[] encKey = encryptKey == null ? header.getEncryptKey() : encryptKey;
+		byte[] iv = ivKey == null ? header.getIvKey() : ivKey;
+		InputStream counted = Progress.count(input);
+		CipherEvent event = new CipherEvent(header.getAlgorithm(), EncryptEvents.DECRYPT);
+		event.begin();
+		try {
+			if (header.getCompression() == Compression.NONE) {
+				long total = doDecrypt(header.getAlgorithm(), counted, output, encKey, iv);
+				event.success(total);
+				return total;
+			}
+			DecompressOutputStream decompress = CompressUtils.decompress(output);
+			doDecrypt(header.getAlgorithm(), counted, decompress, encKey, iv);
+			long total = decompress.finishAll();
+			event.success(total);
+			return total;
+		} catch (@SuppressWarnings("unused") ZipException e) {
+			throw new EP0105DecryptException("圧縮データ不正", true);
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * v2形式でのチャネル復号を管理します
+	 * @param header - 読み込み済みのヘッダー
+	 * @param input - ヘッダー直後を指す読み込み用チャネル
+	 * @param output - 平文の書き込み用チャネル
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long manageDecryptContainer(EncryptHeader header, FileChannel input, FileChannel output, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		if (header.getAlgorithm().isSegmented() || header.getCompression() != Compression.NONE) {
+			// セグメント分割の場合は1MB単位、圧縮している場合は展開後の長さ単位で読み書きするため、ストリームで処理
+			return manageDecryptContainer(header, Channels.newInputStream(input), Channels.newOutputStream(output), encryptKey, ivKey);
+		}
+		byte[] encKey = encryptKey == null ? header.getEncryptKey() : encryptKey;
+		byte[] iv = ivKey == null ? header.getIvKey() : ivKey;
+		if (encKey == null || iv == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		// シードを読み込んだ後の位置から復号する
+		byte[] seed = readSeed(header.getAlgorithm(), Channels.newInputStream(input));
+		Cipher cipher = createCipher(header.getAlgorithm(), Cipher.DECRYPT_MODE, encKey, iv, seed);
+		if (header.getOriginalLength() != EncryptHeader.UNKNOWN_LENGTH) {
+			FileUtils.preallocate(output, output.position() + header.getOriginalLength());
+		}
+		CipherEvent event = new CipherEvent(header.getAlgorithm(), EncryptEvents.DECRYPT);
+		event.begin();
+		try {
+			long total = runCipher(cipher, input, output);
+			output.truncate(output.position());
+			event.success(total);
+			return total;
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0105DecryptException(true);
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * v2形式での範囲復号を管理します
+	 * @param header - 読み込み済みのヘッダー
+	 * @param channel - ヘッダー直後を指すチャネル
+	 * @param output - 平文の出力ストリーム
+	 * @param offset - 平文の開始位置
+	 * @param length - 平文の長さ
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws EP0106EncryptFormatException - セグメント分割していない、または圧縮している暗号文の場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long manageDecryptRange(EncryptHeader header, SeekableByteChannel channel, OutputStream output, long offset, long length, byte[] encryptKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, EP0106EncryptFormatException, IOException {
+		if (!header.getAlgorithm().isSegmented()) {
+			throw new EP0106EncryptFormatException("範囲復号は分割形式のみ対応", true);
+		}
+		if (header.getCompression() != Compression.NONE) {
+			throw new EP0106EncryptFormatException("範囲復号は圧縮なしのみ対応", true);
+		}
+		if (offset < 0 || length < 0) {
+			throw new EP0105DecryptException("範囲指定不正", true);
+		}
+		byte[] encKey = encryptKey == null ? header.getEncryptKey() : encryptKey;
+		byte[] iv = ivKey == null ? header.getIvKey() : ivKey;
+		if (encKey == null || iv == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		// 暗号文長が不明な場合はチャネルの残りから取得
+		long payloadLength = header.getPayloadLength();
+		if (payloadLength == EncryptHeader.UNKNOWN_LENGTH) {
+			payloadLength = channel.size() - channel.position();
+		}
+		try {
+			long total = SegmentCipher.decryptRange(header.getAlgorithm(), channel, payloadLength, offset, length, output, encKey, iv);
+			// 読み込むセグメントは範囲に比例するため、復号したbyte数で進捗を数える
+			Progress.addBytes(total);
+			return total;
+		} catch (@SuppressWarnings("unused") NoSuchAlgorithmException | NoSuchPaddingException e) {
+			throw new EP0101EncryptAlgorithmException(true);
+		} catch (@SuppressWarnings("unused") InvalidKeyException | InvalidAlgorithmParameterException e) {
+			throw new EP0103EncryptKeyAttributeException(true);
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0105DecryptException(true);
+		}
+	}
+
+	/**
+	 * 独自に改竄したbyte配列を戻します
+	 * 初期化ベクトルキー、暗号文字列、暗号化キー、の順で連結し返却
+	 * v2形式の場合はヘッダーから取得します
+	 * @param encryptBytes - 暗号化
+	 * @param encryptKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param saveKey - 暗号化キーを暗号文字列に含むか否か
+	 * @return - 独自改竄byte配列
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0105DecryptException - v2形式のヘッダーが不正な場合に発生
+	 */
+	private static DecryptBean undoOriginal(byte[] encryptBytes, byte[] encryptKey, byte[] ivKey) throws EP0102EncryptKeyNoneException, EP0105DecryptException {
+		if (EncryptHeader.isContainer(encryptBytes)) {
+			return undoContainer(encryptBytes, encryptKey, ivKey);
+		}
+		EncryptUtils.DecryptBean decryptBean = new EncryptUtils().new DecryptBean();
+		if (encryptKey == null && ivKey != null) {
+			throw new EP0102EncryptKeyNoneException("暗号化キーが存在しません", true);
+		}
+		// 区切り文字の位置だけを調べ、暗号文は復号時に一定量ずつ展開する
+		long start = PhaseStats.start();
+		OriginalCodec.Sections sections = OriginalCodec.decode(encryptBytes, ivKey == null, encryptKey == null);
+		decryptBean.setOriginal(sections);
+		decryptBean.setEncryptKey(encryptKey == null ? sections.getEncryptKey() : encryptKey);
+		decryptBean.setIvKey(ivKey == null ? sections.getIvKey() : ivKey);
+		PhaseStats.record(Phase.ORIGINAL, start, 0);
+		return decryptBean;
+	}
+
+	/**
+	 * v2形式の暗号文をヘッダーと暗号文に分解します
+	 * @param encryptBytes - v2形式の暗号文
+	 * @param encryptKey - 暗号化キー（nullの場合はヘッダーから取得）
+	 * @param ivKey - 初期化ベクトルキー（nullの場合はヘッダーから取得）
+	 * @return - 復号情報
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0105DecryptException - ヘッダーが不正な場合に発生
+	 */
+	private static DecryptBean undoContainer(byte[] encryptBytes, byte[] encryptKey, byte[] ivKey) throws EP0102EncryptKeyNoneException, EP0105DecryptException {
+		EncryptHeader header;
+		try {
+			header = EncryptHeader.read(encryptBytes);
+		} catch (EP0106EncryptFormatException e) {
+			throw new EP0105DecryptException(e.getMessage(), true);
+		}
+		EncryptUtils.DecryptBean decryptBean = new EncryptUtils().new DecryptBean();
+		decryptBean.setAlgorithm(header.getAlgorithm());
+		decryptBean.setCompression(header.getCompression());
+		decryptBean.setOriginalLength(header.getOriginalLength());
+		decryptBean.setEncryptKey(encryptKey == null ? header.getEncryptKey() : encryptKey);
+		decryptBean.setIvKey(ivKey == null ? header.getIvKey() : ivKey);
+		if (decryptBean.getEncryptKey() == null || decryptBean.getIvKey() == null) {
+			throw new EP0102EncryptKeyNoneException("暗号化キーが存在しません", true);
+		}
+		// 暗号文はコピーせず、ヘッダー以降を参照する
+		decryptBean.setDecrypt(ByteBuffer.wrap(encryptBytes, header.getLength(), encryptBytes.length - header.getLength()).slice());
+		return decryptBean;
+	}
+
+	/**
+	 * 復号します
+	 * 配列の一部を参照する暗号文は、コピーせずにそのままCipherに渡します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param encrypt - 暗号文（配列の一部を参照するByteBuffer）
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 暗号化byte配列
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 */
+	private static byte[] doDecrypt(EncryptAlgorithm algorithm, ByteBuffer encrypt, byte[] encKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException {
+		if (encrypt == null) {
+			return new byte[0];
+		}
+		if (encKey == null || ivKey == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		byte[] array = encrypt.array();
+		int seedLength = getSeedLength(algorithm);
+		if (encrypt.remaining() < seedLength) {
+			throw new EP0105DecryptException("シード不足", true);
+		}
+		// 先頭のシードの後ろから復号する
+		int offset = encrypt.arrayOffset() + encrypt.position();
+		byte[] seed = Arrays.copyOfRange(array, offset, offset + seedLength);
+		offset += seedLength;
+		int length = encrypt.remaining() - seedLength;
+		if (algorithm.isSegmented()) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream(length);
+			try {
+				decryptSegments(algorithm, Progress.count(new ByteArrayInputStream(array, offset, length)), output, encKey, ivKey);
+			} catch (@SuppressWarnings("unused") IOException e) {
+				throw new EP0105DecryptException(true);
+			}
+			return output.toByteArray();
+		}
+		Cipher cipher = createCipher(algorithm, Cipher.DECRYPT_MODE, encKey, ivKey, seed);
+		try {
+			long start = PhaseStats.start();
+			byte[] plain = cipher.doFinal(array, offset, length);
+			PhaseStats.record(Phase.CIPHER, start, length);
+			Progress.addBytes(length);
+			return plain;
+		} catch (@SuppressWarnings("unused") IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0105DecryptException(true);
+		}
+	}
+
+	/**
+	 * 独自改竄形式の暗号文を一定量ずつ展開しながら復号します
+	 * 暗号文全体の配列を作らず、展開した内容をそのままCipherに渡します
+	 * @param algorithm - 暗号アルゴリズム（セグメント分割以外）
+	 * @param original - 独自改竄形式の展開結果
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 平文byte配列
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 */
+	private static byte[] doDecrypt(EncryptAlgorithm algorithm, OriginalCodec.Sections original, byte[] encKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException {
+		if (encKey == null || ivKey == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		int length = original.getEncryptLength();
+		byte[] seed = new byte[getSeedLength(algorithm)];
+		if (original.readEncrypt(0, seed, 0, seed.length) != seed.length) {
+			throw new EP0105DecryptException("シード不足", true);
+		}
+		Cipher cipher = createCipher(algorithm, Cipher.DECRYPT_MODE, encKey, ivKey, seed);
+		byte[] chunk = new byte[Math.max(0, Math.min(length - seed.length, STREAM_BUFFER_SIZE))];
+		try {
+			byte[] plain = new byte[cipher.getOutputSize(length - seed.length)];
+			int written = 0;
+			int position = seed.length;
+			while (position < length) {
+				long start = PhaseStats.start();
+				int read = original.readEncrypt(position, chunk, 0, chunk.length);
+				PhaseStats.record(Phase.ORIGINAL, start, read);
+				start = PhaseStats.start();
+				written += cipher.update(chunk, 0, read, plain, written);
+				PhaseStats.record(Phase.CIPHER, start, read);
+				Progress.addBytes(read);
+				position += read;
+			}
+			written += cipher.doFinal(plain, written);
+			return written == plain.length ? plain : Arrays.copyOf(plain, written);
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0105DecryptException(true);
+		}
+	}
+
+	/**
+	 * 入力ストリームを復号し、出力ストリームへ書き込みます
+	 * 固定長ずつ読み込んで復号するため、入力サイズに関わらず使用メモリは一定です
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 暗号文の入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0102EncryptKeyNoneException - 暗号化キーがない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long doDecrypt(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0102EncryptKeyNoneException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		if (encKey == null || ivKey == null) {
+			throw new EP0102EncryptKeyNoneException(true);
+		}
+		if (algorithm.isSegmented()) {
+			return decryptSegments(algorithm, input, output, encKey, ivKey);
+		}
+		Cipher cipher = createCipher(algorithm, Cipher.DECRYPT_MODE, encKey, ivKey, readSeed(algorithm, input));
+		try {
+			return runCipher(cipher, input, output);
+		} catch (@SuppressWarnings("unused") ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new EP0105DecryptException(true);
+		}
+	}
+
+	/**
+	 * セグメント分割して並列に暗号化します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の入力ストリーム
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0104EncryptException - 暗号化に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long encryptSegments(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0103EncryptKeyAttributeException, EP0104EncryptException, IOException {
+		try {
+			// 読み込みと並列の暗号化が重なるため、全体を暗号処理として集計
+			long start = PhaseStats.start();
+			long total = SegmentCipher.encrypt(algorithm, input, output, encKey, ivKey);
+			PhaseStats.record(Phase.CIPHER, start, total);
+			return total;
+		} catch (@SuppressWarnings("unused") NoSuchAlgorithmException | NoSuchPaddingException e) {
+			throw new EP0101EncryptAlgorithmException(true);
+		} catch (@SuppressWarnings("unused") InvalidKeyException | InvalidAlgorithmParameterException e) {
+			throw new EP0103EncryptKeyAttributeException(true);
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0104EncryptException(true);
+		}
+	}
+
+	/**
+	 * セグメント分割された暗号文を並列に復号します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 暗号文の入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 * @throws EP0105DecryptException - 復号や改ざんの検証に失敗したときに発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long decryptSegments(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encKey, byte[] ivKey) throws EP0101EncryptAlgorithmException, EP0103EncryptKeyAttributeException, EP0105DecryptException, IOException {
+		try {
+			// 読み込みと並列の復号が重なるため、全体を暗号処理として集計
+			long start = PhaseStats.start();
+			long total = SegmentCipher.decrypt(algorithm, input, output, encKey, ivKey);
+			PhaseStats.record(Phase.CIPHER, start, total);
+			return total;
+		} catch (@SuppressWarnings("unused") NoSuchAlgorithmException | NoSuchPaddingException e) {
+			throw new EP0101EncryptAlgorithmException(true);
+		} catch (@SuppressWarnings("unused") InvalidKeyException | InvalidAlgorithmParameterException e) {
+			throw new EP0103EncryptKeyAttributeException(true);
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0105DecryptException(true);
+		}
+	}
+
+	/**
+	 * 暗号化キーから初期化済みのCipherを作成します
+	 * Cipherとキー導出用のMessageDigestは、スレッドごとに使い回します
+	 * シードを使用するアルゴリズムは、SegmentCipherと同じく暗号化キーとシードから鍵を導出します
+	 * 初期化ベクトルキーが同じでもファイルごとに鍵が異なるため、GCM・CTR・ChaCha20でnonceを再利用しません
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param mode - Cipher.ENCRYPT_MODE または Cipher.DECRYPT_MODE
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param seed - ファイルごとのシード（シードを使用しないアルゴリズムの場合は空）
+	 * @return - 初期化済みのCipher
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 暗号化キーが不正の場合発生
+	 */
+	private static Cipher createCipher(EncryptAlgorithm algorithm, int mode, byte[] encKey, byte[] ivKey, byte[] seed) throws EP0101EncryptAlgorithmException, EP0103EncryptKeyAttributeException {
+		SecretKeySpec secretKeySpec;
+		AlgorithmParameterSpec parameterSpec;
+		Cipher cipher;
+		KeyDerivationEvent event = new KeyDerivationEvent(algorithm);
+		event.begin();
+		try {
+			// スレッドごとに使い回し、initで再初期化する
+			byte[] keyDigest = CryptoCache.getDigest(MessageDigestAlgorithms.SHA_256).digest(encKey);
+			if (seed.length > 0) {
+				MessageDigest digest = CryptoCache.getDigest(MessageDigestAlgorithms.SHA_256);
+				digest.update(keyDigest);
+				digest.update(seed);
+				keyDigest = digest.digest();
+			}
+			secretKeySpec = new SecretKeySpec(keyDigest, algorithm.getEncrypt());
+			parameterSpec = createParameterSpec(algorithm, CryptoCache.getDigest(MessageDigestAlgorithms.MD5).digest(ivKey));
+			cipher = getCipher(algorithm, mode);
+			event.success();
+		} catch (@SuppressWarnings("unused") NoSuchAlgorithmException | NoSuchPaddingException e) {
+			throw new EP0101EncryptAlgorithmException(true);
+		} finally {
+			event.finish();
+		}
+		try {
+			cipher.init(mode, secretKeySpec, parameterSpec);
+		} catch (@SuppressWarnings("unused") InvalidKeyException | InvalidAlgorithmParameterException e) {
+			throw new EP0103EncryptKeyAttributeException(true);
+		}
+		return cipher;
+	}
+
+	/**
+	 * 現在のスレッドのCipherを取得します
+	 * ChaCha20は前回と同じ鍵とnonceの組での初期化を拒否するため、同じ暗号文を復号し直す場合に備えて復号時のみ作り直します
+	 * 暗号化時はnonceの再利用を検出できるよう、使い回したCipherで初期化します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param mode - Cipher.ENCRYPT_MODE または Cipher.DECRYPT_MODE
+	 * @return - 初期化前のCipher
+	 * @throws NoSuchAlgorithmException - 使用不可のアルゴリズムの場合に発生
+	 * @throws NoSuchPaddingException - 使用不可のパディング方式の場合に発生
+	 */
+	static Cipher getCipher(EncryptAlgorithm algorithm, int mode) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		if (algorithm == EncryptAlgorithm.CHACHA20_POLY1305 && mode == Cipher.DECRYPT_MODE) {
+			return CryptoCache.renewCipher(algorithm.getAlgorithm());
+		}
+		return CryptoCache.getCipher(algorithm.getAlgorithm());
+	}
+
+	/**
+	 * 初期化ベクトルキーのハッシュ値から、アルゴリズムに応じた長さの初期化ベクトル・nonceを作成します
+	 * AlgorithmCalibrationの計測でも使用します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param ivDigest - 初期化ベクトルキーのハッシュ値（初期化ベクトル・nonce以上の長さ）
+	 * @return - Cipherの初期化パラメータ
+	 */
+	static AlgorithmParameterSpec createParameterSpec(EncryptAlgorithm algorithm, byte[] ivDigest) {
+		byte[] iv = Arrays.copyOf(ivDigest, algorithm.getIvLength());
+		if (algorithm.getAlgorithm().startsWith("AES/GCM/")) {
+			return new GCMParameterSpec(GCM_TAG_BITS, iv);
+		}
+		return new IvParameterSpec(iv);
+	}
+
+	/**
+	 * 暗号文の先頭に保存するファイルごとのシードを作成します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @return - シード（シードを使用しないアルゴリズムの場合は空）
+	 * @throws EP0101EncryptAlgorithmException - 使用不可や不正なアルゴリズムの場合に発生
+	 */
+	private static byte[] createSeed(EncryptAlgorithm algorithm) throws EP0101EncryptAlgorithmException {
+		return algorithm.isSeeded() ? secureRandomBytes(SEED_LENGTH) : new byte[0];
+	}
+
+	/**
+	 * 暗号文の先頭からシードを読み込みます
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 暗号文の入力ストリーム
+	 * @return - シード（シードを使用しないアルゴリズムの場合は空）
+	 * @throws EP0105DecryptException - 暗号文がシード長より短い場合に発生
+	 * @throws IOException - 読み込みに失敗した場合に発生
+	 */
+	private static byte[] readSeed(EncryptAlgorithm algorithm, InputStream input) throws EP0105DecryptException, IOException {
+		byte[] seed = input.readNBytes(getSeedLength(algorithm));
+		if (seed.length != getSeedLength(algorithm)) {
+			throw new EP0105DecryptException("シード不足", true);
+		}
+		return seed;
+	}
+
+	/**
+	 * 暗号文の先頭に保存するシードのbyte数を取得します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @return - シードのbyte数（シードを使用しないアルゴリズムの場合は0）
+	 */
+	private static int getSeedLength(EncryptAlgorithm algorithm) {
+		return algorithm.isSeeded() ? SEED_LENGTH : 0;
+	}
+
+	/**
+	 * 入力ストリームを固定長ずつCipherに通し、出力ストリームへ書き込みます
+	 * 入出力バッファは1回だけ確保し、読み込みごとに使い回します
+	 * @param cipher - 初期化済みのCipher
+	 * @param input - 入力ストリーム
+	 * @param output - 出力ストリーム
+	 * @return - 書き込んだbyte数
+	 * @throws ShortBufferException - 出力バッファが不足した場合に発生
+	 * @throws IllegalBlockSizeException - ブロック長が不正な場合に発生
+	 * @throws BadPaddingException - パディングが不正な場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long runCipher(Cipher cipher, InputStream input, OutputStream output) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException, IOException {
+		byte[] inBuffer = new byte[STREAM_BUFFER_SIZE];
+		byte[] outBuffer = new byte[cipher.getOutputSize(STREAM_BUFFER_SIZE)];
+		long total = 0;
+		int read;
+		long start = PhaseStats.start();
+		while ((read = input.read(inBuffer)) != -1) {
+			start = recordPhase(Phase.READ, start, read);
+			int length = cipher.update(inBuffer, 0, read, outBuffer, 0);
+			start = recordPhase(Phase.CIPHER, start, read);
+			output.write(outBuffer, 0, length);
+			start = recordPhase(Phase.WRITE, start, length);
+			total += length;
+		}
+		int length = cipher.doFinal(outBuffer, 0);
+		start = recordPhase(Phase.CIPHER, start, 0);
+		output.write(outBuffer, 0, length);
+		total += length;
+		output.flush();
+		recordPhase(Phase.WRITE, start, length);
+		return total;
+	}
+
+	/**
+	 * Cipherで読み込み用チャネルの現在位置から末尾までを変換し、書き込み用チャネルへ書き込みます
+	 * 入力はMAPPED_REGION_SIZE単位でメモリマップし、出力はスレッドごとのダイレクトバッファを使い回します
+	 * @param cipher - 初期化済みのCipher
+	 * @param input - 読み込み用チャネル
+	 * @param output - 書き込み用チャネル
+	 * @return - 書き込んだbyte数
+	 * @throws ShortBufferException - 出力バッファが不足した場合に発生
+	 * @throws IllegalBlockSizeException - ブロック長が不正な場合に発生
+	 * @throws BadPaddingException - パディングが不正な場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long runCipher(Cipher cipher, FileChannel input, FileChannel output) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException, IOException {
+		ByteBuffer outBuffer = FileUtils.getDirectBuffer();
+		// 1回のupdateで出力がバッファに収まるよう、ブロック長の余裕を残す
+		int slice = outBuffer.capacity() - Math.max(cipher.getBlockSize(), 16) * 2;
+		long position = input.position();
+		long end = input.size();
+		long total = 0;
+		long start = PhaseStats.start();
+		while (position < end) {
+			MappedByteBuffer mapped = FileUtils.mapNormalFile(input, position, end - position);
+			while (mapped.position() < mapped.capacity()) {
+				mapped.limit(Math.min(mapped.capacity(), mapped.position() + slice));
+				int read = mapped.remaining();
+				// メモリマップの読み込みは暗号処理の中で発生するため、暗号処理として集計
+				cipher.update(mapped, outBuffer);
+				Progress.addBytes(read);
+				start = recordPhase(Phase.CIPHER, start, read);
+				int length = flush(outBuffer, output);
+				start = recordPhase(Phase.WRITE, start, length);
+				total += length;
+			}
+			position += mapped.capacity();
+		}
+		input.position(end);
+		cipher.doFinal(ByteBuffer.allocate(0), outBuffer);
+		start = recordPhase(Phase.CIPHER, start, 0);
+		int length = flush(outBuffer, output);
+		recordPhase(Phase.WRITE, start, length);
+		return total + length;
+	}
+
+	/**
+	 * 工程の処理時間を集計し、次の工程の開始時刻を返却します
+	 * @param phase - 工程
+	 * @param start - 工程の開始時刻（集計していない場合は0）
+	 * @param bytes - 処理byte数
+	 * @return - 次の工程の開始時刻（集計していない場合は0）
+	 */
+	private static long recordPhase(Phase phase, long start, long bytes) {
+		if (start == 0) {
+			return 0;
+		}
+		PhaseStats.record(phase, start, bytes);
+		return PhaseStats.start();
+	}
+
+	/**
+	 * ダイレクトバッファの内容をチャネルへ書き込み、バッファを空にします
+	 * @param buffer - 書き込むバッファ
+	 * @param output - 書き込み用チャネル
+	 * @return - 書き込んだbyte数
+	 * @throws IOException - 書き込みに失敗した場合に発生
+	 */
+	private static int flush(ByteBuffer buffer, FileChannel output) throws IOException {
+		buffer.flip();
+		int length = buffer.remaining();
+		FileUtils.writeFully(output, buffer);
+		buffer.clear();
+		return length;
+	}
+
+	/**
+	 * 暗号アルゴリズム
+	 * @author blank-nano
+	 *
+	 */
+	public enum EncryptAlgorithm {
+		/** AES/CBC/PKCS5Padding */
+		  AES(1, "AES", "AES/CBC/PKCS5Padding", false, false, 16)
+		/** RSA/ECB/PKCS1Padding */
+		, RSA(2, "RSA", "RSA/ECB/PKCS1Padding", false, false, 16)
+		/** AES/GCM/NoPadding（セグメント分割して並列処理） */
+		, AES_GCM_SEGMENT(3, "AES", "AES/GCM/NoPadding", true, false, 12)
+		/** AES/CTR/NoPadding（改ざんは検出しない） */
+		, AES_CTR(5, "AES", "AES/CTR/NoPadding", false, true, 16)
+		/** ChaCha20-Poly1305（セグメントごとに改ざんを検出し、一定のメモリで復号） */
+		, CHACHA20_POLY1305(6, "ChaCha20", "ChaCha20-Poly1305", true, false, 12)
+		;
+
+		/** 以前AES_GCMとして記録していた識別番号（AES_GCM_SEGMENTと同じ形式のため、読み込みのみ対応） */
+		private static final byte LEGACY_AES_GCM_CODE = 4;
+
+		private byte code;
+		private String encrypt;
+		private String algorithm;
+		private boolean segmented;
+		private boolean seeded;
+		private int ivLength;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param code - ヘッダーに記録する識別番号
+		 * @param encrypt - 暗号の種類
+		 * @param algorithm - 暗号アルゴリズム
+		 * @param segmented - セグメント分割するか
+		 * @param seeded - 暗号文の先頭にファイルごとのシードを保存するか
+		 * @param ivLength - 初期化ベクトル・nonceのbyte数
+		 */
+		private EncryptAlgorithm(int code, String encrypt, String algorithm, boolean segmented, boolean seeded, int ivLength) {
+			this.code = (byte) code;
+			this.encrypt = encrypt;
+			this.algorithm = algorithm;
+			this.segmented = segmented;
+			this.seeded = seeded;
+			this.ivLength = ivLength;
+		}
+
+		/**
+		 * 識別番号から暗号アルゴリズムを取得します
+		 * @param code - 識別番号
+		 * @return - 暗号アルゴリズム（該当なしの場合はnull）
+		 */
+		public static EncryptAlgorithm valueOfCode(byte code) {
+			if (code == LEGACY_AES_GCM_CODE) {
+				return AES_GCM_SEGMENT;
+			}
+			for (EncryptAlgorithm value : values()) {
+				if (value.code == code) {
+					return value;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * ヘッダーに記録する識別番号を取得します
+		 * @return - 識別番号
+		 */
+		public byte getCode() {
+			return this.code;
+		}
+
+		/**
+		 * 暗号の種類を取得します
+		 * @return - 暗号の種類
+		 */
+		public String getEncrypt() {
+			return this.encrypt;
+		}
+
+		/**
+		 * 暗号アルゴリズムを取得します
+		 * @return - 暗号アルゴリズム
+		 */
+		public String getAlgorithm() {
+			return this.algorithm;
+		}
+
+		/**
+		 * セグメント分割して並列処理するか判定します
+		 * @return - セグメント分割する場合はtrue
+		 */
+		public boolean isSegmented() {
+			return this.segmented;
+		}
+
+		/**
+		 * 暗号文の先頭にファイルごとのシードを保存し、シードから鍵を導出するか判定します
+		 * nonceの再利用で安全性が失われるCTRで使用します（セグメント分割の場合はSegmentCipherがシードを保存します）
+		 * @return - シードを保存する場合はtrue
+		 */
+		public boolean isSeeded() {
+			return this.seeded;
+		}
+
+		/**
+		 * 初期化ベクトル・nonceのbyte数を取得します
+		 * @return - 初期化ベクトル・nonceのbyte数
+		 */
+		public int getIvLength() {
+			return this.ivLength;
+		}
+
+	}
+
+	private class EncryptBean {
+		private byte[] encryptKey;
+		private byte[] ivKey;
+		private byte[] wrappedKey;
+		private boolean saveEncryptKey;
 		private boolean saveIvKey;
 		public byte[] getEncryptKey() {
 			return this.encryptKey;
@@ -692,6 +2132,12 @@ public class EncryptUtils {
 		public void setIvKey(byte[] ivKey) {
 			this.ivKey = ivKey;
 		}
+		public byte[] getWrappedKey() {
+			return this.wrappedKey;
+		}
+		public void setWrappedKey(byte[] wrappedKey) {
+			this.wrappedKey = wrappedKey;
+		}
 		public boolean isSaveEncryptKey() {
 			return this.saveEncryptKey;
 		}
@@ -706,15 +2152,43 @@ public class EncryptUtils {
 		}
 	}
 	private class DecryptBean {
-		private byte[] decrypt;
+		private EncryptAlgorithm algorithm;
+		private Compression compression = Compression.NONE;
+		private long originalLength = EncryptHeader.UNKNOWN_LENGTH;
+		private ByteBuffer decrypt;
+		private OriginalCodec.Sections original;
 		private byte[] encryptKey;
 		private byte[] ivKey;
-		public byte[] getDecrypt() {
+		public EncryptAlgorithm getAlgorithm() {
+			return this.algorithm;
+		}
+		public void setAlgorithm(EncryptAlgorithm algorithm) {
+			this.algorithm = algorithm;
+		}
+		public Compression getCompression() {
+			return this.compression;
+		}
+		public void setCompression(Compression compression) {
+			this.compression = compression;
+		}
+		public long getOriginalLength() {
+			return this.originalLength;
+		}
+		public void setOriginalLength(long originalLength) {
+			this.originalLength = originalLength;
+		}
+		public ByteBuffer getDecrypt() {
 			return this.decrypt;
 		}
-		public void setDecrypt(byte[] decrypt) {
+		public void setDecrypt(ByteBuffer decrypt) {
 			this.decrypt = decrypt;
 		}
+		public OriginalCodec.Sections getOriginal() {
+			return this.original;
+		}
+		public void setOriginal(OriginalCodec.Sections original) {
+			this.original = original;
+		}
 		public byte[] getEncryptKey() {
 			return this.encryptKey;
 		}
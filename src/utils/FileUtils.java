@@ -1,25 +1,43 @@
 package utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.lang3.StringUtils;
 
+import utils.EncryptEvents.FileReadEvent;
+import utils.EncryptEvents.FileWriteEvent;
+import utils.PhaseStats.Phase;
+
 /**
  * ファイルの管理を行います
  * @author blank-nano
@@ -27,6 +45,16 @@ import org.apache.commons.lang3.StringUtils;
  */
 public class FileUtils {
 
+	/** ストリーム読み込み時のバッファサイズ */
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	/** メモリマップ1回あたりの最大サイズ */
+	public static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+	/** ダイレクトバッファのサイズ */
+	public static final int DIRECT_BUFFER_SIZE = 1024 * 1024;
+
+	/** スレッドごとのダイレクトバッファ（確保と解放の負荷が高いため使い回す） */
+	private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE));
+
 	/**
 	 * @param filePath - 存在を確認するファイル名
 	 * @return ファイルが存在するか
@@ -62,11 +90,12 @@ public class FileUtils {
 
 	/**
 	 * ファイルを削除する
+	 * 常駐プロセスでは終了しないため、終了時ではなくその場で削除します
 	 * @param filePath - 削除したいファイル名
 	 * @throws IOException - 削除できなかった場合発生
 	 */
-	public static void deleteFile(String filePath) {
-		new File(filePath).deleteOnExit();
+	public static void deleteFile(String filePath) throws IOException {
+		Files.deleteIfExists(new File(filePath).toPath());
 	}
 
 //	private static String getWorkspacePath() {
@@ -134,7 +163,106 @@ public class FileUtils {
 	 * @throws IOException - ファイルを読み込みできない場合に発生
 	 */
 	public static byte[] readNormalFileToByte(String filePath) throws IOException {
-	    return Files.readAllBytes(new File(filePath).toPath());
+		FileReadEvent event = new FileReadEvent(filePath);
+		event.begin();
+		try {
+			long start = PhaseStats.start();
+			byte[] data = Files.readAllBytes(new File(filePath).toPath());
+			PhaseStats.record(Phase.READ, start, data.length);
+			event.success(data.length);
+			return data;
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * 通常ファイルを入力ストリームで開く
+	 * 一定サイズずつ読み込むため、ファイルサイズに関わらず使用メモリは一定です
+	 * @param filePath - ファイルパス
+	 * @return - mark/resetに対応した入力ストリーム
+	 * @throws IOException - ファイルを開けない場合に発生
+	 */
+	public static InputStream openNormalFileToStream(String filePath) throws IOException {
+		return new BufferedInputStream(Files.newInputStream(new File(filePath).toPath()), STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * 標準入力を入力ストリームで開く
+	 * 一定サイズずつ読み込むため、入力サイズに関わらず使用メモリは一定です
+	 * @return - mark/resetに対応した入力ストリーム
+	 */
+	public static InputStream openStandardInput() {
+		return new BufferedInputStream(new FileInputStream(FileDescriptor.in), STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * 標準出力を出力ストリームで開く
+	 * System.outと異なり、書き込みに失敗した場合（パイプの読み込み側が終了した場合等）は例外を送出します
+	 * @return - 出力ストリーム
+	 */
+	public static OutputStream openStandardOutput() {
+		return new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * 通常ファイルを読み込み用のチャネルで開く
+	 * @param filePath - ファイルパス
+	 * @return - 読み込み用のチャネル
+	 * @throws IOException - ファイルを開けない場合に発生
+	 */
+	public static FileChannel openNormalFileToChannel(String filePath) throws IOException {
+		return FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ);
+	}
+
+	/**
+	 * チャネルの指定範囲を読み込み専用でメモリマップする
+	 * ヒープへのコピーを行わずにOSのページキャッシュを直接参照します
+	 * @param channel - 読み込み用のチャネル
+	 * @param position - 開始位置
+	 * @param size - サイズ（MAPPED_REGION_SIZE以下）
+	 * @return - メモリマップしたバッファ
+	 * @throws IOException - マップできない場合に発生
+	 */
+	public static MappedByteBuffer mapNormalFile(FileChannel channel, long position, long size) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size, MAPPED_REGION_SIZE));
+	}
+
+	/**
+	 * 現在のスレッドのダイレクトバッファを取得する
+	 * 容量はDIRECT_BUFFER_SIZEで、取得時にクリアされます
+	 * @return - ダイレクトバッファ
+	 */
+	public static ByteBuffer getDirectBuffer() {
+		ByteBuffer buffer = DIRECT_BUFFERS.get();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * 書き込み先のファイルを指定サイズまで事前に確保する
+	 * 書き込みごとのファイル長の拡張を避けるため、出力サイズが分かっている場合に使用します
+	 * 書き込み完了後はtruncateで実際のサイズに切り詰めてください
+	 * @param channel - 書き込み用のチャネル
+	 * @param size - 確保するサイズ
+	 * @throws IOException - 確保できない場合に発生
+	 */
+	public static void preallocate(FileChannel channel, long size) throws IOException {
+		if (size > channel.size()) {
+			channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+		}
+	}
+
+	/**
+	 * バッファの残りをすべてチャネルへ書き込む
+	 * @param channel - 書き込み用のチャネル
+	 * @param buffer - 書き込むバッファ
+	 * @throws IOException - 書き込みできない場合に発生
+	 */
+	public static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
 	}
 
 	/**
@@ -239,10 +367,106 @@ public class FileUtils {
 	 * @throws IOException - ファイルを書き込みできない場合に発生
 	 */
 	public static void writeNormalFile(String filePath, byte[] data, boolean appendFlg) throws IOException {
+		writeNormalFile(filePath, data, appendFlg, Durability.SYNC);
+	}
+
+	/**
+	 * 通常ファイルの書き込みを行う
+	 * Durability.SYNC以外の場合は同期せずに書き込むため、必要に応じてsyncFilesで同期してください
+	 * @param filePath - ファイルパス
+	 * @param data - 書き込むデータ
+	 * @param appendFlg - 追記の有無true : 追記, false : 上書き
+	 * @param durability - ディスクへの同期方針
+	 * @throws IOException - ファイルを書き込みできない場合に発生
+	 */
+	public static void writeNormalFile(String filePath, byte[] data, boolean appendFlg, Durability durability) throws IOException {
+		List<StandardOpenOption> options = new ArrayList<>(Arrays.asList(StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+		if (durability == Durability.SYNC) {
+			options.add(StandardOpenOption.SYNC);
+		}
 		if (appendFlg) {
-			Files.write(new File(filePath).toPath(), data, StandardOpenOption.CREATE, StandardOpenOption.SYNC, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
-		} else {
-			Files.write(new File(filePath).toPath(), data, StandardOpenOption.CREATE, StandardOpenOption.SYNC, StandardOpenOption.WRITE);
+			options.add(StandardOpenOption.APPEND);
+		}
+		FileWriteEvent event = new FileWriteEvent(filePath);
+		event.begin();
+		try {
+			long start = PhaseStats.start();
+			Files.write(new File(filePath).toPath(), data, options.toArray(new StandardOpenOption[0]));
+			// SYNC指定時は書き込みと同期を分けられないため、書き込みとして集計
+			PhaseStats.record(Phase.WRITE, start, data.length);
+			event.success(data.length);
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * 複数のファイルをまとめてディスクに同期する
+	 * 同期の待ち時間を重ねるため、スレッドプールで並列に同期します
+	 * @param filePaths - 同期するファイルパス一覧
+	 * @param executor - 同期を行うスレッドプール
+	 * @throws IOException - 同期に失敗した場合に発生
+	 */
+	public static void syncFiles(Collection<String> filePaths, ExecutorService executor) throws IOException {
+		List<Callable<Void>> tasks = new ArrayList<>(filePaths.size());
+		for (String filePath : filePaths) {
+			tasks.add(() -> {
+				syncFile(filePath);
+				return null;
+			});
+		}
+		try {
+			ThreadUtils.invokeAll(executor, tasks);
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * 複数のファイルの親フォルダをディスクに同期する
+	 * 親フォルダは重複を除いて1回ずつ同期します
+	 * @param filePaths - ファイルパス一覧
+	 */
+	public static void syncDirectories(Collection<String> filePaths) {
+		Set<String> directories = new LinkedHashSet<>();
+		for (String filePath : filePaths) {
+			File parent = new File(filePath).getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				directories.add(parent.getPath());
+			}
+		}
+		for (String directory : directories) {
+			syncDirectory(directory);
+		}
+	}
+
+	/**
+	 * ファイルの内容をディスクに同期する
+	 * @param filePath - ファイルパス
+	 * @throws IOException - 同期に失敗した場合に発生
+	 */
+	public static void syncFile(String filePath) throws IOException {
+		long start = PhaseStats.start();
+		try (FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.WRITE)) {
+			channel.force(true);
+			PhaseStats.record(Phase.SYNC, start, channel.size());
+		}
+	}
+
+	/**
+	 * フォルダをディスクに同期し、作成や名前変更したファイルのエントリを確定する
+	 * フォルダを開けないOS（Windows等）ではファイルシステムが管理するため何もしません
+	 * @param directoryPath - フォルダパス
+	 */
+	public static void syncDirectory(String directoryPath) {
+		long start = PhaseStats.start();
+		try (FileChannel channel = FileChannel.open(new File(directoryPath).toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+			PhaseStats.record(Phase.SYNC, start, 0);
+		} catch (@SuppressWarnings("unused") IOException e) {
+			// フォルダの同期に未対応
 		}
 	}
 
@@ -265,4 +489,51 @@ public class FileUtils {
 		}
 	}
 
+	/**
+	 * ディスクへの同期方針
+	 * @author blank-nano
+	 *
+	 */
+	public enum Durability {
+		/** ファイルごとに書き込み完了時に同期 */
+		  SYNC("sync")
+		/** 同期せずに書き込み、確定時にファイルとフォルダをまとめて同期 */
+		, BATCH("batch")
+		/** 同期しない（OSに任せる） */
+		, NONE("none")
+		;
+
+		private String value;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param value - オプションで指定する値
+		 */
+		private Durability(String value) {
+			this.value = value;
+		}
+
+		/**
+		 * オプションで指定する値を取得します
+		 * @return - オプションで指定する値
+		 */
+		public String getValue() {
+			return this.value;
+		}
+
+		/**
+		 * オプションで指定する値から同期方針を取得します
+		 * @param value - オプションで指定する値
+		 * @return - 同期方針（該当なしの場合はnull）
+		 */
+		public static Durability valueOfValue(String value) {
+			for (Durability durability : values()) {
+				if (durability.value.equals(value)) {
+					return durability;
+				}
+			}
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,491 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.MessageDigestAlgorithms;
+
+import utils.FileUtils.Durability;
+
+/**
+ * 差分暗号化のため、前回暗号化した元ファイルの状態（パス、サイズ、更新日時、内容のハッシュ値）を保存します
+ * 状態ファイルはパスのハッシュ値順に並べた固定長の索引とパスの文字列で構成し、索引はメモリマップして二分探索します
+ * 開いた時点では全件を読み込まないため、数百万件でも検索した部分だけをOSのページキャッシュから読み込みます
+ * 保存時は前回の状態と今回変更したファイルを索引の順に併合して書き込み、今回対象外で既に存在しないファイルは削除します
+ * 状態ファイルの構成は マジックナンバー(4) + バージョン(1) + 件数(8) + 索引 * 件数 + パス... です
+ * 索引の構成は パスのハッシュ値(8) + サイズ(8) + 更新日時(8) + 内容のハッシュ値長(1) + 内容のハッシュ値(32) + パスの開始位置(8) + パス長(4) です
+ * @author blank-nano
+ *
+ */
+public class IncrementalState implements Closeable {
+
+	/** マジックナンバー */
+	private static final byte[] MAGIC = { (byte) 0x89, 'N', 'E', 'S' };
+	/** 現在のバージョン */
+	private static final byte VERSION = 1;
+	/** ヘッダーのbyte数 */
+	private static final int HEADER_LENGTH = MAGIC.length + 1 + 8;
+	/** 内容のハッシュ値の最大byte数 */
+	private static final int HASH_LENGTH = 32;
+	/** 索引1件のbyte数 */
+	private static final int RECORD_LENGTH = 8 + 8 + 8 + 1 + HASH_LENGTH + 8 + 4;
+	/** 索引内の位置：サイズ */
+	private static final int SIZE_OFFSET = 8;
+	/** 索引内の位置：更新日時 */
+	private static final int LAST_MODIFIED_OFFSET = 16;
+	/** 索引内の位置：内容のハッシュ値長 */
+	private static final int HASH_LENGTH_OFFSET = 24;
+	/** 索引内の位置：内容のハッシュ値 */
+	private static final int HASH_OFFSET = 25;
+	/** 索引内の位置：パスの開始位置 */
+	private static final int PATH_OFFSET = HASH_OFFSET + HASH_LENGTH;
+	/** 索引内の位置：パス長 */
+	private static final int PATH_LENGTH_OFFSET = PATH_OFFSET + 8;
+	/** 1回でメモリマップする索引の件数 */
+	private static final int RECORDS_PER_REGION = (int) (FileUtils.MAPPED_REGION_SIZE / RECORD_LENGTH);
+	/** 読み込み単位 */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	/** 索引の並び順 */
+	private static final Comparator<Record> ORDER = Comparator.comparingLong((Record record) -> record.pathHash).thenComparing(record -> record.path);
+
+	/** 状態ファイルのパス */
+	private final String filePath;
+	/** 内容のハッシュ値でも判定するか */
+	private final boolean checksum;
+	/** 前回の状態ファイルのチャネル（前回の状態がない場合はnull） */
+	private final FileChannel channel;
+	/** メモリマップした索引 */
+	private final MappedByteBuffer[] regions;
+	/** 前回の件数 */
+	private final int count;
+	/** パスの開始位置 */
+	private final long pathsStart;
+	/** 今回処理対象として検索した前回の索引 */
+	private final BitSet seen = new BitSet();
+	/** 今回追加・変更したファイルの状態（パスごと） */
+	private final Map<String, Record> changed = new ConcurrentHashMap<>();
+
+	/**
+	 * デフォルトコンストラクタ
+	 * @param filePath - 状態ファイルのパス
+	 * @param checksum - 内容のハッシュ値でも判定するか
+	 * @param channel - 前回の状態ファイルのチャネル
+	 * @param regions - メモリマップした索引
+	 * @param count - 前回の件数
+	 */
+	private IncrementalState(String filePath, boolean checksum, FileChannel channel, MappedByteBuffer[] regions, int count) {
+		this.filePath = new File(filePath).getAbsolutePath();
+		this.checksum = checksum;
+		this.channel = channel;
+		this.regions = regions;
+		this.count = count;
+		this.pathsStart = HEADER_LENGTH + (long) count * RECORD_LENGTH;
+	}
+
+	/**
+	 * 状態ファイルを開きます
+	 * 状態ファイルがない場合は、前回の状態なし（全ファイルが追加）として扱います
+	 * @param filePath - 状態ファイルのパス
+	 * @param checksum - 内容のハッシュ値でも判定するか
+	 * @return - 前回の状態
+	 * @throws IOException - 状態ファイルを読み込みできない場合や、形式が不正な場合に発生
+	 */
+	public static IncrementalState open(String filePath, boolean checksum) throws IOException {
+		if (!new File(filePath).exists()) {
+			return new IncrementalState(filePath, checksum, null, new MappedByteBuffer[0], 0);
+		}
+		FileChannel channel = FileUtils.openNormalFileToChannel(filePath);
+		try {
+			ByteBuffer header = ByteBuffer.wrap(readFully(channel, 0, HEADER_LENGTH));
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC) || header.get() != VERSION) {
+				throw new IOException("状態ファイル形式不正\t" + filePath);
+			}
+			long count = header.getLong();
+			if (count < 0 || count > Integer.MAX_VALUE || HEADER_LENGTH + count * RECORD_LENGTH > channel.size()) {
+				throw new IOException("状態ファイル件数不正\t" + filePath);
+			}
+			// 索引は一定件数ごとにメモリマップし、参照した部分だけを読み込む
+			MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((count + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION)];
+			for (int i = 0; i < regions.length; i++) {
+				long first = (long) i * RECORDS_PER_REGION;
+				regions[i] = FileUtils.mapNormalFile(channel, HEADER_LENGTH + first * RECORD_LENGTH, Math.min(RECORDS_PER_REGION, count - first) * RECORD_LENGTH);
+			}
+			return new IncrementalState(filePath, checksum, channel, regions, (int) count);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 前回から変更がないか判定します
+	 * サイズと更新日時（内容のハッシュ値でも判定する場合はハッシュ値）が前回と同じで、
+	 * 暗号化後のファイルの更新日時が前回の元ファイルの更新日時のままの場合に変更なしとします
+	 * 変更がある場合や前回の状態がない場合は、現在の状態を保存対象として記録します
+	 * 状態ファイル自体は暗号化の対象にしないため、常に変更なしとします
+	 * 複数のスレッドから同時に呼び出せます
+	 * @param sourcePath - 元ファイルのパス
+	 * @param outputPath - 暗号化後のファイルのパス
+	 * @return - 変更がない場合はtrue
+	 * @throws IOException - 状態ファイルや元ファイルを読み込みできない場合に発生
+	 */
+	public boolean isUnchanged(String sourcePath, String outputPath) throws IOException {
+		File source = new File(sourcePath);
+		String path = source.getAbsolutePath();
+		if (path.equals(this.filePath)) {
+			return true;
+		}
+		Record current = new Record(hashOf(path), path, source.length(), source.lastModified(), this.checksum ? digest(sourcePath) : null);
+		int index = find(current.pathHash, path);
+		if (index >= 0) {
+			markSeen(index);
+			ByteBuffer region = regionOf(index);
+			int base = baseOf(index);
+			long lastModified = region.getLong(base + LAST_MODIFIED_OFFSET);
+			byte[] hash = readHash(region, base);
+			boolean same = region.getLong(base + SIZE_OFFSET) == current.size
+					&& (current.hash != null && hash != null ? Arrays.equals(current.hash, hash) : lastModified == current.lastModified);
+			// 暗号化時に元ファイルの更新日時を設定しているため、出力が削除・変更された場合も検出できる
+			File output = new File(outputPath);
+			if (same && output.isFile() && output.lastModified() == lastModified) {
+				if (current.hash != null && hash == null) {
+					// 今回初めてハッシュ値を計算した場合は、前回の更新日時のまま追記する
+					this.changed.put(path, new Record(current.pathHash, path, current.size, lastModified, current.hash, index));
+				}
+				return true;
+			}
+			current.index = index;
+		}
+		this.changed.put(path, current);
+		return false;
+	}
+
+	/**
+	 * 今回の状態を状態ファイルへ保存します
+	 * 前回の状態と今回追加・変更したファイルを併合し、一時ファイルに書き込んでから置き換えます
+	 * 前回から追加・変更・削除がない場合は書き込みません
+	 * @param durability - ディスクへの同期方針
+	 * @throws IOException - 状態ファイルを読み書きできない場合に発生
+	 */
+	public void save(Durability durability) throws IOException {
+		// 前回の状態のうち、置き換えるものと、今回対象外で既に存在しないものを除く
+		BitSet keep = new BitSet(this.count);
+		List<Record> added = new ArrayList<>(this.changed.values());
+		for (Record record : added) {
+			if (record.index >= 0) {
+				keep.set(record.index);
+			}
+		}
+		keep.flip(0, this.count);
+		for (int i = keep.nextSetBit(0); i >= 0; i = keep.nextSetBit(i + 1)) {
+			if (!isSeen(i) && !new File(readPath(i)).exists()) {
+				keep.clear(i);
+			}
+		}
+		if (added.isEmpty() && keep.cardinality() == this.count) {
+			return;
+		}
+		added.sort(ORDER);
+		StagedFile stagedFile = StagedFile.create(this.filePath, durability);
+		try {
+			DataOutputStream output = new DataOutputStream(stagedFile.getOutputStream());
+			output.write(MAGIC);
+			output.writeByte(VERSION);
+			output.writeLong(keep.cardinality() + (long) added.size());
+			// 索引（前回の索引と追加・変更分をハッシュ値順に併合）
+			long pathOffset = 0;
+			int next = 0;
+			for (int i = keep.nextSetBit(0); i >= 0; i = keep.nextSetBit(i + 1)) {
+				for (; next < added.size() && compare(added.get(next), i) < 0; next++) {
+					pathOffset += writeRecord(output, added.get(next), pathOffset);
+				}
+				pathOffset += copyRecord(output, i, pathOffset);
+			}
+			for (; next < added.size(); next++) {
+				pathOffset += writeRecord(output, added.get(next), pathOffset);
+			}
+			// パス（索引と同じ順で、前回のパスは先頭から順に読み込む）
+			try (InputStream paths = openPaths()) {
+				long position = 0;
+				next = 0;
+				for (int i = keep.nextSetBit(0); i >= 0; i = keep.nextSetBit(i + 1)) {
+					for (; next < added.size() && compare(added.get(next), i) < 0; next++) {
+						output.write(added.get(next).path.getBytes(StandardCharsets.UTF_8));
+					}
+					ByteBuffer region = regionOf(i);
+					long offset = region.getLong(baseOf(i) + PATH_OFFSET);
+					byte[] path = new byte[region.getInt(baseOf(i) + PATH_LENGTH_OFFSET)];
+					paths.skipNBytes(offset - position);
+					paths.readNBytes(path, 0, path.length);
+					position = offset + path.length;
+					output.write(path);
+				}
+				for (; next < added.size(); next++) {
+					output.write(added.get(next).path.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			output.flush();
+			stagedFile.commit();
+		} catch (IOException | RuntimeException e) {
+			stagedFile.discard();
+			throw e;
+		}
+	}
+
+	/**
+	 * パスのハッシュ値とパスで前回の索引を検索します
+	 * @param pathHash - パスのハッシュ値
+	 * @param path - パス
+	 * @return - 索引の位置（前回の状態にない場合は-1）
+	 * @throws IOException - 状態ファイルを読み込みできない場合に発生
+	 */
+	private int find(long pathHash, String path) throws IOException {
+		int low = 0;
+		int high = this.count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (regionOf(middle).getLong(baseOf(middle)) < pathHash) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		// ハッシュ値が衝突した場合はパスで判定
+		for (int i = low; i < this.count && regionOf(i).getLong(baseOf(i)) == pathHash; i++) {
+			if (readPath(i).equals(path)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 追加・変更分と前回の索引の順序を比較します
+	 * @param record - 追加・変更分
+	 * @param index - 前回の索引の位置
+	 * @return - 追加・変更分が前の場合は負の値
+	 * @throws IOException - 状態ファイルを読み込みできない場合に発生
+	 */
+	private int compare(Record record, int index) throws IOException {
+		int result = Long.compare(record.pathHash, regionOf(index).getLong(baseOf(index)));
+		return result != 0 ? result : record.path.compareTo(readPath(index));
+	}
+
+	/**
+	 * 索引を1件書き込みます
+	 * @param output - 出力先
+	 * @param record - 状態
+	 * @param pathOffset - パスの開始位置
+	 * @return - パス長
+	 * @throws IOException - 書き込みに失敗した場合に発生
+	 */
+	private static int writeRecord(DataOutputStream output, Record record, long pathOffset) throws IOException {
+		int pathLength = record.path.getBytes(StandardCharsets.UTF_8).length;
+		output.writeLong(record.pathHash);
+		output.writeLong(record.size);
+		output.writeLong(record.lastModified);
+		output.writeByte(record.hash == null ? 0 : record.hash.length);
+		output.write(record.hash == null ? new byte[HASH_LENGTH] : Arrays.copyOf(record.hash, HASH_LENGTH));
+		output.writeLong(pathOffset);
+		output.writeInt(pathLength);
+		return pathLength;
+	}
+
+	/**
+	 * 前回の索引をパスの開始位置だけ変更して書き込みます
+	 * @param output - 出力先
+	 * @param index - 前回の索引の位置
+	 * @param pathOffset - パスの開始位置
+	 * @return - パス長
+	 * @throws IOException - 書き込みに失敗した場合に発生
+	 */
+	private int copyRecord(DataOutputStream output, int index, long pathOffset) throws IOException {
+		ByteBuffer region = regionOf(index);
+		int base = baseOf(index);
+		byte[] record = new byte[PATH_OFFSET];
+		region.get(base, record);
+		int pathLength = region.getInt(base + PATH_LENGTH_OFFSET);
+		output.write(record);
+		output.writeLong(pathOffset);
+		output.writeInt(pathLength);
+		return pathLength;
+	}
+
+	/**
+	 * 前回の索引のパスを読み込みます
+	 * @param index - 前回の索引の位置
+	 * @return - パス
+	 * @throws IOException - 状態ファイルを読み込みできない場合に発生
+	 */
+	private String readPath(int index) throws IOException {
+		ByteBuffer region = regionOf(index);
+		int base = baseOf(index);
+		byte[] path = readFully(this.channel, this.pathsStart + region.getLong(base + PATH_OFFSET), region.getInt(base + PATH_LENGTH_OFFSET));
+		return new String(path, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 前回の索引の内容のハッシュ値を読み込みます
+	 * @param region - 索引を含む領域
+	 * @param base - 領域内の索引の位置
+	 * @return - 内容のハッシュ値（記録していない場合はnull）
+	 */
+	private static byte[] readHash(ByteBuffer region, int base) {
+		int length = region.get(base + HASH_LENGTH_OFFSET);
+		if (length <= 0) {
+			return null;
+		}
+		byte[] hash = new byte[Math.min(length, HASH_LENGTH)];
+		region.get(base + HASH_OFFSET, hash);
+		return hash;
+	}
+
+	/**
+	 * 前回のパスを先頭から順に読み込むストリームを開きます
+	 * @return - 入力ストリーム（前回の状態がない場合は空）
+	 * @throws IOException - 状態ファイルを読み込みできない場合に発生
+	 */
+	private InputStream openPaths() throws IOException {
+		if (this.channel == null) {
+			return InputStream.nullInputStream();
+		}
+		// 索引の検索と共用しないよう、別のチャネルで開く
+		FileChannel paths = FileUtils.openNormalFileToChannel(this.filePath);
+		paths.position(this.pathsStart);
+		return new BufferedInputStream(Channels.newInputStream(paths), READ_BUFFER_SIZE);
+	}
+
+	/**
+	 * 索引を含む領域を取得します
+	 * 絶対位置で読み込むため、複数のスレッドから同時に参照できます
+	 * @param index - 索引の位置
+	 * @return - 領域
+	 */
+	private ByteBuffer regionOf(int index) {
+		return this.regions[index / RECORDS_PER_REGION];
+	}
+
+	/**
+	 * 領域内の索引の位置を取得します
+	 * @param index - 索引の位置
+	 * @return - 領域内のbyte位置
+	 */
+	private static int baseOf(int index) {
+		return index % RECORDS_PER_REGION * RECORD_LENGTH;
+	}
+
+	private synchronized void markSeen(int index) {
+		this.seen.set(index);
+	}
+
+	private synchronized boolean isSeen(int index) {
+		return this.seen.get(index);
+	}
+
+	/**
+	 * パスのハッシュ値を計算します(FNV-1a 64bit)
+	 * @param path - パス
+	 * @return - ハッシュ値
+	 */
+	private static long hashOf(String path) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * ファイルの内容のハッシュ値(SHA-256)を計算します
+	 * @param filePath - ファイルパス
+	 * @return - ハッシュ値
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 */
+	private static byte[] digest(String filePath) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = CryptoCache.getDigest(MessageDigestAlgorithms.SHA_256);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		try (InputStream input = FileUtils.openNormalFileToStream(filePath)) {
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * チャネルの指定範囲を読み込みます
+	 * @param channel - 読み込み用のチャネル
+	 * @param position - 開始位置
+	 * @param length - byte数
+	 * @return - 読み込んだbyte配列
+	 * @throws IOException - 読み込みできない場合に発生
+	 */
+	private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("状態ファイル不足");
+			}
+		}
+		return buffer.array();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * 1ファイルの状態
+	 */
+	private static class Record {
+		private final long pathHash;
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private final byte[] hash;
+		/** 前回の索引の位置（前回の状態にない場合は-1） */
+		private int index = -1;
+		Record(long pathHash, String path, long size, long lastModified, byte[] hash) {
+			this.pathHash = pathHash;
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+		Record(long pathHash, String path, long size, long lastModified, byte[] hash, int index) {
+			this(pathHash, path, size, lastModified, hash);
+			this.index = index;
+		}
+	}
+
+}
@@ -0,0 +1,193 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+
+import exception.EP0101EncryptAlgorithmException;
+import exception.EP0103EncryptKeyAttributeException;
+import exception.EP0104EncryptException;
+import exception.EP0105DecryptException;
+
+/**
+ * RSAの公開鍵でデータキーを包むハイブリッド暗号化の鍵を扱います
+ * ファイルの暗号化・復号は共通鍵暗号で行い、RSAはランダムなデータキーの暗号化・復号にだけ使用します
+ * 暗号化時は1回の実行（複数ファイル・アーカイブ）で1つのデータキーを作成し、RSAの暗号化は1回だけ行います
+ * 包んだデータキーは各ファイルのヘッダーに保存するため、復号時は秘密鍵のみで復号できます
+ * 復号時は同じデータキーを1回だけRSAで復号し、以降のファイルでは復号済みのデータキーを使い回します
+ * 鍵はPEM形式（公開鍵はX.509の「PUBLIC KEY」、秘密鍵はPKCS#8の「PRIVATE KEY」）で読み込みます
+ * @author blank-nano
+ *
+ */
+public class KeyEnvelope {
+
+	/** RSAの暗号化方式 */
+	private static final String TRANSFORMATION = "RSA/ECB/OAEPPadding";
+	/** OAEPのパラメータ */
+	private static final OAEPParameterSpec OAEP_PARAMETER = new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+	/** 鍵の種類 */
+	private static final String KEY_ALGORITHM = "RSA";
+	/** PEMの公開鍵の種類 */
+	private static final String PEM_PUBLIC_KEY = "PUBLIC KEY";
+	/** PEMの秘密鍵の種類 */
+	private static final String PEM_PRIVATE_KEY = "PRIVATE KEY";
+	/** データキーのbyte数 */
+	private static final int DATA_KEY_LENGTH = 32;
+
+	/** データキー（暗号化時のみ） */
+	private final String dataKey;
+	/** 公開鍵で包んだデータキー（暗号化時のみ） */
+	private final byte[] wrappedKey;
+	/** 秘密鍵（復号時のみ） */
+	private final PrivateKey privateKey;
+	/** 復号済みのデータキー（包んだデータキーのBase64ごと） */
+	private final Map<String, String> unwrapped = new ConcurrentHashMap<>();
+
+	/**
+	 * コンストラクタ
+	 * @param dataKey - データキー
+	 * @param wrappedKey - 公開鍵で包んだデータキー
+	 * @param privateKey - 秘密鍵
+	 */
+	private KeyEnvelope(String dataKey, byte[] wrappedKey, PrivateKey privateKey) {
+		this.dataKey = dataKey;
+		this.wrappedKey = wrappedKey;
+		this.privateKey = privateKey;
+	}
+
+	/**
+	 * 暗号化用に、ランダムなデータキーを作成して公開鍵で包みます
+	 * @param publicKeyPath - 公開鍵のPEMファイルパス
+	 * @return - 暗号化用の鍵
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0101EncryptAlgorithmException - 乱数を生成できない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 公開鍵が不正な場合に発生
+	 * @throws EP0104EncryptException - データキーの暗号化に失敗したときに発生
+	 */
+	public static KeyEnvelope forEncrypt(String publicKeyPath) throws IOException, EP0101EncryptAlgorithmException, EP0103EncryptKeyAttributeException, EP0104EncryptException {
+		PublicKey publicKey;
+		try {
+			publicKey = KeyFactory.getInstance(KEY_ALGORITHM).generatePublic(new X509EncodedKeySpec(readPem(publicKeyPath, PEM_PUBLIC_KEY)));
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0103EncryptKeyAttributeException("公開鍵不正", true);
+		}
+		String dataKey = Base64.getEncoder().encodeToString(EncryptUtils.secureRandomBytes(DATA_KEY_LENGTH));
+		try {
+			return new KeyEnvelope(dataKey, runCipher(Cipher.ENCRYPT_MODE, publicKey, dataKey.getBytes(StandardCharsets.US_ASCII)), null);
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0104EncryptException(true);
+		}
+	}
+
+	/**
+	 * 復号用に秘密鍵を読み込みます
+	 * @param privateKeyPath - 秘密鍵のPEMファイルパス
+	 * @return - 復号用の鍵
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 秘密鍵が不正な場合に発生
+	 */
+	public static KeyEnvelope forDecrypt(String privateKeyPath) throws IOException, EP0103EncryptKeyAttributeException {
+		try {
+			return new KeyEnvelope(null, null, KeyFactory.getInstance(KEY_ALGORITHM).generatePrivate(new PKCS8EncodedKeySpec(readPem(privateKeyPath, PEM_PRIVATE_KEY))));
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0103EncryptKeyAttributeException("秘密鍵不正", true);
+		}
+	}
+
+	/**
+	 * ヘッダーに保存された包んだデータキーを秘密鍵で復号します
+	 * 同じデータキーは1回だけ復号します
+	 * @param wrapped - 公開鍵で包んだデータキー
+	 * @return - データキー
+	 * @throws EP0103EncryptKeyAttributeException - 秘密鍵を読み込んでいない場合に発生
+	 * @throws EP0105DecryptException - 秘密鍵が異なる等、データキーの復号に失敗したときに発生
+	 */
+	public String unwrap(byte[] wrapped) throws EP0103EncryptKeyAttributeException, EP0105DecryptException {
+		if (this.privateKey == null) {
+			throw new EP0103EncryptKeyAttributeException("秘密鍵なし", true);
+		}
+		String cacheKey = Base64.getEncoder().encodeToString(wrapped);
+		String result = this.unwrapped.get(cacheKey);
+		if (result != null) {
+			return result;
+		}
+		try {
+			result = new String(runCipher(Cipher.DECRYPT_MODE, this.privateKey, wrapped), StandardCharsets.US_ASCII);
+		} catch (@SuppressWarnings("unused") GeneralSecurityException e) {
+			throw new EP0105DecryptException("データキー復号失敗", true);
+		}
+		this.unwrapped.putIfAbsent(cacheKey, result);
+		return result;
+	}
+
+	/**
+	 * RSAで暗号化・復号します
+	 * RSAのCipherは実行ごとに1〜数回しか使用しないため、キャッシュせずに作成します
+	 * @param mode - Cipher.ENCRYPT_MODE または Cipher.DECRYPT_MODE
+	 * @param key - 公開鍵または秘密鍵
+	 * @param target - 対象
+	 * @return - 結果
+	 * @throws GeneralSecurityException - 暗号化・復号に失敗した場合に発生
+	 */
+	private static byte[] runCipher(int mode, Key key, byte[] target) throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(mode, key, OAEP_PARAMETER);
+		return cipher.doFinal(target);
+	}
+
+	/**
+	 * PEMファイルから指定した種類の鍵を読み込みます
+	 * @param filePath - PEMファイルパス
+	 * @param type - 鍵の種類（BEGIN・ENDの後ろの文字列）
+	 * @return - DER形式の鍵
+	 * @throws IOException - ファイルを読み込みできない場合に発生
+	 * @throws EP0103EncryptKeyAttributeException - 指定した種類の鍵がない場合や、Base64が不正な場合に発生
+	 */
+	private static byte[] readPem(String filePath, String type) throws IOException, EP0103EncryptKeyAttributeException {
+		String pem = new String(FileUtils.readNormalFileToByte(filePath), StandardCharsets.US_ASCII);
+		String begin = "-----BEGIN " + type + "-----";
+		String end = "-----END " + type + "-----";
+		int start = pem.indexOf(begin);
+		int finish = start < 0 ? -1 : pem.indexOf(end, start);
+		if (finish < 0) {
+			throw new EP0103EncryptKeyAttributeException("PEM形式不正\t" + type, true);
+		}
+		try {
+			// 改行を含むため、Base64以外の文字を無視するMIME形式でデコード
+			return Base64.getMimeDecoder().decode(pem.substring(start + begin.length(), finish));
+		} catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+			throw new EP0103EncryptKeyAttributeException("PEM形式不正\t" + type, true);
+		}
+	}
+
+	/**
+	 * 暗号化するファイルの第一パスワードとして使用するデータキーを取得します
+	 * @return - データキー（復号用の場合はnull）
+	 */
+	public String getDataKey() {
+		return this.dataKey;
+	}
+
+	/**
+	 * ヘッダーに保存する包んだデータキーを取得します
+	 * @return - 公開鍵で包んだデータキー（復号用の場合はnull）
+	 */
+	public byte[] getWrappedKey() {
+		return this.wrappedKey;
+	}
+
+}
@@ -0,0 +1,429 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+
+import exception.EP0105DecryptException;
+
+/**
+ * 独自改竄形式(v1)の変換を行います
+ * 反転、Base64エンコード、byteずらし、Base64エンコードの各工程を1回の走査でまとめて行い、
+ * 出力先の配列は事前に正確な長さで1回だけ確保します
+ * 復号時は区切り文字の位置だけを調べ、各項目は取得時に入力から直接展開します
+ * 暗号文は一定量ずつ展開できるため、暗号文全体の配列を作らずに暗号処理へ渡せます
+ * @author blank-nano
+ *
+ */
+public class OriginalCodec {
+
+	/** byteずらし */
+	static final int SHIFT_BYTE = 73;
+	/** 区切り文字1 */
+	static final byte SPLIT1 = ConversionUtils.stringToByteArray("_")[0];
+	/** 区切り文字2 */
+	static final byte SPLIT2 = ConversionUtils.stringToByteArray("-")[0];
+	/** Base64のパディング文字 */
+	private static final byte PAD = '=';
+	/** Base64の変換表 */
+	private static final byte[] ENCODE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+	/** Base64の逆変換表 */
+	private static final int[] DECODE = new int[256];
+	static {
+		for (int i = 0; i < DECODE.length; i++) {
+			DECODE[i] = -1;
+		}
+		for (int i = 0; i < ENCODE.length; i++) {
+			DECODE[ENCODE[i]] = i;
+		}
+	}
+
+	/**
+	 * 独自改竄形式に変換します
+	 * 初期化ベクトルキー_暗号文-暗号化キー の順で連結します（保存しないキーはnull）
+	 * @param ivKey - 初期化ベクトルキー
+	 * @param encrypt - 暗号文
+	 * @param encryptKey - 暗号化キー
+	 * @return - 独自改竄byte配列
+	 */
+	public static byte[] encode(byte[] ivKey, byte[] encrypt, byte[] encryptKey) {
+		// 出力長を事前に計算
+		int innerLength = encodedLength(encrypt.length);
+		if (ivKey != null) {
+			innerLength = Math.addExact(innerLength, encodedLength(ivKey.length) + 1);
+		}
+		if (encryptKey != null) {
+			innerLength = Math.addExact(innerLength, encodedLength(encryptKey.length) + 1);
+		}
+		Encoder encoder = new Encoder(new byte[encodedLength(innerLength)]);
+		if (ivKey != null) {
+			encoder.putReverse(ivKey);
+			encoder.put(SPLIT1);
+		}
+		encoder.putReverse(encrypt);
+		if (encryptKey != null) {
+			encoder.put(SPLIT2);
+			encoder.putReverse(encryptKey);
+		}
+		return encoder.finish();
+	}
+
+	/**
+	 * 独自改竄形式を戻します
+	 * @param original - 独自改竄byte配列
+	 * @param saveIvKey - 初期化ベクトルキーが保存されているか
+	 * @param saveEncryptKey - 暗号化キーが保存されているか
+	 * @return - 展開結果
+	 * @throws EP0105DecryptException - 形式が不正な場合に発生
+	 */
+	public static Sections decode(byte[] original, boolean saveIvKey, boolean saveEncryptKey) throws EP0105DecryptException {
+		return decode(original, 0, original.length, saveIvKey, saveEncryptKey);
+	}
+
+	/**
+	 * 独自改竄形式を戻します
+	 * 区切り文字1は先頭から、区切り文字2は末尾から探すため、暗号文の部分は走査しません
+	 * この時点では各項目の位置だけを調べ、内容は取得時に入力から反転済みの順で直接展開します
+	 * @param original - 独自改竄byte配列を含む配列
+	 * @param offset - 独自改竄byte配列の開始位置
+	 * @param length - 独自改竄byte配列のbyte数
+	 * @param saveIvKey - 初期化ベクトルキーが保存されているか
+	 * @param saveEncryptKey - 暗号化キーが保存されているか
+	 * @return - 展開結果
+	 * @throws EP0105DecryptException - 形式が不正な場合に発生
+	 */
+	public static Sections decode(byte[] original, int offset, int length, boolean saveIvKey, boolean saveEncryptKey) throws EP0105DecryptException {
+		if (length % 4 != 0) {
+			throw new EP0105DecryptException("Base64長不正", true);
+		}
+		Sections sections = new Sections(original, offset);
+		int innerLength = length == 0 ? 0 : length / 4 * 3 - padding(original[offset + length - 2], original[offset + length - 1]);
+		// 区切り文字の位置を調べる（各キーはBase64のため、区切り文字を含まない）
+		int split1 = -1;
+		int split2 = innerLength;
+		if (saveIvKey) {
+			split1 = 0;
+			while (split1 < innerLength && sections.charAt(split1) != SPLIT1) {
+				split1++;
+			}
+			if (split1 == innerLength) {
+				throw new EP0105DecryptException("区切り文字なし", true);
+			}
+			sections.ivKey = sections.new Section(0, split1);
+		}
+		if (saveEncryptKey) {
+			split2 = innerLength - 1;
+			while (split2 > split1 && sections.charAt(split2) != SPLIT2) {
+				split2--;
+			}
+			if (split2 == split1) {
+				throw new EP0105DecryptException("区切り文字なし", true);
+			}
+			sections.encryptKey = sections.new Section(split2 + 1, innerLength);
+		}
+		sections.encrypt = sections.new Section(split1 + 1, split2);
+		return sections;
+	}
+
+	/**
+	 * 独自改竄byte配列の4文字から、指定した位置を戻した1byteを取得します
+	 * 全体を展開せずに区切り文字の有無を調べるために使用します
+	 * @param quad - 独自改竄byte配列のうち、指定した位置を含む4文字
+	 * @param index - 戻した後の位置
+	 * @return - 戻したbyte
+	 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+	 */
+	static int decodeAt(byte[] quad, int index) throws EP0105DecryptException {
+		return unshift(decodeQuad(quad, 0), index % 3, index / 3 * 4);
+	}
+
+	/**
+	 * Base64エンコード後の長さを取得します
+	 * @param length - エンコード前のbyte数
+	 * @return - エンコード後のbyte数
+	 */
+	static int encodedLength(int length) {
+		return Math.multiplyExact((length + 2) / 3, 4);
+	}
+
+	/**
+	 * 末尾2文字からパディング数を取得します
+	 * @param second - 末尾から2文字目
+	 * @param last - 末尾の文字
+	 * @return - パディング数
+	 */
+	private static int padding(int second, int last) {
+		if (last != PAD) {
+			return 0;
+		}
+		return second == PAD ? 2 : 1;
+	}
+
+	/**
+	 * Base64の4文字を24bitに変換します
+	 * @param source - Base64文字列
+	 * @param offset - 開始位置
+	 * @return - 24bit値
+	 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+	 */
+	private static int decodeQuad(byte[] source, int offset) throws EP0105DecryptException {
+		int bits = 0;
+		for (int i = offset; i < offset + 4; i++) {
+			int c = source[i] & 0xff;
+			int value = c == PAD ? 0 : DECODE[c];
+			if (value < 0) {
+				throw new EP0105DecryptException("Base64文字不正", true);
+			}
+			bits = (bits << 6) | value;
+		}
+		return bits;
+	}
+
+	/**
+	 * byteずらしを戻します(ずらし分 - インデックス / 3)
+	 * @param bits - 24bit値
+	 * @param k - 24bit値中の位置
+	 * @param quadOffset - 4文字単位の開始位置
+	 * @return - 戻したbyte
+	 */
+	private static int unshift(int bits, int k, int quadOffset) {
+		return (byte) ((bits >>> (16 - 8 * k)) - SHIFT_BYTE - quadOffset / 4);
+	}
+
+	/**
+	 * 出力配列へ順に書き込むエンコーダーです
+	 * 3byte単位で外側のBase64に変換するため、byteずらしの量は3byteごとに1つ増えます
+	 */
+	private static class Encoder {
+		private final byte[] output;
+		private int position;
+		private int buffer;
+		private int count;
+		private int group;
+
+		Encoder(byte[] output) {
+			this.output = output;
+		}
+
+		/**
+		 * 1byteずらして書き込みます
+		 * @param b - 書き込むbyte
+		 */
+		void put(int b) {
+			this.buffer = (this.buffer << 8) | ((b + SHIFT_BYTE + this.group) & 0xff);
+			if (++this.count == 3) {
+				writeQuad(this.buffer, 4);
+				this.buffer = 0;
+				this.count = 0;
+				this.group++;
+			}
+		}
+
+		/**
+		 * 配列を反転させながらBase64エンコードして書き込みます
+		 * @param source - 書き込む配列
+		 */
+		void putReverse(byte[] source) {
+			int j = source.length - 1;
+			for (; j >= 2; j -= 3) {
+				int bits = (source[j] & 0xff) << 16 | (source[j - 1] & 0xff) << 8 | (source[j - 2] & 0xff);
+				put(ENCODE[bits >>> 18]);
+				put(ENCODE[(bits >>> 12) & 0x3f]);
+				put(ENCODE[(bits >>> 6) & 0x3f]);
+				put(ENCODE[bits & 0x3f]);
+			}
+			if (j == 1) {
+				int bits = (source[1] & 0xff) << 16 | (source[0] & 0xff) << 8;
+				put(ENCODE[bits >>> 18]);
+				put(ENCODE[(bits >>> 12) & 0x3f]);
+				put(ENCODE[(bits >>> 6) & 0x3f]);
+				put(PAD);
+			} else if (j == 0) {
+				int bits = (source[0] & 0xff) << 16;
+				put(ENCODE[bits >>> 18]);
+				put(ENCODE[(bits >>> 12) & 0x3f]);
+				put(PAD);
+				put(PAD);
+			}
+		}
+
+		/**
+		 * 残りを書き込んで出力配列を返却します
+		 * @return - 出力配列
+		 */
+		byte[] finish() {
+			if (this.count == 1) {
+				writeQuad(this.buffer << 16, 2);
+			} else if (this.count == 2) {
+				writeQuad(this.buffer << 8, 3);
+			}
+			return this.output;
+		}
+
+		/**
+		 * 24bitをBase64の4文字で書き込みます
+		 * @param bits - 24bit値
+		 * @param chars - パディング以外の文字数
+		 */
+		private void writeQuad(int bits, int chars) {
+			for (int i = 0; i < 4; i++) {
+				this.output[this.position++] = i < chars ? ENCODE[(bits >>> (18 - 6 * i)) & 0x3f] : PAD;
+			}
+		}
+	}
+
+	/**
+	 * 展開結果を保持します
+	 * 各項目は独自改竄byte配列での位置だけを保持し、取得時に展開します
+	 * 展開中の4文字を使い回すため、複数のスレッドから同時に取得することはできません
+	 */
+	public static class Sections {
+		private final byte[] source;
+		private final int offset;
+		private int cachedQuad = -1;
+		private int cachedBits;
+		private Section ivKey;
+		private Section encrypt;
+		private Section encryptKey;
+
+		Sections(byte[] source, int offset) {
+			this.source = source;
+			this.offset = offset;
+		}
+
+		/**
+		 * 初期化ベクトルキーを取得します
+		 * @return - 初期化ベクトルキー（保存されていない場合はnull）
+		 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+		 */
+		public byte[] getIvKey() throws EP0105DecryptException {
+			return this.ivKey == null ? null : this.ivKey.toBytes();
+		}
+
+		/**
+		 * 暗号文を取得します
+		 * @return - 暗号文
+		 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+		 */
+		public byte[] getEncrypt() throws EP0105DecryptException {
+			return this.encrypt.toBytes();
+		}
+
+		/**
+		 * 暗号化キーを取得します
+		 * @return - 暗号化キー（保存されていない場合はnull）
+		 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+		 */
+		public byte[] getEncryptKey() throws EP0105DecryptException {
+			return this.encryptKey == null ? null : this.encryptKey.toBytes();
+		}
+
+		/**
+		 * 暗号文のbyte数を取得します
+		 * @return - 暗号文のbyte数
+		 */
+		public int getEncryptLength() {
+			return this.encrypt.length;
+		}
+
+		/**
+		 * 暗号文の指定した位置から展開します
+		 * 暗号文全体の配列を作らずに、一定量ずつ暗号処理へ渡すために使用します
+		 * @param position - 暗号文の開始位置
+		 * @param output - 出力先
+		 * @param outOffset - 出力先の開始位置
+		 * @param length - 展開する最大byte数
+		 * @return - 展開したbyte数
+		 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+		 */
+		public int readEncrypt(int position, byte[] output, int outOffset, int length) throws EP0105DecryptException {
+			return this.encrypt.read(position, output, outOffset, length);
+		}
+
+		/**
+		 * 戻した後の1文字を取得します
+		 * 同じ4文字から戻す間は、デコード結果を使い回します
+		 * @param index - 戻した後の位置
+		 * @return - 戻したbyte
+		 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+		 */
+		int charAt(int index) throws EP0105DecryptException {
+			int q = index / 3 * 4;
+			if (q != this.cachedQuad) {
+				this.cachedBits = decodeQuad(this.source, this.offset + q);
+				this.cachedQuad = q;
+			}
+			return unshift(this.cachedBits, index % 3, q);
+		}
+
+		/**
+		 * 反転されたBase64の項目です
+		 * 末尾から展開することで、反転前の順で取得します
+		 */
+		private class Section {
+			private final int start;
+			private final int length;
+
+			Section(int start, int end) throws EP0105DecryptException {
+				if ((end - start) % 4 != 0) {
+					throw new EP0105DecryptException("Base64長不正", true);
+				}
+				this.start = start;
+				this.length = end == start ? 0 : (end - start) / 4 * 3 - padding(charAt(end - 2), charAt(end - 1));
+			}
+
+			/**
+			 * 反転前の順で指定した位置から展開します
+			 * @param position - 開始位置
+			 * @param output - 出力先
+			 * @param outOffset - 出力先の開始位置
+			 * @param max - 展開する最大byte数
+			 * @return - 展開したbyte数
+			 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+			 */
+			int read(int position, byte[] output, int outOffset, int max) throws EP0105DecryptException {
+				int count = Math.max(0, Math.min(max, this.length - position));
+				int group = -1;
+				int bits = 0;
+				for (int i = 0; i < count; i++) {
+					int j = this.length - 1 - position - i;
+					if (j / 3 != group) {
+						group = j / 3;
+						bits = decodeGroup(this.start + group * 4);
+					}
+					output[outOffset + i] = (byte) (bits >>> (16 - 8 * (j % 3)));
+				}
+				return count;
+			}
+
+			/**
+			 * 全体を展開します
+			 * @return - 展開結果
+			 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+			 */
+			byte[] toBytes() throws EP0105DecryptException {
+				byte[] output = new byte[this.length];
+				read(0, output, 0, this.length);
+				return output;
+			}
+
+			/**
+			 * 戻した後のBase64の4文字を24bitに変換します
+			 * @param index - 戻した後の開始位置
+			 * @return - 24bit値
+			 * @throws EP0105DecryptException - Base64で使用しない文字が含まれる場合に発生
+			 */
+			private int decodeGroup(int index) throws EP0105DecryptException {
+				int bits = 0;
+				for (int i = index; i < index + 4; i++) {
+					int c = charAt(i);
+					int value = c == PAD ? 0 : DECODE[c & 0xff];
+					if (value < 0) {
+						throw new EP0105DecryptException("Base64文字不正", true);
+					}
+					bits = (bits << 6) | value;
+				}
+				return bits;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,281 @@
+package utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 工程ごとの処理時間と処理byte数を集計します
+ * 読み込み、暗号処理、独自改竄、Base64、書き込み、同期のどこで時間がかかっているかを調べるために使用します
+ * 集計は有効化した場合のみ行い、無効の場合は時刻も取得しません
+ * 複数のスレッドで並列に処理した時間は合算するため、工程ごとの時間は処理全体の経過時間を超えることがあります
+ * @author blank-nano
+ *
+ */
+public class PhaseStats {
+
+	/** ヒストグラムの1桁（2の累乗）あたりの区分数のビット数 */
+	private static final int SUB_BUCKET_BITS = 4;
+	/** ヒストグラムの1桁（2の累乗）あたりの区分数 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** ヒストグラムの区分数（マイクロ秒で2^40まで） */
+	private static final int BUCKETS = SUB_BUCKETS * (40 - SUB_BUCKET_BITS + 1);
+
+	/** 集計の有無 */
+	private static volatile boolean enabled;
+	/** 集計開始時刻 */
+	private static volatile long startNanos;
+	/** 工程ごとの処理時間（ナノ秒） */
+	private static final LongAdder[] NANOS = createAdders();
+	/** 工程ごとの処理byte数 */
+	private static final LongAdder[] BYTES = createAdders();
+	/** 処理したファイル数 */
+	private static final LongAdder FILES = new LongAdder();
+	/** ファイルごとの処理時間の分布（マイクロ秒） */
+	private static final AtomicLongArray LATENCIES = new AtomicLongArray(BUCKETS);
+	/** ファイルごとの処理時間の最大（マイクロ秒） */
+	private static final LongAccumulator MAX_LATENCY = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 集計をリセットして有効化します
+	 */
+	public static synchronized void enable() {
+		for (Phase phase : Phase.values()) {
+			NANOS[phase.ordinal()].reset();
+			BYTES[phase.ordinal()].reset();
+		}
+		FILES.reset();
+		for (int i = 0; i < BUCKETS; i++) {
+			LATENCIES.set(i, 0);
+		}
+		MAX_LATENCY.reset();
+		startNanos = System.nanoTime();
+		enabled = true;
+	}
+
+	/**
+	 * 集計を無効化します
+	 */
+	public static void disable() {
+		enabled = false;
+	}
+
+	/**
+	 * 集計しているか判定します
+	 * @return - 集計している場合はtrue
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 工程の開始時刻を取得します
+	 * @return - 開始時刻（集計していない場合は0）
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * 工程の処理時間と処理byte数を加算します
+	 * @param phase - 工程
+	 * @param start - startで取得した開始時刻
+	 * @param bytes - 処理byte数
+	 */
+	public static void record(Phase phase, long start, long bytes) {
+		if (start == 0 || !enabled) {
+			return;
+		}
+		NANOS[phase.ordinal()].add(System.nanoTime() - start);
+		BYTES[phase.ordinal()].add(bytes);
+	}
+
+	/**
+	 * 1ファイルの処理時間を加算します
+	 * @param start - startで取得した開始時刻
+	 */
+	public static void recordFile(long start) {
+		if (start == 0 || !enabled) {
+			return;
+		}
+		long micros = Math.max(0, (System.nanoTime() - start) / 1000);
+		FILES.increment();
+		LATENCIES.incrementAndGet(bucketOf(micros));
+		MAX_LATENCY.accumulate(micros);
+	}
+
+	/**
+	 * 集計結果を文字列で取得します
+	 * @return - 集計結果
+	 */
+	public static String toText() {
+		double elapsed = getElapsedSeconds();
+		long files = FILES.sum();
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.ROOT, "経過時間\t%.3f秒\tファイル数\t%d\t%.1fファイル/秒", elapsed, files, perSecond(files, elapsed))).append(System.lineSeparator());
+		builder.append("工程\t時間(秒)\tbyte数\tMB/s").append(System.lineSeparator());
+		for (Phase phase : Phase.values()) {
+			double seconds = NANOS[phase.ordinal()].sum() / 1e9;
+			long bytes = BYTES[phase.ordinal()].sum();
+			builder.append(String.format(Locale.ROOT, "%s\t%.3f\t%d\t%.1f", phase.getName(), seconds, bytes, perSecond(bytes, seconds) / (1024 * 1024))).append(System.lineSeparator());
+		}
+		builder.append(String.format(Locale.ROOT, "ファイルごとの処理時間(ミリ秒)\tp50 %.3f\tp99 %.3f\tmax %.3f", percentile(0.5) / 1e3, percentile(0.99) / 1e3, MAX_LATENCY.get() / 1e3));
+		return builder.toString();
+	}
+
+	/**
+	 * 集計結果をJSONで取得します
+	 * @return - 集計結果のJSON
+	 */
+	public static String toJson() {
+		double elapsed = getElapsedSeconds();
+		long files = FILES.sum();
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.ROOT, "{\"elapsedSeconds\":%.6f,\"files\":%d,\"filesPerSecond\":%.3f,\"phases\":{", elapsed, files, perSecond(files, elapsed)));
+		for (Phase phase : Phase.values()) {
+			double seconds = NANOS[phase.ordinal()].sum() / 1e9;
+			long bytes = BYTES[phase.ordinal()].sum();
+			if (phase.ordinal() > 0) {
+				builder.append(',');
+			}
+			builder.append(String.format(Locale.ROOT, "\"%s\":{\"seconds\":%.6f,\"bytes\":%d,\"mbPerSecond\":%.3f}", phase.getKey(), seconds, bytes, perSecond(bytes, seconds) / (1024 * 1024)));
+		}
+		builder.append(String.format(Locale.ROOT, "},\"latencyMillis\":{\"p50\":%.3f,\"p99\":%.3f,\"max\":%.3f}}", percentile(0.5) / 1e3, percentile(0.99) / 1e3, MAX_LATENCY.get() / 1e3));
+		return builder.toString();
+	}
+
+	/**
+	 * 集計開始からの経過時間を取得します
+	 * @return - 経過時間（秒）
+	 */
+	private static double getElapsedSeconds() {
+		return (System.nanoTime() - startNanos) / 1e9;
+	}
+
+	/**
+	 * 1秒あたりの量を計算します
+	 * @param amount - 量
+	 * @param seconds - 時間（秒）
+	 * @return - 1秒あたりの量（時間が0の場合は0）
+	 */
+	private static double perSecond(long amount, double seconds) {
+		return seconds <= 0 ? 0 : amount / seconds;
+	}
+
+	/**
+	 * ファイルごとの処理時間の百分位数を取得します
+	 * 区分の上限を返却するため、誤差は1/SUB_BUCKETS以内です
+	 * @param ratio - 割合（0.5の場合は中央値）
+	 * @return - 処理時間（マイクロ秒、ファイルがない場合は0）
+	 */
+	private static long percentile(double ratio) {
+		long total = FILES.sum();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * ratio));
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += LATENCIES.get(i);
+			if (count >= rank) {
+				return Math.min(upperBoundOf(i), MAX_LATENCY.get());
+			}
+		}
+		return MAX_LATENCY.get();
+	}
+
+	/**
+	 * 処理時間からヒストグラムの区分を取得します
+	 * SUB_BUCKETS未満はそのまま、以降は2の累乗ごとにSUB_BUCKETS個に区分します
+	 * @param micros - 処理時間（マイクロ秒）
+	 * @return - 区分
+	 */
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int index = SUB_BUCKETS * (shift + 1) + (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+		return Math.min(index, BUCKETS - 1);
+	}
+
+	/**
+	 * ヒストグラムの区分の上限を取得します
+	 * @param bucket - 区分
+	 * @return - 上限（マイクロ秒）
+	 */
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * 工程ごとの集計先を作成します
+	 * @return - 集計先
+	 */
+	private static LongAdder[] createAdders() {
+		LongAdder[] adders = new LongAdder[Phase.values().length];
+		for (int i = 0; i < adders.length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * 工程
+	 * @author blank-nano
+	 *
+	 */
+	public enum Phase {
+		/** ファイルの読み込み */
+		  READ("読み込み", "read")
+		/** 暗号化・復号 */
+		, CIPHER("暗号処理", "cipher")
+		/** 独自改竄（反転・byteずらし・Base64を1回の走査で行うため、まとめて集計） */
+		, ORIGINAL("独自改竄", "original")
+		/** 拡張子の保存・取得のBase64 */
+		, BASE64("Base64", "base64")
+		/** ファイルの書き込み */
+		, WRITE("書き込み", "write")
+		/** ディスクへの同期 */
+		, SYNC("同期", "sync")
+		;
+
+		private String name;
+		private String key;
+
+		/**
+		 * デフォルトコンストラクタ
+		 * @param name - 表示名
+		 * @param key - JSONの項目名
+		 */
+		private Phase(String name, String key) {
+			this.name = name;
+			this.key = key;
+		}
+
+		/**
+		 * 表示名を取得します
+		 * @return - 表示名
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * JSONの項目名を取得します
+		 * @return - JSONの項目名
+		 */
+		public String getKey() {
+			return this.key;
+		}
+
+	}
+
+}
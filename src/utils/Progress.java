@@ -0,0 +1,264 @@
+package utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 暗号化・復号の進捗を集計し、一定間隔で通知します
+ * 処理済みのbyte数は読み込み・暗号処理の単位（64KB〜1MB）でまとめて加算するため、1byteごとの処理はありません
+ * 集計は開始した場合のみ行い、開始していない場合は加算もストリームのラップも行いません
+ * 全体のbyte数は処理対象のファイルサイズの合計のため、圧縮する場合や標準入力の場合の残り時間は目安です
+ * @author blank-nano
+ *
+ */
+public class Progress {
+
+	/** 集計の有無 */
+	private static volatile boolean enabled;
+	/** 処理済みのbyte数 */
+	private static final LongAdder DONE_BYTES = new LongAdder();
+	/** 全体のbyte数 */
+	private static final LongAdder TOTAL_BYTES = new LongAdder();
+	/** 処理済みのファイル数 */
+	private static final LongAdder DONE_FILES = new LongAdder();
+	/** 全体のファイル数 */
+	private static final LongAdder TOTAL_FILES = new LongAdder();
+	/** 通知用のスレッド */
+	private static ScheduledExecutorService scheduler;
+	/** 通知先 */
+	private static Listener listener;
+	/** 集計開始時刻 */
+	private static long startNanos;
+	/** 前回通知時刻 */
+	private static long lastNanos;
+	/** 前回通知時の処理済みのbyte数 */
+	private static long lastBytes;
+
+	/**
+	 * 集計をリセットして開始し、一定間隔で通知します
+	 * @param intervalMillis - 通知間隔（ミリ秒）
+	 * @param listener - 通知先
+	 */
+	public static synchronized void start(long intervalMillis, Listener listener) {
+		stop();
+		DONE_BYTES.reset();
+		TOTAL_BYTES.reset();
+		DONE_FILES.reset();
+		TOTAL_FILES.reset();
+		Progress.listener = listener;
+		startNanos = System.nanoTime();
+		lastNanos = startNanos;
+		lastBytes = 0;
+		enabled = true;
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(Progress::notifyListener, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 最終の進捗を通知し、集計と通知を終了します
+	 */
+	public static synchronized void stop() {
+		if (!enabled) {
+			return;
+		}
+		scheduler.shutdownNow();
+		scheduler = null;
+		notifyListener();
+		enabled = false;
+		listener = null;
+	}
+
+	/**
+	 * 現在の進捗を通知します
+	 * 速度は前回の通知からの速度、残り時間は開始からの平均速度で計算します
+	 */
+	private static synchronized void notifyListener() {
+		if (!enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		long done = DONE_BYTES.sum();
+		double current = now == lastNanos ? 0 : (done - lastBytes) / ((now - lastNanos) / 1e9);
+		double average = now == startNanos ? 0 : done / ((now - startNanos) / 1e9);
+		lastNanos = now;
+		lastBytes = done;
+		listener.onProgress(new Snapshot(done, TOTAL_BYTES.sum(), DONE_FILES.sum(), TOTAL_FILES.sum(), current, average, (now - startNanos) / 1_000_000));
+	}
+
+	/**
+	 * 集計しているか判定します
+	 * @return - 集計している場合はtrue
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 処理対象を追加します
+	 * @param bytes - 処理対象のbyte数
+	 */
+	public static void addTotal(long bytes) {
+		if (enabled) {
+			TOTAL_BYTES.add(bytes);
+			TOTAL_FILES.increment();
+		}
+	}
+
+	/**
+	 * 処理済みのbyte数を加算します
+	 * @param bytes - 処理済みのbyte数
+	 */
+	public static void addBytes(long bytes) {
+		if (enabled) {
+			DONE_BYTES.add(bytes);
+		}
+	}
+
+	/**
+	 * 処理済みのファイル数を加算します
+	 */
+	public static void addFile() {
+		if (enabled) {
+			DONE_FILES.increment();
+		}
+	}
+
+	/**
+	 * 読み込んだbyte数を処理済みとして加算する入力ストリームを作成します
+	 * @param input - 入力ストリーム
+	 * @return - 集計している場合は加算する入力ストリーム、集計していない場合はそのまま
+	 */
+	public static InputStream count(InputStream input) {
+		if (!enabled) {
+			return input;
+		}
+		return new FilterInputStream(input) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					addBytes(1);
+				}
+				return b;
+			}
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					addBytes(read);
+				}
+				return read;
+			}
+			@Override
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				addBytes(skipped);
+				return skipped;
+			}
+			@Override
+			public boolean markSupported() {
+				// 読み直しで二重に加算しないよう、markには対応しない
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * 標準エラー出力等へ1行ずつ進捗を出力する通知先を作成します
+	 * @param out - 出力先
+	 * @return - 通知先
+	 */
+	public static Listener printer(PrintStream out) {
+		return snapshot -> out.println(snapshot.toString());
+	}
+
+	/**
+	 * 進捗の通知先
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		/**
+		 * 進捗を通知します
+		 * @param snapshot - 通知時点の進捗
+		 */
+		void onProgress(Snapshot snapshot);
+	}
+
+	/**
+	 * 通知時点の進捗
+	 */
+	public static class Snapshot {
+		private final long doneBytes;
+		private final long totalBytes;
+		private final long doneFiles;
+		private final long totalFiles;
+		private final double currentBytesPerSecond;
+		private final double averageBytesPerSecond;
+		private final long elapsedMillis;
+		Snapshot(long doneBytes, long totalBytes, long doneFiles, long totalFiles, double currentBytesPerSecond, double averageBytesPerSecond, long elapsedMillis) {
+			this.doneBytes = doneBytes;
+			this.totalBytes = totalBytes;
+			this.doneFiles = doneFiles;
+			this.totalFiles = totalFiles;
+			this.currentBytesPerSecond = currentBytesPerSecond;
+			this.averageBytesPerSecond = averageBytesPerSecond;
+			this.elapsedMillis = elapsedMillis;
+		}
+		public long getDoneBytes() {
+			return this.doneBytes;
+		}
+		public long getTotalBytes() {
+			return this.totalBytes;
+		}
+		public long getDoneFiles() {
+			return this.doneFiles;
+		}
+		public long getTotalFiles() {
+			return this.totalFiles;
+		}
+		public double getCurrentBytesPerSecond() {
+			return this.currentBytesPerSecond;
+		}
+		public double getAverageBytesPerSecond() {
+			return this.averageBytesPerSecond;
+		}
+		public long getElapsedMillis() {
+			return this.elapsedMillis;
+		}
+
+		/**
+		 * 残り時間を取得します
+		 * 開始からの平均速度で計算します
+		 * @return - 残り時間（ミリ秒、不明な場合は-1）
+		 */
+		public long getRemainingMillis() {
+			if (this.averageBytesPerSecond <= 0 || this.totalBytes <= 0) {
+				return -1;
+			}
+			return (long) (Math.max(0, this.totalBytes - this.doneBytes) / this.averageBytesPerSecond * 1000);
+		}
+
+		@Override
+		public String toString() {
+			long remaining = getRemainingMillis();
+			return String.format(Locale.ROOT, "進捗\t%.1f/%.1fMB(%.1f%%)\t%.1fMB/s\tファイル %d/%d\t残り %s",
+					this.doneBytes / (1024d * 1024), this.totalBytes / (1024d * 1024),
+					this.totalBytes <= 0 ? 0 : Math.min(100, this.doneBytes * 100d / this.totalBytes),
+					this.currentBytesPerSecond / (1024 * 1024),
+					this.doneFiles, this.totalFiles,
+					remaining < 0 ? "--:--:--" : String.format(Locale.ROOT, "%02d:%02d:%02d", remaining / 3_600_000, remaining / 60_000 % 60, remaining / 1000 % 60));
+		}
+	}
+
+}
@@ -0,0 +1,345 @@
+package utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.digest.MessageDigestAlgorithms;
+
+import utils.EncryptEvents.KeyDerivationEvent;
+import utils.EncryptUtils.EncryptAlgorithm;
+
+/**
+ * 平文を固定長のセグメントに分割し、セグメントごとに認証付き暗号化を行います
+ * 各セグメントは独立して暗号化・復号できるため、1ファイルでも全コアで並列に処理できます
+ * 暗号文の構成は シード(16) + セグメント0 + セグメント1 + ... で、各セグメントは暗号文 + 認証タグ(16)です
+ * ファイルごとのランダムなシードから鍵を導出するため、同じパスワードで複数のファイルを暗号化してもnonceは重複しません
+ * 認証タグ長とnonce長が同じAES-GCMとChaCha20-Poly1305で使用し、セグメントの構成は共通です
+ * 認証付き暗号の復号は認証タグを検証するまで平文を出力しないため、1ファイルをまとめて復号すると全体をメモリに保持しますが、
+ * セグメントごとに検証するため、ファイルサイズに関わらず一定のメモリで復号できます
+ * nonceは 初期化ベクトルキー由来(7) + セグメント番号(4) + 最終セグメントフラグ(1) とし、
+ * セグメントの入替や末尾の切り詰めは認証タグの検証で検出します
+ * 各セグメントの位置は固定長から計算できるため、必要なセグメントだけを読み込んで範囲復号できます
+ * @author blank-nano
+ *
+ */
+public class SegmentCipher {
+
+	/** 1セグメントの平文長 */
+	public static final int SEGMENT_SIZE = 1024 * 1024;
+	/** 認証タグ長 */
+	private static final int TAG_LENGTH = 16;
+	/** シード長 */
+	private static final int SEED_LENGTH = 16;
+	/** nonceのうち初期化ベクトルキー由来の長さ */
+	private static final int NONCE_PREFIX_LENGTH = 7;
+	/** 一度に並列処理するセグメント数 */
+	private static final int BATCH_SEGMENTS = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+
+	/**
+	 * 暗号化後のbyte数を取得します
+	 * @param length - 平文のbyte数
+	 * @return - 暗号文のbyte数
+	 */
+	public static long getOutputSize(long length) {
+		long segments = Math.max(1, (length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		return SEED_LENGTH + segments * TAG_LENGTH + length;
+	}
+
+	/**
+	 * 暗号文のbyte数から平文のbyte数を取得します
+	 * @param outputSize - 暗号文のbyte数
+	 * @return - 平文のbyte数（暗号文の長さが不正な場合は-1）
+	 */
+	public static long getPlainSize(long outputSize) {
+		long body = outputSize - SEED_LENGTH;
+		if (body < TAG_LENGTH) {
+			return -1;
+		}
+		long stride = SEGMENT_SIZE + TAG_LENGTH;
+		long segments = (body + stride - 1) / stride;
+		long lastSegment = body - (segments - 1) * stride;
+		if (lastSegment < TAG_LENGTH) {
+			return -1;
+		}
+		return body - segments * TAG_LENGTH;
+	}
+
+	/**
+	 * 入力ストリームを暗号化し、出力ストリームへ書き込みます
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 平文の入力ストリーム
+	 * @param output - 暗号文の出力ストリーム
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws GeneralSecurityException - 暗号化に失敗した場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long encrypt(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encKey, byte[] ivKey) throws GeneralSecurityException, IOException {
+		byte[] seed = new byte[SEED_LENGTH];
+		CryptoCache.getSecureRandom().nextBytes(seed);
+		SecretKeySpec key = deriveKey(algorithm, encKey, seed);
+		byte[] prefix = deriveNoncePrefix(ivKey);
+		output.write(seed);
+		return SEED_LENGTH + run(algorithm, Cipher.ENCRYPT_MODE, key, prefix, input, output, SEGMENT_SIZE);
+	}
+
+	/**
+	 * 入力ストリームを復号し、出力ストリームへ書き込みます
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param input - 暗号文の入力ストリーム
+	 * @param output - 平文の出力ストリーム
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws GeneralSecurityException - 復号や認証に失敗した場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long decrypt(EncryptAlgorithm algorithm, InputStream input, OutputStream output, byte[] encKey, byte[] ivKey) throws GeneralSecurityException, IOException {
+		byte[] seed = input.readNBytes(SEED_LENGTH);
+		if (seed.length != SEED_LENGTH) {
+			throw new GeneralSecurityException("シード不足");
+		}
+		SecretKeySpec key = deriveKey(algorithm, encKey, seed);
+		byte[] prefix = deriveNoncePrefix(ivKey);
+		return run(algorithm, Cipher.DECRYPT_MODE, key, prefix, input, output, SEGMENT_SIZE + TAG_LENGTH);
+	}
+
+	/**
+	 * 暗号文の指定範囲だけを復号し、出力ストリームへ書き込みます
+	 * 範囲を含むセグメントだけを読み込むため、ファイルの末尾だけを取り出す場合も全体を復号しません
+	 * 範囲が平文の末尾を超える場合は末尾までを復号します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param channel - 暗号文の先頭を指すチャネル
+	 * @param outputSize - 暗号文のbyte数
+	 * @param offset - 平文の開始位置
+	 * @param length - 平文の長さ
+	 * @param output - 平文の出力ストリーム
+	 * @param encKey - 暗号化キー
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - 書き込んだbyte数
+	 * @throws GeneralSecurityException - 復号や認証に失敗した場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	public static long decryptRange(EncryptAlgorithm algorithm, SeekableByteChannel channel, long outputSize, long offset, long length, OutputStream output, byte[] encKey, byte[] ivKey) throws GeneralSecurityException, IOException {
+		long plainSize = getPlainSize(outputSize);
+		if (plainSize < 0) {
+			throw new GeneralSecurityException("暗号文長不正");
+		}
+		long base = channel.position();
+		ByteBuffer seed = ByteBuffer.allocate(SEED_LENGTH);
+		readFully(channel, seed);
+		SecretKeySpec key = deriveKey(algorithm, encKey, seed.array());
+		byte[] prefix = deriveNoncePrefix(ivKey);
+		long end = Math.min(plainSize, offset + Math.min(length, Long.MAX_VALUE - offset));
+		if (offset >= end) {
+			output.flush();
+			return 0;
+		}
+		// 範囲を含むセグメント
+		long stride = SEGMENT_SIZE + TAG_LENGTH;
+		long body = outputSize - SEED_LENGTH;
+		int lastIndex = (int) ((body + stride - 1) / stride - 1);
+		int first = (int) (offset / SEGMENT_SIZE);
+		int last = (int) ((end - 1) / SEGMENT_SIZE);
+		long total = 0;
+		for (int index = first; index <= last;) {
+			List<Callable<byte[]>> tasks = new ArrayList<>(BATCH_SEGMENTS);
+			for (; index <= last && tasks.size() < BATCH_SEGMENTS; index++) {
+				ByteBuffer segment = ByteBuffer.allocate((int) Math.min(stride, body - index * stride));
+				channel.position(base + SEED_LENGTH + index * stride);
+				readFully(channel, segment);
+				byte[] nonce = createNonce(prefix, index, index == lastIndex);
+				tasks.add(() -> doSegment(algorithm, Cipher.DECRYPT_MODE, key, nonce, segment.array()));
+			}
+			// 範囲外の部分を除いて書き込み
+			long position = (long) (index - tasks.size()) * SEGMENT_SIZE;
+			for (byte[] result : invokeAll(tasks)) {
+				int from = (int) Math.max(0, offset - position);
+				int to = (int) Math.min(result.length, end - position);
+				output.write(result, from, to - from);
+				total += to - from;
+				position += SEGMENT_SIZE;
+			}
+		}
+		output.flush();
+		return total;
+	}
+
+	/**
+	 * チャネルからバッファが一杯になるまで読み込みます
+	 * @param channel - チャネル
+	 * @param buffer - バッファ
+	 * @throws IOException - 途中で終端に達した場合に発生
+	 */
+	private static void readFully(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * セグメント単位で読み込み、まとめて並列に処理して順番通りに書き込みます
+	 * 次のセグメントを先読みして、最終セグメントかどうかを判定します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param mode - Cipher.ENCRYPT_MODE または Cipher.DECRYPT_MODE
+	 * @param key - ファイルごとの鍵
+	 * @param prefix - nonceの先頭
+	 * @param input - 入力ストリーム
+	 * @param output - 出力ストリーム
+	 * @param readSize - 1セグメントの入力長
+	 * @return - 書き込んだbyte数
+	 * @throws GeneralSecurityException - 暗号化・復号に失敗した場合に発生
+	 * @throws IOException - 入出力に失敗した場合に発生
+	 */
+	private static long run(EncryptAlgorithm algorithm, int mode, SecretKeySpec key, byte[] prefix, InputStream input, OutputStream output, int readSize) throws GeneralSecurityException, IOException {
+		long total = 0;
+		int index = 0;
+		byte[] current = input.readNBytes(readSize);
+		boolean last = false;
+		while (!last) {
+			List<Callable<byte[]>> tasks = new ArrayList<>(BATCH_SEGMENTS);
+			while (!last && tasks.size() < BATCH_SEGMENTS) {
+				byte[] next = current.length < readSize ? null : input.readNBytes(readSize);
+				last = next == null || next.length == 0;
+				if (mode == Cipher.DECRYPT_MODE && current.length < TAG_LENGTH) {
+					throw new GeneralSecurityException("セグメント長不正");
+				}
+				byte[] segment = current;
+				byte[] nonce = createNonce(prefix, index, last);
+				tasks.add(() -> doSegment(algorithm, mode, key, nonce, segment));
+				if (index == Integer.MAX_VALUE) {
+					throw new GeneralSecurityException("セグメント数超過");
+				}
+				index++;
+				current = next;
+			}
+			for (byte[] result : invokeAll(tasks)) {
+				output.write(result);
+				total += result.length;
+			}
+		}
+		output.flush();
+		return total;
+	}
+
+	/**
+	 * 1セグメントを暗号化・復号します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param mode - Cipher.ENCRYPT_MODE または Cipher.DECRYPT_MODE
+	 * @param key - ファイルごとの鍵
+	 * @param nonce - セグメントのnonce
+	 * @param segment - 入力
+	 * @return - 出力
+	 * @throws GeneralSecurityException - 暗号化・復号に失敗した場合に発生
+	 */
+	private static byte[] doSegment(EncryptAlgorithm algorithm, int mode, SecretKeySpec key, byte[] nonce, byte[] segment) throws GeneralSecurityException {
+		Cipher cipher = EncryptUtils.getCipher(algorithm, mode);
+		cipher.init(mode, key, EncryptUtils.createParameterSpec(algorithm, nonce));
+		return cipher.doFinal(segment);
+	}
+
+	/**
+	 * セグメントの処理をForkJoinPoolで並列に実行し、結果を順番通りに返却します
+	 * @param tasks - セグメントの処理一覧
+	 * @return - 処理結果一覧
+	 * @throws GeneralSecurityException - 暗号化・復号に失敗した場合に発生
+	 * @throws IOException - 処理が中断された場合に発生
+	 */
+	private static List<byte[]> invokeAll(List<Callable<byte[]>> tasks) throws GeneralSecurityException, IOException {
+		List<byte[]> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<byte[]> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch (ExecutionException | RuntimeException e) {
+			// ForkJoinPoolは検査例外をRuntimeExceptionで包んで送出するため、元の例外を取り出す
+			Throwable cause = e;
+			while ((cause instanceof ExecutionException || cause.getClass() == RuntimeException.class) && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof GeneralSecurityException) {
+				throw (GeneralSecurityException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		return results;
+	}
+
+	/**
+	 * シードからファイルごとの鍵を導出します
+	 * @param algorithm - 暗号アルゴリズム
+	 * @param encKey - 暗号化キー
+	 * @param seed - ファイルごとのシード
+	 * @return - 鍵
+	 * @throws GeneralSecurityException - ハッシュアルゴリズムが使用できない場合に発生
+	 */
+	private static SecretKeySpec deriveKey(EncryptAlgorithm algorithm, byte[] encKey, byte[] seed) throws GeneralSecurityException {
+		KeyDerivationEvent event = new KeyDerivationEvent(algorithm);
+		event.begin();
+		try {
+			byte[] keyDigest = CryptoCache.getDigest(MessageDigestAlgorithms.SHA_256).digest(encKey);
+			MessageDigest digest = CryptoCache.getDigest(MessageDigestAlgorithms.SHA_256);
+			digest.update(keyDigest);
+			digest.update(seed);
+			SecretKeySpec key = new SecretKeySpec(digest.digest(), algorithm.getEncrypt());
+			event.success();
+			return key;
+		} finally {
+			event.finish();
+		}
+	}
+
+	/**
+	 * 初期化ベクトルキーからnonceの先頭を導出します
+	 * @param ivKey - 初期化ベクトルキー
+	 * @return - nonceの先頭
+	 * @throws GeneralSecurityException - ハッシュアルゴリズムが使用できない場合に発生
+	 */
+	private static byte[] deriveNoncePrefix(byte[] ivKey) throws GeneralSecurityException {
+		return Arrays.copyOf(CryptoCache.getDigest(MessageDigestAlgorithms.MD5).digest(ivKey), NONCE_PREFIX_LENGTH);
+	}
+
+	/**
+	 * セグメントのnonceを作成します
+	 * @param prefix - nonceの先頭
+	 * @param index - セグメント番号
+	 * @param last - 最終セグメントか
+	 * @return - nonce
+	 */
+	private static byte[] createNonce(byte[] prefix, int index, boolean last) {
+		return ByteBuffer.allocate(NONCE_PREFIX_LENGTH + 5)
+				.put(prefix)
+				.putInt(index)
+				.put((byte) (last ? 1 : 0))
+				.array();
+	}
+
+}
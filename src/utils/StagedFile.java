@@ -0,0 +1,287 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import utils.EncryptEvents.FileWriteEvent;
+import utils.FileUtils.Durability;
+import utils.PhaseStats.Phase;
+
+/**
+ * 出力先と同じフォルダの一時ファイルに書き込み、確定時に出力先へ置き換えるファイルです
+ * 一時ファイルへの書き込みが全件成功した後にcommitすることで、途中で失敗した場合に中途半端な出力を残しません
+ * ディスクへの同期はDurabilityに従い、BATCHの場合はcommitAllでまとめて同期します
+ * @author blank-nano
+ *
+ */
+public class StagedFile implements Closeable {
+
+	/** 一時ファイルの接尾辞 */
+	private static final String TEMP_SUFFIX = ".tmp";
+	/** 一時ファイル名の形式 */
+	private static final Pattern TEMP_FILE_NAME = Pattern.compile("\\..+\\.[0-9a-f]{1,16}\\" + TEMP_SUFFIX);
+	/** 書き込みバッファサイズ */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** 出力先 */
+	private final Path target;
+	/** 一時ファイル */
+	private final Path temp;
+	/** ディスクへの同期方針 */
+	private final Durability durability;
+	/** 確定後に設定する更新日時（未設定の場合は0） */
+	private long lastModified;
+	/** 一時ファイルのチャネル */
+	private FileChannel channel;
+	/** バッファ付き出力ストリーム */
+	private OutputStream output;
+
+	/**
+	 * デフォルトコンストラクタ
+	 * @param target - 出力先
+	 * @param temp - 一時ファイル
+	 * @param channel - 一時ファイルのチャネル
+	 * @param durability - ディスクへの同期方針
+	 */
+	private StagedFile(Path target, Path temp, FileChannel channel, Durability durability) {
+		this.target = target;
+		this.temp = temp;
+		this.durability = durability;
+		this.channel = channel;
+		this.output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+	}
+
+	/**
+	 * 出力先と同じフォルダに一時ファイルを作成します
+	 * @param filePath - 出力先のファイルパス
+	 * @return - 一時ファイル
+	 * @throws IOException - 一時ファイルを作成できない場合に発生
+	 */
+	public static StagedFile create(String filePath) throws IOException {
+		return create(filePath, Durability.SYNC);
+	}
+
+	/**
+	 * 出力先と同じフォルダに一時ファイルを作成します
+	 * @param filePath - 出力先のファイルパス
+	 * @param durability - ディスクへの同期方針
+	 * @return - 一時ファイル
+	 * @throws IOException - 一時ファイルを作成できない場合に発生
+	 */
+	public static StagedFile create(String filePath, Durability durability) throws IOException {
+		Path target = new File(filePath).getAbsoluteFile().toPath();
+		while (true) {
+			// 通常のファイルと同じ権限で作成するため、createTempFileは使用しない
+			Path temp = target.resolveSibling("." + target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+			try {
+				return new StagedFile(target, temp, FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), durability);
+			} catch (@SuppressWarnings("unused") FileAlreadyExistsException e) {
+				// 名前が重複した場合は作り直す
+			}
+		}
+	}
+
+	/**
+	 * 一時ファイルの名前か判定します
+	 * フォルダを列挙する際に、処理中の一時ファイルを対象から除くために使用します
+	 * @param fileName - ファイル名
+	 * @return - 一時ファイルの名前の場合はtrue
+	 */
+	public static boolean isTempFile(String fileName) {
+		return TEMP_FILE_NAME.matcher(fileName).matches();
+	}
+
+	/**
+	 * 一時ファイルの出力ストリームを取得します
+	 * @return - 出力ストリーム
+	 */
+	public OutputStream getOutputStream() {
+		return this.output;
+	}
+
+	/**
+	 * 閉じると書き込みを完了する出力ストリームを取得します
+	 * 多数の一時ファイルへ順に書き込む場合に、書き込み済みのファイルから閉じてファイルハンドルを解放するために使用します
+	 * @return - 出力ストリーム
+	 */
+	public OutputStream getFinishingOutputStream() {
+		return new FilterOutputStream(this.output) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				this.out.write(b, off, len);
+			}
+			@Override
+			public void close() throws IOException {
+				finish();
+			}
+		};
+	}
+
+	/**
+	 * 確定後の更新日時を設定します
+	 * @param lastModified - 更新日時（エポックミリ秒）
+	 */
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * 一時ファイルのチャネルを取得します
+	 * 出力ストリームに書き込み済みの内容を反映してから返却するため、
+	 * 出力ストリームとチャネルを交互に使用する場合は切り替えのたびに取得し直してください
+	 * @return - 書き込み位置が末尾のチャネル
+	 * @throws IOException - 出力ストリームの反映に失敗した場合に発生
+	 */
+	public FileChannel getChannel() throws IOException {
+		this.output.flush();
+		return this.channel;
+	}
+
+	/**
+	 * 一時ファイルへの書き込みを完了します
+	 * Durability.SYNCの場合は内容をディスクに同期してから閉じます
+	 * @throws IOException - 書き込みに失敗した場合に発生
+	 */
+	public void finish() throws IOException {
+		if (this.output == null) {
+			return;
+		}
+		FileWriteEvent event = new FileWriteEvent(this.target.toString());
+		event.begin();
+		try {
+			long start = PhaseStats.start();
+			this.output.flush();
+			PhaseStats.record(Phase.WRITE, start, 0);
+			if (this.durability == Durability.SYNC) {
+				start = PhaseStats.start();
+				this.channel.force(true);
+				PhaseStats.record(Phase.SYNC, start, this.channel.size());
+			}
+			event.success(this.channel.size());
+		} finally {
+			event.finish();
+			close();
+		}
+	}
+
+	/**
+	 * 一時ファイルを出力先に置き換えます
+	 * 同一ファイルシステム内での名前変更のため、出力先が中途半端な状態になることはありません
+	 * Durability.SYNCの場合は名前変更をディスクに同期するため、親フォルダも同期します
+	 * @throws IOException - 置き換えに失敗した場合に発生
+	 */
+	public void commit() throws IOException {
+		finish();
+		move();
+		if (this.lastModified > 0) {
+			this.target.toFile().setLastModified(this.lastModified);
+		}
+		if (this.durability == Durability.SYNC) {
+			FileUtils.syncDirectory(this.target.getParent().toString());
+		}
+	}
+
+	/**
+	 * 複数の一時ファイルをまとめて出力先に置き換えます
+	 * Durability.BATCHの一時ファイルは、置き換え前に内容を並列に同期し、置き換え後に親フォルダを1回ずつ同期します
+	 * 同期の待ち時間を全ファイルで重ねるため、ファイルごとに同期するより高速です
+	 * 出力先が重複する場合は、後の置き換えで先の出力が失われるため、1件も置き換えずに失敗します
+	 * @param stagedFiles - 一時ファイル一覧
+	 * @param executor - 同期を行うスレッドプール
+	 * @throws IOException - 出力先が重複する場合や、同期や置き換えに失敗した場合に発生
+	 */
+	public static void commitAll(Collection<StagedFile> stagedFiles, ExecutorService executor) throws IOException {
+		Set<Path> uniqueTargets = new HashSet<>();
+		for (StagedFile stagedFile : stagedFiles) {
+			if (!uniqueTargets.add(stagedFile.target.toAbsolutePath().normalize())) {
+				throw new FileAlreadyExistsException(stagedFile.target.toString(), null, "出力先重複");
+			}
+		}
+		List<String> temps = new ArrayList<>();
+		List<String> targets = new ArrayList<>();
+		for (StagedFile stagedFile : stagedFiles) {
+			stagedFile.finish();
+			if (stagedFile.durability == Durability.BATCH) {
+				temps.add(stagedFile.temp.toString());
+				targets.add(stagedFile.target.toString());
+			}
+		}
+		// 内容を同期してから名前変更する（名前だけが先に確定するのを防ぐ）
+		FileUtils.syncFiles(temps, executor);
+		for (StagedFile stagedFile : stagedFiles) {
+			stagedFile.commit();
+		}
+		// 名前変更を同期
+		FileUtils.syncDirectories(targets);
+	}
+
+	/**
+	 * 一時ファイルを出力先に名前変更します
+	 * @throws IOException - 名前変更に失敗した場合に発生
+	 */
+	private void move() throws IOException {
+		try {
+			Files.move(this.temp, this.target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (@SuppressWarnings("unused") AtomicMoveNotSupportedException e) {
+			Files.move(this.temp, this.target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * 一時ファイルを破棄します
+	 */
+	public void discard() {
+		try {
+			close();
+		} catch (@SuppressWarnings("unused") IOException e) {
+			// 破棄するため無視
+		}
+		try {
+			Files.deleteIfExists(this.temp);
+		} catch (@SuppressWarnings("unused") IOException e) {
+			new File(this.temp.toString()).deleteOnExit();
+		}
+	}
+
+	/**
+	 * 出力先のファイルパスを取得します
+	 * @return - 出力先のファイルパス
+	 */
+	public String getFilePath() {
+		return this.target.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.output == null) {
+			return;
+		}
+		try {
+			this.output.close();
+		} finally {
+			this.output = null;
+			this.channel = null;
+		}
+	}
+
+}
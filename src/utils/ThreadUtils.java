@@ -0,0 +1,175 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * スレッドの管理を行います
+ * @author blank-nano
+ *
+ */
+public class ThreadUtils {
+
+	/**
+	 * 既定のスレッド数を取得します
+	 * @return - CPUのコア数
+	 */
+	public static int getDefaultThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * 仮想スレッドが使用可能か判定します
+	 * @return - 使用可能な場合はtrue（Java21以降）
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return createVirtualThreadFactory() != null;
+	}
+
+	/**
+	 * 固定数のスレッドで実行するスレッドプールを作成します
+	 * 仮想スレッドを指定した場合も同時実行数はスレッド数までとなります
+	 * @param threads - スレッド数
+	 * @param virtualThread - 仮想スレッドを使用するか（使用できない場合は通常のスレッド）
+	 * @return - スレッドプール
+	 */
+	public static ExecutorService createExecutor(int threads, boolean virtualThread) {
+		ThreadFactory threadFactory = virtualThread ? createVirtualThreadFactory() : null;
+		if (threadFactory == null) {
+			threadFactory = runnable -> {
+				Thread thread = new Thread(runnable);
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+		return Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+	}
+
+	/**
+	 * すべての処理を実行し、結果を登録順に返却します
+	 * いずれかの処理が失敗した時点で残りの処理を中断し、その例外を送出します
+	 * @param <T> - 処理結果の型
+	 * @param executor - スレッドプール
+	 * @param tasks - 処理一覧
+	 * @return - 処理結果一覧
+	 * @throws Exception - いずれかの処理で発生した例外
+	 */
+	public static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws Exception {
+		return invokeAll(executor, submitter -> tasks.forEach(submitter));
+	}
+
+	/**
+	 * 処理を生成しながら順次実行し、すべての結果を登録順に返却します
+	 * 処理の一覧を事前に作成しないため、生成中から実行を開始できます
+	 * 登録は複数のスレッドから同時に行えます
+	 * いずれかの処理が失敗した時点で以降の登録を打ち切り、残りの処理を中断してその例外を送出します
+	 * @param <T> - 処理結果の型
+	 * @param executor - スレッドプール
+	 * @param producer - 処理の生成元
+	 * @return - 処理結果一覧
+	 * @throws Exception - いずれかの処理、または生成元で発生した例外
+	 */
+	public static <T> List<T> invokeAll(ExecutorService executor, TaskProducer<T> producer) throws Exception {
+		CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+		List<Future<T>> futures = Collections.synchronizedList(new ArrayList<>());
+		AtomicBoolean failed = new AtomicBoolean();
+		try {
+			try {
+				producer.produce(task -> {
+					if (failed.get()) {
+						throw new CancellationException("処理失敗のため登録中断");
+					}
+					futures.add(completionService.submit(() -> {
+						try {
+							return task.call();
+						} catch (Exception | Error e) {
+							failed.set(true);
+							throw e;
+						}
+					}));
+				});
+			} catch (CancellationException e) {
+				// 失敗した処理の例外を送出するため、結果の待ち合わせへ進む
+				if (!failed.get()) {
+					throw e;
+				}
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				completionService.take().get();
+			}
+		} catch (ExecutionException e) {
+			cancelAll(futures);
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} catch (InterruptedException e) {
+			cancelAll(futures);
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (Exception e) {
+			cancelAll(futures);
+			throw e;
+		}
+		List<T> results = new ArrayList<>(futures.size());
+		for (Future<T> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	/**
+	 * 未完了の処理をすべて中断します
+	 * @param futures - 処理一覧
+	 */
+	private static void cancelAll(List<? extends Future<?>> futures) {
+		synchronized (futures) {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * 仮想スレッドのThreadFactoryを作成します
+	 * Java17でもコンパイルできるよう、リフレクションで取得します
+	 * @return - 仮想スレッドのThreadFactory（使用できない場合はnull）
+	 */
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (@SuppressWarnings("unused") ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 処理の生成元
+	 * @param <T> - 処理結果の型
+	 */
+	@FunctionalInterface
+	public interface TaskProducer<T> {
+		/**
+		 * 処理を生成し、登録先へ渡します
+		 * @param submitter - 処理の登録先（複数のスレッドから呼び出し可能）
+		 * @throws Exception - 生成に失敗した場合に発生
+		 */
+		void produce(Consumer<Callable<T>> submitter) throws Exception;
+	}
+
+}